@@ -0,0 +1,73 @@
+package memstore.benchmarks;
+
+import memstore.GraderConstants;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.table.ColumnTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the batched (vectorizable) ColumnTable scan kernels against the
+ * scalar field-at-a-time ones on the narrow 15M-field workload shape.
+ *
+ * Not part of the graded benchmarks; run with
+ *   java -cp target/benchmarks.jar org.openjdk.jmh.Main ColumnKernelsBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ColumnKernelsBench {
+    DataLoader dl;
+    ColumnTable batched;
+    ColumnTable scalar;
+    int t1, t2;
+
+    @Setup
+    public void prepare() throws IOException {
+        dl = new RandomizedLoader(
+                GraderConstants.getSeed(),
+                3_000_000,
+                5
+        );
+        t1 = 500;
+        t2 = 500;
+
+        batched = new ColumnTable(true);
+        scalar = new ColumnTable(false);
+        batched.load(dl);
+        scalar.load(dl);
+    }
+
+    @Benchmark
+    public long columnSumBatched() {
+        return batched.columnSum();
+    }
+
+    @Benchmark
+    public long columnSumScalar() {
+        return scalar.columnSum();
+    }
+
+    @Benchmark
+    public long predicatedColumnSumBatched() {
+        return batched.predicatedColumnSum(t1, t2);
+    }
+
+    @Benchmark
+    public long predicatedColumnSumScalar() {
+        return scalar.predicatedColumnSum(t1, t2);
+    }
+
+    @Benchmark
+    public long predicatedUpdateBatched() {
+        return batched.predicatedUpdate(t1);
+    }
+
+    @Benchmark
+    public long predicatedUpdateScalar() {
+        return scalar.predicatedUpdate(t1);
+    }
+}
@@ -0,0 +1,82 @@
+package memstore.benchmarks;
+
+import memstore.GraderConstants;
+import memstore.data.RandomizedLoader;
+import memstore.table.Table;
+import memstore.table.TableLayout;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the row, column and PAX layouts on the table shapes and queries
+ * of the graded benchmarks.
+ *
+ * Not part of the graded benchmarks; run with
+ *   java -cp target/benchmarks.jar org.openjdk.jmh.Main LayoutBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class LayoutBench {
+    @Param({"ROW", "COLUMN", "PAX"})
+    public TableLayout layout;
+
+    Table narrow;
+    Table wide;
+    Table predicated;
+    Table allColumns;
+    Table updated;
+    Table updates;
+    UpdatesBench updatesBench;
+
+    private Table load(int numRows, int numCols) throws IOException {
+        Table table = layout.create();
+        table.load(new RandomizedLoader(GraderConstants.getSeed(), numRows, numCols));
+        return table;
+    }
+
+    @Setup
+    public void prepare() throws IOException {
+        narrow = load(1_000_000, 3);
+        wide = load(1_000_000, 20);
+        predicated = load(1_000_000, 4);
+        allColumns = load(100_000, 100);
+        updated = load(1_000_000, 4);
+        updatesBench = new UpdatesBench();
+        updatesBench.prepare();
+        updates = layout.create();
+        updates.load(updatesBench.dl);
+    }
+
+    @Benchmark
+    public long columnSumNarrow() {
+        return narrow.columnSum();
+    }
+
+    @Benchmark
+    public long columnSumWide() {
+        return wide.columnSum();
+    }
+
+    @Benchmark
+    public long predicatedColumnSum() {
+        return predicated.predicatedColumnSum(500, 10);
+    }
+
+    @Benchmark
+    public long predicatedAllColumnsSum() {
+        return allColumns.predicatedAllColumnsSum(50);
+    }
+
+    @Benchmark
+    public long predicatedUpdate() {
+        return updated.predicatedUpdate(10);
+    }
+
+    @Benchmark
+    public long updates() {
+        return updatesBench.testTable(updates);
+    }
+}
@@ -0,0 +1,67 @@
+package memstore.benchmarks;
+
+import memstore.GraderConstants;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.table.ColumnTable;
+import memstore.table.RowTable;
+import memstore.table.StorageType;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the storage backends on the table shapes of ColumnSumNarrowBench
+ * and PredicatedAllColumnsSumBench.
+ *
+ * Not part of the graded benchmarks; run with
+ *   java -cp target/benchmarks.jar org.openjdk.jmh.Main StorageBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class StorageBench {
+    @Param({"INT_ARRAY", "BYTE_BUFFER"})
+    public StorageType storageType;
+
+    RowTable narrowRt;
+    ColumnTable narrowCt;
+    RowTable wideRt;
+    ColumnTable wideCt;
+
+    @Setup
+    public void prepare() throws IOException {
+        DataLoader narrow = new RandomizedLoader(GraderConstants.getSeed(), 1_000_000, 3);
+        DataLoader wide = new RandomizedLoader(GraderConstants.getSeed(), 100_000, 100);
+
+        narrowRt = new RowTable(storageType);
+        narrowCt = new ColumnTable(storageType);
+        wideRt = new RowTable(storageType);
+        wideCt = new ColumnTable(storageType);
+        narrowRt.load(narrow);
+        narrowCt.load(narrow);
+        wideRt.load(wide);
+        wideCt.load(wide);
+    }
+
+    @Benchmark
+    public long columnSumNarrowRowTable() {
+        return narrowRt.columnSum();
+    }
+
+    @Benchmark
+    public long columnSumNarrowColumnTable() {
+        return narrowCt.columnSum();
+    }
+
+    @Benchmark
+    public long predicatedAllColumnsSumRowTable() {
+        return wideRt.predicatedAllColumnsSum(50);
+    }
+
+    @Benchmark
+    public long predicatedAllColumnsSumColumnTable() {
+        return wideCt.predicatedAllColumnsSum(50);
+    }
+}
@@ -0,0 +1,65 @@
+package memstore.benchmarks;
+
+import memstore.GraderConstants;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.data.SortedLoader;
+import memstore.table.ColumnTable;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Zone maps let predicated queries skip blocks whose value ranges rule the
+ * predicate out. On data clustered on col0, the col0 predicates of
+ * predicatedAllColumnsSum and predicatedUpdate only touch a few blocks.
+ *
+ * Not part of the graded benchmarks; run with
+ *   java -cp target/benchmarks.jar org.openjdk.jmh.Main ZoneMapBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class ZoneMapBench {
+    DataLoader dl;
+    ColumnTable plain;
+    ColumnTable zoned;
+    int t1, t2;
+
+    @Setup
+    public void prepare() throws IOException {
+        dl = new SortedLoader(
+                new RandomizedLoader(GraderConstants.getSeed(), 1_000_000, 20),
+                0
+        );
+        t1 = 10;
+        t2 = 900;
+
+        plain = new ColumnTable();
+        zoned = new ColumnTable();
+        zoned.setZoneMapBlockRows(4096);
+        plain.load(dl);
+        zoned.load(dl);
+    }
+
+    @Benchmark
+    public long predicatedUpdatePlain() {
+        return plain.predicatedUpdate(t1);
+    }
+
+    @Benchmark
+    public long predicatedUpdateZoneMap() {
+        return zoned.predicatedUpdate(t1);
+    }
+
+    @Benchmark
+    public long predicatedAllColumnsSumPlain() {
+        return plain.predicatedAllColumnsSum(t2);
+    }
+
+    @Benchmark
+    public long predicatedAllColumnsSumZoneMap() {
+        return zoned.predicatedAllColumnsSum(t2);
+    }
+}
@@ -0,0 +1,74 @@
+package memstore.data;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps a DataLoader that does not know its number of rows up front, and
+ * buffers its rows on the first call that needs them, so that tables which
+ * have to size their storage before copying rows in can still be loaded
+ * from it. Rows are kept in fixed-size batches, so buffering never copies
+ * them more than once.
+ */
+public class BufferedLoader implements DataLoader {
+    private final DataLoader loader;
+    private List<RowBatch> batches;
+    private int numRows;
+
+    public BufferedLoader(DataLoader loader) {
+        this.loader = loader;
+    }
+
+    /**
+     * Returns `loader` itself if it knows its number of rows, and a
+     * BufferedLoader over it otherwise.
+     */
+    public static DataLoader sized(DataLoader loader) throws IOException {
+        return loader.getNumRows() >= 0 ? loader : new BufferedLoader(loader);
+    }
+
+    @Override
+    public int getNumCols() {
+        return loader.getNumCols();
+    }
+
+    @Override
+    public int getNumRows() throws IOException {
+        buffer();
+        return numRows;
+    }
+
+    @Override
+    public void scan(RowConsumer consumer) throws IOException {
+        buffer();
+        for (RowBatch batch : batches) {
+            consumer.accept(batch);
+        }
+    }
+
+    private void buffer() throws IOException {
+        if (batches != null) {
+            return;
+        }
+        // A scan that failed part way may have counted rows; start over.
+        numRows = 0;
+        int numCols = getNumCols();
+        List<RowBatch> batches = new ArrayList<>();
+        loader.scan(batch -> {
+            int i = 0;
+            while (i < batch.getNumRows()) {
+                RowBatch last = batches.isEmpty() ? null : batches.get(batches.size() - 1);
+                if (last == null || last.isFull()) {
+                    last = new RowBatch(numCols);
+                    last.reset(numRows);
+                    batches.add(last);
+                }
+                int n = last.append(batch, i, batch.getNumRows() - i);
+                i += n;
+                numRows += n;
+            }
+        });
+        this.batches = batches;
+    }
+}
@@ -6,17 +6,32 @@ import org.apache.commons.csv.CSVRecord;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
 
+/**
+ * Loads rows from a CSV file whose first `numCols` fields are ints.
+ *
+ * Files of plain integers are memory-mapped and parsed in parallel straight
+ * from their bytes; see {@link MappedCSV}. Anything else, such as quoted
+ * fields, is read through commons-csv.
+ */
 public class CSVLoader implements DataLoader {
     public String pathToCSV;
     private int numCols;
+    private int parallelism;
+    private MappedCSV mapped;
+    private boolean checked;
 
     public CSVLoader(String pathToCSV, int numCols) {
+        this(pathToCSV, numCols, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism number of threads to parse a plain integer file with.
+     */
+    public CSVLoader(String pathToCSV, int numCols, int parallelism) {
         this.pathToCSV = pathToCSV;
         this.numCols = numCols;
+        this.parallelism = parallelism;
     }
 
     @Override
@@ -24,21 +39,73 @@ public class CSVLoader implements DataLoader {
         return numCols;
     }
 
-    public List<ByteBuffer> getRows() throws IOException {
-        Reader in = new FileReader(pathToCSV);
-        Iterable<CSVRecord> records = CSVFormat.DEFAULT.parse(in);
+    /**
+     * Returns the number of rows for a plain integer file, which the fast path
+     * counts up front, and -1 otherwise.
+     */
+    @Override
+    public int getNumRows() throws IOException {
+        MappedCSV mapped = mapped();
+        return mapped != null ? mapped.getNumRows() : -1;
+    }
+
+    @Override
+    public void scan(RowConsumer consumer) throws IOException {
+        MappedCSV mapped = mapped();
+        if (mapped != null) {
+            mapped.scan(consumer, false);
+        } else {
+            parse(consumer);
+        }
+    }
 
-        ArrayList<ByteBuffer> rowBytes = new ArrayList<>();
-        for (CSVRecord record : records) {
-            ByteBuffer curRowBuffer = ByteBuffer.allocate(ByteFormat.FIELD_LEN*numCols);
-            for (int i = 0; i < numCols; i++) {
-                String curField = record.get(i);
-                    int val = Integer.parseInt(curField);
-                    curRowBuffer.putInt(val);
+    @Override
+    public void scanConcurrently(RowConsumer consumer) throws IOException {
+        MappedCSV mapped = mapped();
+        if (mapped != null) {
+            mapped.scan(consumer, true);
+        } else {
+            parse(consumer);
+        }
+    }
+
+    /**
+     * Whether the file is read through the memory-mapped fast path.
+     */
+    public boolean isMapped() throws IOException {
+        return mapped() != null;
+    }
+
+    private MappedCSV mapped() throws IOException {
+        if (!checked) {
+            mapped = MappedCSV.open(pathToCSV, numCols, parallelism);
+            checked = true;
+        }
+        return mapped;
+    }
+
+    private void parse(RowConsumer consumer) throws IOException {
+        try (Reader in = new FileReader(pathToCSV)) {
+            Iterable<CSVRecord> records = CSVFormat.DEFAULT.parse(in);
+
+            RowBatch batch = new RowBatch(numCols);
+            int[] fields = batch.fields();
+            int rowId = 0;
+            for (CSVRecord record : records) {
+                if (batch.isFull()) {
+                    consumer.accept(batch);
+                    batch.reset(rowId);
+                }
+                int offset = batch.getNumRows() * numCols;
+                for (int i = 0; i < numCols; i++) {
+                    fields[offset + i] = Integer.parseInt(record.get(i));
+                }
+                batch.commit();
+                rowId++;
+            }
+            if (batch.getNumRows() > 0) {
+                consumer.accept(batch);
             }
-            curRowBuffer.rewind();
-            rowBytes.add(curRowBuffer);
         }
-        return rowBytes;
     }
 }
@@ -2,9 +2,65 @@ package memstore.data;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Source of the rows a table is loaded with.
+ *
+ * Rows are pushed to a {@link RowConsumer} in reusable {@link RowBatch}es, so
+ * that a table can copy them straight into its own storage without the rows
+ * ever being materialized as a whole. scan() may be called more than once,
+ * and delivers the same rows in the same order every time.
+ */
 public interface DataLoader {
+    /**
+     * Receives the rows of a scan, one batch at a time.
+     */
+    interface RowConsumer {
+        void accept(RowBatch batch) throws IOException;
+    }
+
     int getNumCols();
-    List<ByteBuffer> getRows() throws IOException;
+
+    /**
+     * Returns the number of rows scan() delivers, or -1 if that is not known
+     * without scanning; see {@link BufferedLoader}.
+     */
+    default int getNumRows() throws IOException {
+        return -1;
+    }
+
+    /**
+     * Delivers all rows to `consumer` in order, in batches of consecutive rows.
+     */
+    void scan(RowConsumer consumer) throws IOException;
+
+    /**
+     * Like scan(), but `consumer` may be called from several threads at once,
+     * with batches in any order. Only for consumers that handle disjoint
+     * batches independently, such as copying them into storage by row id.
+     */
+    default void scanConcurrently(RowConsumer consumer) throws IOException {
+        scan(consumer);
+    }
+
+    /**
+     * Returns every row as its own big-endian ByteBuffer of FIELD_LEN bytes per
+     * field. Kept for compatibility; loading tables should use scan().
+     */
+    default List<ByteBuffer> getRows() throws IOException {
+        List<ByteBuffer> rows = new ArrayList<>();
+        scan(batch -> {
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                ByteBuffer curRow = ByteBuffer.allocate(ByteFormat.FIELD_LEN * batch.getNumCols());
+                for (int colId = 0; colId < batch.getNumCols(); colId++) {
+                    curRow.putInt(batch.getInt(row, colId));
+                }
+                curRow.rewind();
+                rows.add(curRow);
+            }
+        });
+        return rows;
+    }
 }
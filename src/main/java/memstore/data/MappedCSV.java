@@ -0,0 +1,248 @@
+package memstore.data;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fast path of {@link CSVLoader} for files of plain integers: fields of digits
+ * with an optional leading '-', separated by ',' and ending in '\n' or "\r\n".
+ *
+ * The file is split at line boundaries into parts, each memory-mapped on its
+ * own. A first pass over the parts, in parallel, checks that the file only
+ * holds such lines and counts the rows of every part, so that each part knows
+ * the id of its first row. A second pass parses the digits straight from the
+ * mapped bytes into RowBatches, one worker per part, without creating a
+ * String per field.
+ */
+final class MappedCSV {
+    /**
+     * Largest part mapped at once; a MappedByteBuffer is indexed by int.
+     */
+    private static final long MAX_PART_BYTES = 1L << 30;
+
+    private static final class Part {
+        final long start;
+        final long end;
+        int firstRowId;
+        int numRows;
+
+        Part(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private final Path path;
+    private final int numCols;
+    private final int parallelism;
+    private final Part[] parts;
+    private final int numRows;
+
+    private MappedCSV(Path path, int numCols, int parallelism, Part[] parts, int numRows) {
+        this.path = path;
+        this.numCols = numCols;
+        this.parallelism = parallelism;
+        this.parts = parts;
+        this.numRows = numRows;
+    }
+
+    /**
+     * Splits and checks the file. Returns null if it holds anything other
+     * than plain integer lines with at least `numCols` fields each, in which
+     * case it has to be read by a full CSV parser.
+     */
+    static MappedCSV open(String pathToCSV, int numCols, int parallelism) throws IOException {
+        Path path = Paths.get(pathToCSV);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int numParts = (int) Math.max(parallelism, (size + MAX_PART_BYTES - 1) / MAX_PART_BYTES);
+            List<Part> parts = new ArrayList<>();
+            long start = 0;
+            for (int i = 1; i <= numParts && start < size; i++) {
+                long end = i == numParts ? size : lineStart(channel, size * i / numParts);
+                if (end > start) {
+                    parts.add(new Part(start, end));
+                    start = end;
+                }
+            }
+            Part[] partArray = parts.toArray(new Part[0]);
+            boolean[] valid = new boolean[partArray.length];
+            ParallelTasks.run(parallelism, partArray.length, i -> {
+                Part part = partArray[i];
+                int rows = countRows(map(channel, part), numCols);
+                valid[i] = rows >= 0;
+                part.numRows = rows;
+            });
+
+            int numRows = 0;
+            for (int i = 0; i < partArray.length; i++) {
+                if (!valid[i] || numRows + (long) partArray[i].numRows > Integer.MAX_VALUE) {
+                    return null;
+                }
+                partArray[i].firstRowId = numRows;
+                numRows += partArray[i].numRows;
+            }
+            return new MappedCSV(path, numCols, parallelism, partArray, numRows);
+        }
+    }
+
+    int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Parses the file and delivers its rows to `consumer`, in order on the
+     * calling thread, or with one worker per part if `concurrently` is set.
+     */
+    void scan(DataLoader.RowConsumer consumer, boolean concurrently) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (concurrently) {
+                ParallelTasks.run(parallelism, parts.length, i -> parse(map(channel, parts[i]), parts[i], consumer));
+            } else {
+                for (Part part : parts) {
+                    parse(map(channel, part), part, consumer);
+                }
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, Part part) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, part.start, part.end - part.start);
+    }
+
+    /**
+     * Returns the offset just past the first '\n' at or after `offset`, or the
+     * size of the file if there is none.
+     */
+    private static long lineStart(FileChannel channel, long offset) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        long pos = offset;
+        while (true) {
+            ((Buffer) buf).clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += n;
+        }
+    }
+
+    /**
+     * Returns the number of non-empty lines in `buf`, or -1 if it holds a
+     * byte other than digits, '-', ',' and line ends, a '\r' not followed by
+     * '\n', or a line with fewer than `numCols` fields.
+     */
+    private static int countRows(ByteBuffer buf, int numCols) {
+        int limit = buf.limit();
+        int rows = 0;
+        int commas = 0;
+        boolean inLine = false;
+        for (int i = 0; i < limit; i++) {
+            byte b = buf.get(i);
+            if ((b >= '0' && b <= '9') || b == '-') {
+                inLine = true;
+            } else if (b == ',') {
+                inLine = true;
+                commas++;
+            } else if (b == '\n') {
+                if (inLine) {
+                    if (commas < numCols - 1) {
+                        return -1;
+                    }
+                    rows++;
+                }
+                inLine = false;
+                commas = 0;
+            } else if (b != '\r' || i + 1 == limit || buf.get(i + 1) != '\n') {
+                return -1;
+            }
+        }
+        if (inLine) {
+            if (commas < numCols - 1) {
+                return -1;
+            }
+            rows++;
+        }
+        return rows;
+    }
+
+    /**
+     * Parses the rows of `part` into batches for `consumer`. Fields past the
+     * first `numCols` of a line are skipped.
+     */
+    private void parse(ByteBuffer buf, Part part, DataLoader.RowConsumer consumer) throws IOException {
+        int limit = buf.limit();
+        RowBatch batch = new RowBatch(numCols);
+        int[] fields = batch.fields();
+        batch.reset(part.firstRowId);
+        int rowId = part.firstRowId;
+        int pos = 0;
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b == '\n' || b == '\r') {
+                pos++;
+                continue;
+            }
+            if (batch.isFull()) {
+                consumer.accept(batch);
+                batch.reset(rowId);
+            }
+            int offset = batch.getNumRows() * numCols;
+            for (int colId = 0; colId < numCols; colId++) {
+                boolean negative = pos < limit && buf.get(pos) == '-';
+                if (negative) {
+                    pos++;
+                }
+                long value = 0;
+                int digits = 0;
+                while (pos < limit) {
+                    b = buf.get(pos);
+                    if (b < '0' || b > '9') {
+                        break;
+                    }
+                    value = value * 10 + (b - '0');
+                    if (value > 1L + Integer.MAX_VALUE) {
+                        throw badField(rowId, colId);
+                    }
+                    digits++;
+                    pos++;
+                }
+                value = negative ? -value : value;
+                if (digits == 0 || value > Integer.MAX_VALUE) {
+                    throw badField(rowId, colId);
+                }
+                fields[offset + colId] = (int) value;
+                b = pos < limit ? buf.get(pos) : (byte) '\n';
+                if (colId < numCols - 1 ? b != ',' : b != ',' && b != '\n' && b != '\r') {
+                    throw badField(rowId, colId);
+                }
+                pos++;
+            }
+            while (pos < limit && buf.get(pos - 1) != '\n') {
+                pos++;
+            }
+            batch.commit();
+            rowId++;
+        }
+        if (batch.getNumRows() > 0) {
+            consumer.accept(batch);
+        }
+    }
+
+    private NumberFormatException badField(int rowId, int colId) {
+        return new NumberFormatException("Not an int in " + path + " at row " + rowId + ", column " + colId);
+    }
+}
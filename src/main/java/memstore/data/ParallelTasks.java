@@ -0,0 +1,82 @@
+package memstore.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the numbered tasks of a parallel load on the common pool.
+ */
+final class ParallelTasks {
+    private ParallelTasks() { }
+
+    interface Task {
+        void run(int taskId) throws IOException;
+    }
+
+    /**
+     * Runs `task` for ids [0, numTasks) on up to `parallelism` workers, the
+     * calling thread being one of them. Each worker claims the next unclaimed
+     * id until none are left. A failure stops the workers from claiming more
+     * ids, and is rethrown once all of them are done; the calling thread's
+     * own failure takes precedence over theirs.
+     */
+    static void run(int parallelism, int numTasks, Task task) throws IOException {
+        if (parallelism <= 1 || numTasks <= 1) {
+            for (int i = 0; i < numTasks; i++) {
+                task.run(i);
+            }
+            return;
+        }
+        AtomicInteger nextTask = new AtomicInteger();
+        List<ForkJoinTask<?>> workers = new ArrayList<>();
+        for (int i = 1; i < Math.min(parallelism, numTasks); i++) {
+            workers.add(ForkJoinPool.commonPool().submit(() -> {
+                try {
+                    drain(numTasks, nextTask, task);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        Throwable failure = null;
+        try {
+            drain(numTasks, nextTask, task);
+        } catch (IOException | RuntimeException | Error e) {
+            failure = e;
+        }
+        for (ForkJoinTask<?> worker : workers) {
+            worker.quietlyJoin();
+            if (failure == null) {
+                failure = worker.getException();
+            }
+        }
+        if (failure instanceof UncheckedIOException) {
+            throw ((UncheckedIOException) failure).getCause();
+        } else if (failure instanceof IOException) {
+            throw (IOException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new IOException(failure);
+        }
+    }
+
+    private static void drain(int numTasks, AtomicInteger nextTask, Task task) throws IOException {
+        int taskId;
+        try {
+            while ((taskId = nextTask.getAndIncrement()) < numTasks) {
+                task.run(taskId);
+            }
+        } catch (IOException | RuntimeException | Error e) {
+            nextTask.set(numTasks);
+            throw e;
+        }
+    }
+}
@@ -2,20 +2,46 @@ package memstore.data;
 
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
 
+/**
+ * Loads rows of fields drawn uniformly from [0, 1024), in the order
+ * java.util.Random(seed).nextInt(1024) produces them.
+ *
+ * nextInt(1024) takes exactly one step of Random's 48-bit linear
+ * congruential generator per field, so field k of the stream comes from the
+ * generator state after k + 1 steps, and that state can be computed directly
+ * by jumping ahead k steps; see {@link Lcg}. scanConcurrently() uses this to
+ * generate slices of the rows on several threads, bit-identical to the
+ * sequential stream.
+ */
 public class RandomizedLoader implements DataLoader {
+    /**
+     * Bound of every field.
+     */
+    static final int BOUND = 1024;
+
+    /**
+     * Rows generated per task by scanConcurrently().
+     */
+    static final int TASK_ROWS = 1 << 16;
+
     private int seed;
     private int numRows;
     private int numCols;
+    private int parallelism;
 
     public RandomizedLoader(int seed, int numRows, int numCols) {
+        this(seed, numRows, numCols, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism number of threads scanConcurrently() generates rows on.
+     */
+    public RandomizedLoader(int seed, int numRows, int numCols, int parallelism) {
         this.numCols = numCols;
         this.numRows = numRows;
         this.seed = seed;
+        this.parallelism = parallelism;
     }
 
     @Override
@@ -23,19 +49,104 @@ public class RandomizedLoader implements DataLoader {
         return numCols;
     }
 
-    public List<ByteBuffer> getRows() throws IOException {
-        Random random = new Random(seed);
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public void scan(RowConsumer consumer) throws IOException {
+        generate(0, numRows, consumer);
+    }
 
-        ArrayList<ByteBuffer> rowBytes = new ArrayList<>();
-        for (int rowId = 0; rowId < numRows; rowId++) {
-            ByteBuffer curRowBuffer = ByteBuffer.allocate(ByteFormat.FIELD_LEN*numCols);
+    @Override
+    public void scanConcurrently(RowConsumer consumer) throws IOException {
+        int numTasks = (numRows + TASK_ROWS - 1) / TASK_ROWS;
+        ParallelTasks.run(parallelism, numTasks, taskId -> {
+            int from = taskId * TASK_ROWS;
+            generate(from, Math.min(numRows, from + TASK_ROWS), consumer);
+        });
+    }
+
+    /**
+     * Generates rows [from, to) into batches for `consumer`.
+     */
+    private void generate(int from, int to, RowConsumer consumer) throws IOException {
+        Lcg random = new Lcg(seed);
+        random.skip((long) from * numCols);
+
+        RowBatch batch = new RowBatch(numCols);
+        int[] fields = batch.fields();
+        batch.reset(from);
+        for (int rowId = from; rowId < to; rowId++) {
+            if (batch.isFull()) {
+                consumer.accept(batch);
+                batch.reset(rowId);
+            }
+            int offset = batch.getNumRows() * numCols;
             for (int i = 0; i < numCols; i++) {
-                int val = random.nextInt(1024);
-                curRowBuffer.putInt(val);
+                fields[offset + i] = random.nextInt(BOUND);
             }
-            curRowBuffer.rewind();
-            rowBytes.add(curRowBuffer);
+            batch.commit();
+        }
+        if (batch.getNumRows() > 0) {
+            consumer.accept(batch);
+        }
+    }
+
+    /**
+     * The generator of java.util.Random, without its thread-safety, plus
+     * jumping ahead.
+     */
+    static final class Lcg {
+        private static final long MULTIPLIER = 0x5DEECE66DL;
+        private static final long ADDEND = 0xBL;
+        private static final long MASK = (1L << 48) - 1;
+
+        private long state;
+
+        /**
+         * Starts from the same state as new java.util.Random(seed).
+         */
+        Lcg(long seed) {
+            this.state = (seed ^ MULTIPLIER) & MASK;
+        }
+
+        /**
+         * Advances the generator by `steps` steps in O(log steps) time.
+         *
+         * n steps of x -> a * x + c compose to x -> A * x + C, with
+         * A = a^n and C = c * (a^(n-1) + ... + a + 1) mod 2^48. Both are built
+         * by squaring the single step once per bit of n.
+         */
+        void skip(long steps) {
+            long accMult = 1;
+            long accAdd = 0;
+            long curMult = MULTIPLIER;
+            long curAdd = ADDEND;
+            while (steps > 0) {
+                if ((steps & 1) != 0) {
+                    accMult = (accMult * curMult) & MASK;
+                    accAdd = (accAdd * curMult + curAdd) & MASK;
+                }
+                curAdd = ((curMult + 1) * curAdd) & MASK;
+                curMult = (curMult * curMult) & MASK;
+                steps >>>= 1;
+            }
+            state = (accMult * state + accAdd) & MASK;
+        }
+
+        private int next(int bits) {
+            state = (state * MULTIPLIER + ADDEND) & MASK;
+            return (int) (state >>> (48 - bits));
+        }
+
+        /**
+         * Same as java.util.Random.nextInt(bound) for a power-of-two `bound`,
+         * which always takes a single step.
+         */
+        int nextInt(int bound) {
+            return (int) ((bound * (long) next(31)) >> 31);
         }
-        return rowBytes;
     }
 }
@@ -0,0 +1,103 @@
+package memstore.data;
+
+/**
+ * A batch of consecutive rows, stored row-major in one int[]:
+ *   row 0 col 0 | row 0 col 1 | ... | row 1 col 0 | ...
+ *
+ * Loaders fill a batch and hand it to a {@link DataLoader.RowConsumer}, then
+ * reuse it for the next rows, so consumers must copy out whatever they keep.
+ */
+public final class RowBatch {
+    /**
+     * Default number of rows per batch.
+     */
+    public static final int DEFAULT_ROWS = 4096;
+
+    private final int numCols;
+    private final int capacity;
+    private final int[] fields;
+    private int numRows;
+    private int firstRowId;
+
+    public RowBatch(int numCols) {
+        this(numCols, DEFAULT_ROWS);
+    }
+
+    public RowBatch(int numCols, int capacity) {
+        this.numCols = numCols;
+        this.capacity = capacity;
+        this.fields = new int[numCols * capacity];
+    }
+
+    public int getNumCols() {
+        return numCols;
+    }
+
+    /**
+     * Returns the number of rows in the batch.
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Returns the id of the first row of the batch within the whole load.
+     */
+    public int getFirstRowId() {
+        return firstRowId;
+    }
+
+    public boolean isFull() {
+        return numRows == capacity;
+    }
+
+    /**
+     * Returns the int field at row `row` of the batch and column `colId`.
+     */
+    public int getInt(int row, int colId) {
+        return fields[row * numCols + colId];
+    }
+
+    /**
+     * Returns the backing array; row `row` of the batch starts at
+     * row * getNumCols(). Only the first getNumRows() rows are valid.
+     */
+    public int[] fields() {
+        return fields;
+    }
+
+    /**
+     * Appends a row, given as its fields in column order.
+     */
+    public void add(int[] row) {
+        System.arraycopy(row, 0, fields, numRows * numCols, numCols);
+        numRows++;
+    }
+
+    /**
+     * Appends rows `from` ... `from + count - 1` of `src`, or as many of them
+     * as still fit, with one copy. Returns the number of rows appended.
+     */
+    public int append(RowBatch src, int from, int count) {
+        int n = Math.min(count, capacity - numRows);
+        System.arraycopy(src.fields, from * numCols, fields, numRows * numCols, n * numCols);
+        numRows += n;
+        return n;
+    }
+
+    /**
+     * Appends a row whose fields the caller has already written to
+     * fields()[getNumRows() * getNumCols() ...].
+     */
+    public void commit() {
+        numRows++;
+    }
+
+    /**
+     * Empties the batch; the next row added gets id `firstRowId`.
+     */
+    public void reset(int firstRowId) {
+        this.firstRowId = firstRowId;
+        this.numRows = 0;
+    }
+}
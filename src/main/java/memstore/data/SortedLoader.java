@@ -0,0 +1,64 @@
+package memstore.data;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+
+import java.io.IOException;
+
+/**
+ * Wraps another DataLoader and returns its rows sorted by one column, to
+ * produce clustered data.
+ */
+public class SortedLoader implements DataLoader {
+    private DataLoader loader;
+    private int sortColumn;
+
+    public SortedLoader(DataLoader loader, int sortColumn) {
+        this.loader = loader;
+        this.sortColumn = sortColumn;
+    }
+
+    @Override
+    public int getNumCols() {
+        return loader.getNumCols();
+    }
+
+    @Override
+    public int getNumRows() throws IOException {
+        return loader.getNumRows();
+    }
+
+    /**
+     * Copies the wrapped loader's rows into one array, then delivers them in
+     * order of the sort column. Rows with equal keys keep their original order.
+     */
+    @Override
+    public void scan(RowConsumer consumer) throws IOException {
+        DataLoader rows = BufferedLoader.sized(loader);
+        int numCols = getNumCols();
+        int numRows = rows.getNumRows();
+        int[] fields = new int[numRows * numCols];
+        rows.scan(batch -> System.arraycopy(batch.fields(), 0, fields,
+                batch.getFirstRowId() * numCols, batch.getNumRows() * numCols));
+
+        int[] order = new int[numRows];
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            order[rowId] = rowId;
+        }
+        IntArrays.mergeSort(order, (a, b) ->
+                Integer.compare(fields[a * numCols + sortColumn], fields[b * numCols + sortColumn]));
+
+        RowBatch batch = new RowBatch(numCols);
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            if (batch.isFull()) {
+                consumer.accept(batch);
+                batch.reset(rowId);
+            }
+            System.arraycopy(fields, order[rowId] * numCols, batch.fields(),
+                    batch.getNumRows() * numCols, numCols);
+            batch.commit();
+        }
+        if (batch.getNumRows() > 0) {
+            consumer.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package memstore.server;
+
+import memstore.data.RandomizedLoader;
+import memstore.table.ConcurrentTable;
+import memstore.table.CustomTable;
+import picocli.CommandLine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Load generator for a {@link QueryServer}: replays the query mix of
+ * {@link memstore.workloadbench.CustomTableBenchAbstract} from many
+ * connections at once.
+ *
+ * Every connection runs `numQueries` rounds of the mix: columnSum(),
+ * predicatedUpdate(), columnSum(), predicatedColumnSum(), every third round
+ * predicatedAllColumnsSum(), and 20 random puts, with thresholds below 1024.
+ * A round is sent as one pipelined batch, and its round trip is timed.
+ */
+public class LoadGenerator {
+    static final int UPPER_BOUND_COLUMN_VALUE = 1024;
+    static final int PUTS_PER_ROUND = 20;
+
+    /**
+     * Totals of one run.
+     */
+    public static final class Result {
+        public long requests;
+        public long rounds;
+        public long elapsedNanos;
+        /**
+         * Sum of all responses, like the benchmark's result.
+         */
+        public long checksum;
+        public final LatencyHistogram roundTrips = new LatencyHistogram();
+
+        public double getRequestsPerSecond() {
+            return elapsedNanos > 0 ? requests * 1e9 / elapsedNanos : 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(
+                    "%d requests in %d rounds, %.0f req/s, round trip mean %d us, p50 < %d us, p99 < %d us",
+                    requests, rounds, getRequestsPerSecond(), roundTrips.getMeanNanos() / 1000,
+                    roundTrips.getPercentileNanos(0.5) / 1000, roundTrips.getPercentileNanos(0.99) / 1000);
+        }
+    }
+
+    private LoadGenerator() { }
+
+    /**
+     * Runs the mix against the server at `host`:`port` over `connections`
+     * connections, each seeded with `seed` plus its number.
+     *
+     * @param numRows number of rows of the served table, for the puts.
+     */
+    public static Result run(String host, int port, int connections, int numQueries, int numRows, int seed)
+            throws IOException, InterruptedException {
+        Result result = new Result();
+        ExecutorService pool = Executors.newFixedThreadPool(connections);
+        List<Future<long[]>> futures = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < connections; c++) {
+            Random random = new Random(seed + c);
+            futures.add(pool.submit(() -> replay(host, port, numQueries, numRows, random, result)));
+        }
+        try {
+            for (Future<long[]> future : futures) {
+                long[] totals = future.get();
+                result.requests += totals[0];
+                result.checksum += totals[1];
+            }
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        result.elapsedNanos = System.nanoTime() - start;
+        result.rounds = result.roundTrips.getCount();
+        return result;
+    }
+
+    /**
+     * Runs the mix over one connection, and returns its number of requests
+     * and the sum of their responses.
+     */
+    private static long[] replay(String host, int port, int numQueries, int numRows, Random random,
+                                 Result result) throws IOException {
+        long requests = 0;
+        long checksum = 0;
+        try (QueryClient client = new QueryClient(host, port)) {
+            for (int i = 0; i < numQueries; i++) {
+                long start = System.nanoTime();
+                client.sendColumnSum();
+                client.sendPredicatedUpdate(random.nextInt(UPPER_BOUND_COLUMN_VALUE));
+                client.sendColumnSum();
+                client.sendPredicatedColumnSum(random.nextInt(UPPER_BOUND_COLUMN_VALUE),
+                        random.nextInt(UPPER_BOUND_COLUMN_VALUE));
+                if (i % 3 == 0) {
+                    client.sendPredicatedAllColumnsSum(random.nextInt(UPPER_BOUND_COLUMN_VALUE));
+                }
+                for (int j = 0; j < PUTS_PER_ROUND; j++) {
+                    client.sendPutIntField(random.nextInt(numRows), j % 5, random.nextInt(UPPER_BOUND_COLUMN_VALUE));
+                }
+                client.flush();
+                while (client.getPendingResponses() > 0) {
+                    checksum += client.receive();
+                    requests++;
+                }
+                result.roundTrips.record(System.nanoTime() - start);
+            }
+        }
+        return new long[]{requests, checksum};
+    }
+
+    static class Args {
+        @CommandLine.Option(names = {"-h", "--help"}, usageHelp = true, description = "display this help message")
+        boolean usageHelpRequested;
+
+        @CommandLine.Option(names = {"--host"}, description = "server host")
+        String host = "localhost";
+
+        @CommandLine.Option(names = {"-p", "--port"}, description = "server port; 0 serves a random table in-process")
+        int port = 0;
+
+        @CommandLine.Option(names = {"-c", "--connections"}, description = "number of connections")
+        int connections = 16;
+
+        @CommandLine.Option(names = {"-q", "--queries"}, description = "rounds of the mix per connection")
+        int numQueries = 100;
+
+        @CommandLine.Option(names = {"-r", "--rows"}, description = "number of rows of the table")
+        int numRows = 275_000;
+
+        @CommandLine.Option(names = {"--cols"}, description = "number of columns of the in-process table")
+        int numCols = 100;
+
+        @CommandLine.Option(names = {"-s", "--seed"}, description = "random seed")
+        int seed = 0;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Args appArgs = new Args();
+        CommandLine commandLine = new CommandLine(appArgs);
+        commandLine.parse(args);
+        if (commandLine.isUsageHelpRequested()) {
+            commandLine.usage(System.out);
+            System.exit(0);
+        }
+
+        QueryServer server = null;
+        int port = appArgs.port;
+        if (port == 0) {
+            CustomTable table = new CustomTable();
+            table.load(new RandomizedLoader(appArgs.seed, appArgs.numRows, appArgs.numCols));
+            server = new QueryServer(new ConcurrentTable(table, false), 0);
+            port = server.getPort();
+        }
+        try {
+            System.out.println(run(appArgs.host, port, appArgs.connections, appArgs.numQueries,
+                    appArgs.numRows, appArgs.seed));
+            if (server != null) {
+                System.out.println("Server: " + server.getStats());
+            }
+        } finally {
+            if (server != null) {
+                server.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package memstore.server;
+
+/**
+ * Wire protocol between {@link QueryClient} and {@link QueryServer}.
+ *
+ * A request is an opcode byte followed by the call's int arguments, each a
+ * big-endian int32, as many as the call takes. A response is a status byte
+ * followed, for OK, by the result as a big-endian int64 (0 for a put), or,
+ * for ERROR, by the error message as a modified UTF-8 string (see
+ * DataOutput.writeUTF). Clients may send many requests before reading any
+ * response; the server answers them in order and flushes its responses
+ * only once it has no more requests buffered, so that a pipelined batch of
+ * requests is answered by one batch of responses.
+ *
+ * An unknown opcode is answered with an ERROR and the connection closed,
+ * since the server cannot know where the next request starts.
+ */
+final class Protocol {
+    static final byte GET_INT_FIELD = 1;
+    static final byte PUT_INT_FIELD = 2;
+    static final byte COLUMN_SUM = 3;
+    static final byte PREDICATED_COLUMN_SUM = 4;
+    static final byte PREDICATED_ALL_COLUMNS_SUM = 5;
+    static final byte PREDICATED_UPDATE = 6;
+
+    static final byte OK = 0;
+    static final byte ERROR = 1;
+
+    /**
+     * Size of the socket stream buffers on both sides.
+     */
+    static final int BUFFER_SIZE = 1 << 16;
+
+    private Protocol() { }
+}
@@ -0,0 +1,164 @@
+package memstore.server;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+
+/**
+ * Client of a {@link QueryServer}, over one connection. Not thread-safe.
+ *
+ * Requests can be pipelined: the send methods only buffer a request, flush()
+ * sends everything buffered, and receive() reads the responses back in the
+ * order the requests were sent. The other methods send one request and wait
+ * for its response. The server only reads requests while it can write
+ * responses, so a client must not send more than its socket buffers hold
+ * before it starts receiving.
+ */
+public class QueryClient implements AutoCloseable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private int pending;
+
+    public QueryClient(String host, int port) throws IOException {
+        this.socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream(), Protocol.BUFFER_SIZE));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), Protocol.BUFFER_SIZE));
+    }
+
+    private void request(byte opcode) throws IOException {
+        out.writeByte(opcode);
+        pending++;
+    }
+
+    public void sendGetIntField(int rowId, int colId) throws IOException {
+        request(Protocol.GET_INT_FIELD);
+        out.writeInt(rowId);
+        out.writeInt(colId);
+    }
+
+    public void sendPutIntField(int rowId, int colId, int field) throws IOException {
+        request(Protocol.PUT_INT_FIELD);
+        out.writeInt(rowId);
+        out.writeInt(colId);
+        out.writeInt(field);
+    }
+
+    public void sendColumnSum() throws IOException {
+        request(Protocol.COLUMN_SUM);
+    }
+
+    public void sendPredicatedColumnSum(int threshold1, int threshold2) throws IOException {
+        request(Protocol.PREDICATED_COLUMN_SUM);
+        out.writeInt(threshold1);
+        out.writeInt(threshold2);
+    }
+
+    public void sendPredicatedAllColumnsSum(int threshold) throws IOException {
+        request(Protocol.PREDICATED_ALL_COLUMNS_SUM);
+        out.writeInt(threshold);
+    }
+
+    public void sendPredicatedUpdate(int threshold) throws IOException {
+        request(Protocol.PREDICATED_UPDATE);
+        out.writeInt(threshold);
+    }
+
+    /**
+     * Sends the buffered requests.
+     */
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Returns the number of requests sent or buffered whose responses have
+     * not been received yet.
+     */
+    public int getPendingResponses() {
+        return pending;
+    }
+
+    /**
+     * Waits for the response to the oldest pending request and returns its
+     * result, flushing first if needed. Throws an IOException carrying the
+     * server's message if the request failed.
+     */
+    public long receive() throws IOException {
+        if (pending == 0) {
+            throw new IllegalStateException("No request pending");
+        }
+        if (in.available() == 0) {
+            out.flush();
+        }
+        byte status = in.readByte();
+        pending--;
+        if (status == Protocol.OK) {
+            return in.readLong();
+        }
+        throw new IOException("Server error: " + in.readUTF());
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    public int getIntField(int rowId, int colId) throws IOException {
+        sendGetIntField(rowId, colId);
+        return (int) receive();
+    }
+
+    /**
+     * Inserts the passed-in int field at row `rowId` and column `colId`.
+     */
+    public void putIntField(int rowId, int colId, int field) throws IOException {
+        sendPutIntField(rowId, colId, field);
+        receive();
+    }
+
+    /**
+     * Runs
+     *  SELECT SUM(col0) FROM table;
+     */
+    public long columnSum() throws IOException {
+        sendColumnSum();
+        return receive();
+    }
+
+    /**
+     * Runs
+     *  SELECT SUM(col0) FROM table WHERE col1 > threshold1 AND col2 < threshold2;
+     */
+    public long predicatedColumnSum(int threshold1, int threshold2) throws IOException {
+        sendPredicatedColumnSum(threshold1, threshold2);
+        return receive();
+    }
+
+    /**
+     * Runs
+     *  SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE col0 > threshold;
+     */
+    public long predicatedAllColumnsSum(int threshold) throws IOException {
+        sendPredicatedAllColumnsSum(threshold);
+        return receive();
+    }
+
+    /**
+     * Runs
+     *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+     *
+     *   Returns the number of rows updated.
+     */
+    public int predicatedUpdate(int threshold) throws IOException {
+        sendPredicatedUpdate(threshold);
+        return (int) receive();
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
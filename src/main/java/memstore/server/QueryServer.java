@@ -0,0 +1,219 @@
+package memstore.server;
+
+import memstore.table.Table;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP server that runs the {@link Table} point operations and benchmark
+ * queries of one table for remote {@link QueryClient}s; see {@link Protocol}.
+ *
+ * Each connection is served by its own thread, which reads requests,
+ * calls the table and buffers the responses until the client has no more
+ * requests in flight. Connections therefore call the table from many
+ * threads at once, so the table must be thread-safe, such as a
+ * {@link memstore.table.ConcurrentTable}. The server never loads or closes
+ * the table.
+ */
+public class QueryServer implements AutoCloseable {
+    /**
+     * How long the acceptor waits before accepting again after a failure.
+     */
+    static final long ACCEPT_RETRY_MILLIS = 50;
+
+    private final Table table;
+    private final ServerSocket serverSocket;
+    private final ExecutorService connections;
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+    private final ServerStats stats = new ServerStats();
+    private final Thread acceptor;
+    private volatile boolean closed;
+
+    /**
+     * Starts serving `table` on the loopback interface.
+     *
+     * @param port port to listen on, or 0 for any free port; see getPort().
+     */
+    public QueryServer(Table table, int port) throws IOException {
+        this(table, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+    }
+
+    /**
+     * Starts serving `table` on `address`.
+     */
+    public QueryServer(Table table, InetSocketAddress address) throws IOException {
+        this.table = table;
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(address);
+        AtomicInteger connectionId = new AtomicInteger();
+        this.connections = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "memstore-server-connection-" + connectionId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.acceptor = new Thread(this::acceptUntilClosed, "memstore-server-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    /**
+     * Returns the port the server listens on.
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public ServerStats getStats() {
+        return stats;
+    }
+
+    private void acceptUntilClosed() {
+        while (!closed) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (closed || serverSocket.isClosed()) {
+                    return;
+                }
+                // Such as running out of file descriptors: back off rather
+                // than spin until the failure clears.
+                try {
+                    Thread.sleep(ACCEPT_RETRY_MILLIS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                continue;
+            }
+            sockets.add(socket);
+            if (closed) {
+                closeQuietly(socket);
+                return;
+            }
+            try {
+                connections.execute(() -> serve(socket));
+            } catch (RejectedExecutionException e) {
+                // Closed meanwhile.
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        stats.connectionOpened();
+        try {
+            socket.setTcpNoDelay(true);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), Protocol.BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), Protocol.BUFFER_SIZE));
+            int opcode;
+            while ((opcode = in.read()) >= 0) {
+                if (opcode < Protocol.GET_INT_FIELD || opcode > Protocol.PREDICATED_UPDATE) {
+                    out.writeByte(Protocol.ERROR);
+                    out.writeUTF("Unknown opcode: " + opcode);
+                    stats.requestServed(0, false);
+                    break;
+                }
+                long start = System.nanoTime();
+                boolean ok = handle((byte) opcode, in, out);
+                stats.requestServed(System.nanoTime() - start, ok);
+                if (in.available() == 0) {
+                    out.flush();
+                    stats.batchFlushed();
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            // The client went away; nothing to answer.
+        } finally {
+            stats.connectionClosed();
+            sockets.remove(socket);
+            closeQuietly(socket);
+        }
+    }
+
+    /**
+     * Reads the arguments of one request, runs it and buffers the response.
+     * Returns false if the table threw, which is answered with an error.
+     */
+    private boolean handle(byte opcode, DataInputStream in, DataOutputStream out) throws IOException {
+        long result;
+        try {
+            switch (opcode) {
+                case Protocol.GET_INT_FIELD:
+                    result = table.getIntField(in.readInt(), in.readInt());
+                    break;
+                case Protocol.PUT_INT_FIELD:
+                    table.putIntField(in.readInt(), in.readInt(), in.readInt());
+                    result = 0;
+                    break;
+                case Protocol.COLUMN_SUM:
+                    result = table.columnSum();
+                    break;
+                case Protocol.PREDICATED_COLUMN_SUM:
+                    result = table.predicatedColumnSum(in.readInt(), in.readInt());
+                    break;
+                case Protocol.PREDICATED_ALL_COLUMNS_SUM:
+                    result = table.predicatedAllColumnsSum(in.readInt());
+                    break;
+                case Protocol.PREDICATED_UPDATE:
+                    result = table.predicatedUpdate(in.readInt());
+                    break;
+                default:
+                    throw new AssertionError("Unknown opcode: " + opcode);
+            }
+        } catch (RuntimeException e) {
+            out.writeByte(Protocol.ERROR);
+            out.writeUTF(String.valueOf(e));
+            return false;
+        }
+        out.writeByte(Protocol.OK);
+        out.writeLong(result);
+        return true;
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // Nothing left to do with it.
+        }
+    }
+
+    /**
+     * Stops accepting connections and closes the open ones, waiting for
+     * requests in progress to finish.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : sockets) {
+            closeQuietly(socket);
+        }
+        connections.shutdown();
+        try {
+            acceptor.join();
+            connections.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package memstore.server;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of a {@link QueryServer}: connections, requests, response
+ * batches and the latency of each request, from reading its opcode to
+ * buffering its response.
+ */
+public final class ServerStats {
+    private final long startNanos = System.nanoTime();
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    void connectionOpened() {
+        openConnections.incrementAndGet();
+        connections.increment();
+    }
+
+    void connectionClosed() {
+        openConnections.decrementAndGet();
+    }
+
+    void requestServed(long nanos, boolean ok) {
+        requests.increment();
+        if (!ok) {
+            errors.increment();
+        }
+        latencies.record(nanos);
+    }
+
+    void batchFlushed() {
+        batches.increment();
+    }
+
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    public long getConnections() {
+        return connections.sum();
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * Returns the number of requests answered with an ERROR.
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    /**
+     * Returns the number of times responses were flushed to a client; the
+     * requests per batch tell how much clients pipeline.
+     */
+    public long getBatches() {
+        return batches.sum();
+    }
+
+    /**
+     * Returns the requests served per second since the server started.
+     */
+    public double getRequestsPerSecond() {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return seconds > 0 ? requests.sum() / seconds : 0;
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "%d connections (%d open), %d requests (%d errors) in %d batches, %.0f req/s, "
+                        + "latency mean %d ns, p50 < %d ns, p99 < %d ns",
+                getConnections(), getOpenConnections(), getRequests(), getErrors(), getBatches(),
+                getRequestsPerSecond(), latencies.getMeanNanos(), latencies.getPercentileNanos(0.5),
+                latencies.getPercentileNanos(0.99));
+    }
+}
@@ -0,0 +1,84 @@
+package memstore.table;
+
+import java.util.Arrays;
+
+/**
+ * An aggregate over the rows selected by a {@link Query}. SUM, MIN and MAX
+ * range over every field of the given columns, so that for instance
+ * sum(0, 1) is SUM(col0) + SUM(col1).
+ *
+ * Over no rows, SUM and COUNT are 0, MIN is Long.MAX_VALUE and MAX is
+ * Long.MIN_VALUE.
+ */
+public final class Aggregation {
+    public enum Function { SUM, COUNT, MIN, MAX }
+
+    final Function function;
+    final int[] colIds;
+
+    private Aggregation(Function function, int[] colIds) {
+        if (function != Function.COUNT && colIds.length == 0) {
+            throw new IllegalArgumentException(function + " needs at least one column");
+        }
+        for (int colId : colIds) {
+            if (colId < 0) {
+                throw new IllegalArgumentException("Negative column " + colId);
+            }
+        }
+        this.function = function;
+        this.colIds = colIds.clone();
+    }
+
+    public static Aggregation sum(int... colIds) {
+        return new Aggregation(Function.SUM, colIds);
+    }
+
+    public static Aggregation count() {
+        return new Aggregation(Function.COUNT, new int[0]);
+    }
+
+    public static Aggregation min(int... colIds) {
+        return new Aggregation(Function.MIN, colIds);
+    }
+
+    public static Aggregation max(int... colIds) {
+        return new Aggregation(Function.MAX, colIds);
+    }
+
+    public Function getFunction() {
+        return function;
+    }
+
+    /**
+     * Returns the value of the aggregate over no rows.
+     */
+    long identity() {
+        switch (function) {
+            case MIN:
+                return Long.MAX_VALUE;
+            case MAX:
+                return Long.MIN_VALUE;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Combines two partial results of the aggregate.
+     */
+    long combine(long a, long b) {
+        switch (function) {
+            case MIN:
+                return Math.min(a, b);
+            case MAX:
+                return Math.max(a, b);
+            default:
+                return a + b;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return function + Arrays.toString(colIds);
+    }
+}
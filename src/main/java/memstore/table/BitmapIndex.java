@@ -0,0 +1,138 @@
+package memstore.table;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Bitmap index on one column: a compressed RowBitmap of the rows holding each
+ * distinct value, plus range-encoded bitmaps at bin boundaries.
+ *
+ * Boundaries are placed every `binWidth` values across the range of values
+ * seen at load time, and the bitmap for boundary B holds every row whose
+ * value is < B. A range predicate `value < t` is then the bitmap of the
+ * largest boundary <= t, ORed with the per-value bitmaps of the fewer than
+ * binWidth values between that boundary and t.
+ */
+final class BitmapIndex {
+    /**
+     * Default number of values per bin.
+     */
+    static final int DEFAULT_BIN_WIDTH = 32;
+
+    private final int numRows;
+    private final TreeMap<Integer, RowBitmap> values = new TreeMap<>();
+    private final int binWidth;
+    private int firstBoundary;
+    private RowBitmap[] lessThanBoundary;
+
+    BitmapIndex(int numRows, int binWidth) {
+        this.numRows = numRows;
+        this.binWidth = binWidth;
+    }
+
+    /**
+     * Adds `rowId` under `value`. The range-encoded bitmaps are only built by
+     * buildRanges(), once every row has been added.
+     */
+    void add(int rowId, int value) {
+        values.computeIfAbsent(value, v -> new RowBitmap(numRows)).add(rowId);
+    }
+
+    void buildRanges() {
+        if (values.isEmpty()) {
+            lessThanBoundary = new RowBitmap[0];
+            return;
+        }
+        long min = values.firstKey();
+        long max = values.lastKey();
+        int numBoundaries = (int) ((max - min) / binWidth) + 1;
+        firstBoundary = (int) min;
+        lessThanBoundary = new RowBitmap[numBoundaries];
+
+        // Sweep the values in order, accumulating the rows below each boundary.
+        long[] words = new long[(numRows + 63) >>> 6];
+        Iterator<Map.Entry<Integer, RowBitmap>> entries = values.entrySet().iterator();
+        Map.Entry<Integer, RowBitmap> next = entries.next();
+        for (int b = 0; b < numBoundaries; b++) {
+            while (next != null && next.getKey() < boundary(b)) {
+                next.getValue().orInto(words);
+                next = entries.hasNext() ? entries.next() : null;
+            }
+            lessThanBoundary[b] = RowBitmap.fromWords(words, numRows);
+        }
+    }
+
+    private long boundary(int b) {
+        return (long) firstBoundary + (long) b * binWidth;
+    }
+
+    /**
+     * Moves `rowId` from `oldValue` to `newValue`.
+     */
+    void move(int rowId, int oldValue, int newValue) {
+        RowBitmap oldRows = values.get(oldValue);
+        oldRows.remove(rowId);
+        if (oldRows.cardinality() == 0) {
+            values.remove(oldValue);
+        }
+        add(rowId, newValue);
+        for (int b = 0; b < lessThanBoundary.length; b++) {
+            boolean wasBelow = oldValue < boundary(b);
+            boolean isBelow = newValue < boundary(b);
+            if (wasBelow && !isBelow) {
+                lessThanBoundary[b].remove(rowId);
+            } else if (isBelow && !wasBelow) {
+                lessThanBoundary[b].add(rowId);
+            }
+        }
+    }
+
+    /**
+     * Returns a plain bitmap over all rows of the rows whose value is < t.
+     */
+    long[] lessThan(long t) {
+        long[] words = new long[(numRows + 63) >>> 6];
+        int b = lessThanBoundary.length == 0 || t < firstBoundary
+                ? -1
+                : (int) Math.min(lessThanBoundary.length - 1, (t - firstBoundary) / binWidth);
+        Map<Integer, RowBitmap> rest;
+        if (b < 0) {
+            rest = t > Integer.MAX_VALUE ? values : values.headMap((int) t, false);
+        } else {
+            lessThanBoundary[b].orInto(words);
+            rest = t > Integer.MAX_VALUE
+                    ? values.tailMap((int) boundary(b), true)
+                    : values.subMap((int) boundary(b), true, (int) t, false);
+        }
+        for (RowBitmap rowIds : rest.values()) {
+            rowIds.orInto(words);
+        }
+        return words;
+    }
+
+    /**
+     * Returns a plain bitmap over all rows of the rows whose value is > t.
+     */
+    long[] greaterThan(int t) {
+        long[] words = lessThan((long) t + 1);
+        for (int i = 0; i < words.length; i++) {
+            words[i] = ~words[i];
+        }
+        if ((numRows & 63) != 0) {
+            words[words.length - 1] &= (1L << numRows) - 1;
+        }
+        return words;
+    }
+
+    /**
+     * Returns the sum of the indexed column.
+     */
+    long sum() {
+        long sum = 0;
+        for (Map.Entry<Integer, RowBitmap> entry : values.entrySet()) {
+            sum += (long) entry.getKey() * entry.getValue().cardinality();
+        }
+        return sum;
+    }
+}
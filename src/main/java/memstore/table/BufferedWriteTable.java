@@ -0,0 +1,311 @@
+package memstore.table;
+
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import memstore.data.DataLoader;
+
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wrapper that takes point writes off the calling threads: putIntField()
+ * only enqueues the write in a lock-free {@link UpdateRing}, and an applier
+ * thread drains the ring in batches, sorts each batch by row and column and
+ * applies it to the wrapped table. Sorting turns a burst of random writes
+ * into one pass in address order over the table's storage, and keeps
+ * writes to the same field in the order they were made.
+ *
+ * The wrapped table is only touched under one lock, by the applier and by
+ * reads, so it need not be thread-safe. Writes are applied in the order
+ * they were enqueued, for each field. How reads see writes still queued is
+ * set by the {@link Consistency} mode.
+ *
+ * The applier parks while the ring is empty. It sets `idle` before it
+ * checks the ring one last time, and writers check `idle` after they
+ * enqueue, so either the applier sees the write or the writer wakes it up.
+ */
+public class BufferedWriteTable implements Table {
+    static final int DEFAULT_CAPACITY = 1 << 16;
+    static final int BATCH_SIZE = 4096;
+
+    /**
+     * How reads see writes still in the ring.
+     */
+    public enum Consistency {
+        /**
+         * Every read first applies all writes enqueued before it.
+         */
+        FLUSH_BEFORE_READ,
+        /**
+         * Queries first apply all writes enqueued before them, but
+         * getIntField() looks the field up in the ring instead, so a thread
+         * reads its own writes without waiting for them to be applied.
+         */
+        READ_YOUR_WRITES
+    }
+
+    private final Table table;
+    private final Consistency consistency;
+    private final UpdateRing ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Thread applier;
+    private volatile boolean closed;
+    private volatile boolean idle;
+    /**
+     * Whether close() has closed the wrapped table. Guarded by the lock.
+     */
+    private boolean tableClosed;
+
+    private final long[] batchKeys = new long[BATCH_SIZE];
+    private final int[] batchValues = new int[BATCH_SIZE];
+    private final int[] order = new int[BATCH_SIZE];
+    private final int[] probed = new int[1];
+
+    public BufferedWriteTable(Table table, Consistency consistency) {
+        this(table, consistency, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param table       table to apply the writes to.
+     * @param consistency how reads see writes not yet applied.
+     * @param capacity    number of writes the ring holds, a power of two.
+     *                    Writers wait when it is full.
+     */
+    public BufferedWriteTable(Table table, Consistency consistency, int capacity) {
+        this.table = table;
+        this.consistency = consistency;
+        this.ring = new UpdateRing(capacity);
+        this.applier = new Thread(this::applyUntilClosed, "memstore-write-applier");
+        applier.setDaemon(true);
+        applier.start();
+    }
+
+    private void applyUntilClosed() {
+        while (!closed) {
+            lock.lock();
+            int applied;
+            try {
+                applied = applyBatch();
+            } finally {
+                lock.unlock();
+            }
+            if (applied == 0) {
+                idle = true;
+                if (ring.head() == ring.tail() && !closed) {
+                    LockSupport.park(this);
+                }
+                idle = false;
+            }
+        }
+    }
+
+    /**
+     * Drains one batch from the ring and applies it in row and column
+     * order. The merge sort is stable, so writes to the same field stay in
+     * the order they were made. Must hold the lock.
+     */
+    private int applyBatch() {
+        int n = ring.drain(batchKeys, batchValues);
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        IntArrays.mergeSort(order, 0, n, (a, b) -> Long.compare(batchKeys[a], batchKeys[b]));
+        for (int i = 0; i < n; i++) {
+            long key = batchKeys[order[i]];
+            table.putIntField(UpdateRing.rowId(key), UpdateRing.colId(key), batchValues[order[i]]);
+        }
+        return n;
+    }
+
+    /**
+     * Applies every write enqueued before the call. Must hold the lock.
+     */
+    private void flush() {
+        long tail = ring.tail();
+        while (ring.head() < tail) {
+            if (applyBatch() == 0) {
+                // A writer has claimed a slot but not filled it in yet.
+                Thread.yield();
+            }
+        }
+    }
+
+    /**
+     * Applies every write enqueued before the call.
+     */
+    public void flushWrites() {
+        lock.lock();
+        try {
+            flush();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of writes enqueued but not yet applied.
+     */
+    public long getPendingWrites() {
+        return ring.tail() - ring.head();
+    }
+
+    @Override
+    public void load(DataLoader loader) throws IOException {
+        lock.lock();
+        try {
+            flush();
+            table.load(loader);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public int getIntField(int rowId, int colId) {
+        lock.lock();
+        try {
+            if (consistency == Consistency.READ_YOUR_WRITES) {
+                if (ring.probe(UpdateRing.key(rowId, colId), probed)) {
+                    return probed[0];
+                }
+            } else {
+                flush();
+            }
+            return table.getIntField(rowId, colId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enqueues a write of the passed-in int field at row `rowId` and column
+     * `colId`, to be applied later.
+     */
+    @Override
+    public void putIntField(int rowId, int colId, int field) {
+        if (closed) {
+            throw new IllegalStateException("Table is closed");
+        }
+        long pos = ring.offer(rowId, colId, field);
+        if (idle) {
+            LockSupport.unpark(applier);
+        }
+        if (closed) {
+            // close() may have flushed before the write was enqueued.
+            lock.lock();
+            try {
+                if (ring.head() <= pos) {
+                    if (tableClosed) {
+                        throw new IllegalStateException("Table is closed");
+                    }
+                    flush();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public long columnSum() {
+        lock.lock();
+        try {
+            flush();
+            return table.columnSum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long predicatedColumnSum(int threshold1, int threshold2) {
+        lock.lock();
+        try {
+            flush();
+            return table.predicatedColumnSum(threshold1, threshold2);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long predicatedAllColumnsSum(int threshold) {
+        lock.lock();
+        try {
+            flush();
+            return table.predicatedAllColumnsSum(threshold);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int predicatedUpdate(int threshold) {
+        lock.lock();
+        try {
+            flush();
+            return table.predicatedUpdate(threshold);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long[] select(Query query) {
+        lock.lock();
+        try {
+            flush();
+            return table.select(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int update(Query query) {
+        lock.lock();
+        try {
+            flush();
+            return table.update(query);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void setParallelism(int parallelism) {
+        lock.lock();
+        try {
+            table.setParallelism(parallelism);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Applies the remaining writes, stops the applier and closes the wrapped
+     * table. Writes after this throw IllegalStateException, and so do writes
+     * racing with it that it did not apply.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(applier);
+        try {
+            applier.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        lock.lock();
+        try {
+            flush();
+            tableClosed = true;
+            table.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package memstore.table;
+
+import memstore.data.ByteFormat;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * IntStorage backed by a ByteBuffer, with each field taking
+ * ByteFormat.FIELD_LEN bytes in the buffer's byte order.
+ */
+public final class ByteBufferStorage implements IntStorage {
+    private final ByteBuffer buffer;
+    private final IntBuffer ints;
+
+    /**
+     * Allocates a big-endian heap buffer for `size` fields.
+     */
+    public ByteBufferStorage(int size) {
+        this(ByteBuffer.allocate(ByteFormat.FIELD_LEN * size));
+    }
+
+    /**
+     * Wraps an existing buffer, starting at its position.
+     */
+    public ByteBufferStorage(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.ints = buffer.asIntBuffer();
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    @Override
+    public int size() {
+        return ints.capacity();
+    }
+
+    @Override
+    public int get(int index) {
+        return ints.get(index);
+    }
+
+    @Override
+    public void put(int index, int value) {
+        ints.put(index, value);
+    }
+
+    /**
+     * Bulk copies go through a duplicate view, since positioning the shared
+     * view would not be safe with concurrent readers.
+     */
+    @Override
+    public void get(int index, int[] dst, int offset, int length) {
+        IntBuffer view = ints.duplicate();
+        ((Buffer) view).position(index);
+        view.get(dst, offset, length);
+    }
+
+    @Override
+    public void put(int index, int[] src, int offset, int length) {
+        IntBuffer view = ints.duplicate();
+        ((Buffer) view).position(index);
+        view.put(src, offset, length);
+    }
+}
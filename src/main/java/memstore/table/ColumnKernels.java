@@ -0,0 +1,68 @@
+package memstore.table;
+
+/**
+ * Shared constants and hand-written kernels for column-major data.
+ *
+ * Queries are scanned by the kernels {@link QueryKernel} compiles from their
+ * plans; this class holds the batch size they share and the one fixed
+ * kernel still called directly, the predicated update that
+ * {@link PendingUpdates} applies a block at a time.
+ *
+ * Columns are addressed by the index of their first field in `data`, and
+ * every kernel works on the row range [from, to). The kernels copy
+ * BATCH_SIZE values of each column they touch into int[] scratch arrays and
+ * then run simple, branch-free loops over those arrays, which the JIT can
+ * unroll and compile to SIMD instructions.
+ */
+final class ColumnKernels {
+    static final int BATCH_SIZE = 1024;
+
+    private ColumnKernels() { }
+
+    /**
+     * Whether ColumnTables use the batched kernels by default. Can be turned
+     * off with -Dmemstore.batchedKernels=false.
+     */
+    static final boolean BATCHED_BY_DEFAULT =
+            Boolean.parseBoolean(System.getProperty("memstore.batchedKernels", "true"));
+
+    /**
+     * Scratch space for a single scan, so that the kernels do not allocate
+     * per batch.
+     */
+    static final class Scratch {
+        final int[] a = new int[BATCH_SIZE];
+        final int[] b = new int[BATCH_SIZE];
+        final int[] c = new int[BATCH_SIZE];
+        final int[] d = new int[BATCH_SIZE];
+    }
+
+    /**
+     * UPDATE dst = src1 + src2 WHERE pred < threshold over rows [from, to).
+     * Returns the number of rows updated.
+     */
+    static int updateWhereLt(IntStorage data, int predCol, int threshold, int src1Col,
+                             int src2Col, int dstCol, int from, int to, Scratch s) {
+        int count = 0;
+        for (int base = from; base < to; base += BATCH_SIZE) {
+            int n = Math.min(BATCH_SIZE, to - base);
+            data.get(predCol + base, s.a, 0, n);
+            int matches = 0;
+            for (int i = 0; i < n; i++) {
+                matches += s.a[i] < threshold ? 1 : 0;
+            }
+            if (matches == 0) {
+                continue;
+            }
+            count += matches;
+            data.get(src1Col + base, s.b, 0, n);
+            data.get(src2Col + base, s.c, 0, n);
+            data.get(dstCol + base, s.d, 0, n);
+            for (int i = 0; i < n; i++) {
+                s.d[i] = s.a[i] < threshold ? s.b[i] + s.c[i] : s.d[i];
+            }
+            data.put(dstCol + base, s.d, 0, n);
+        }
+        return count;
+    }
+}
@@ -1,11 +1,9 @@
 package memstore.table;
 
-import memstore.data.ByteFormat;
+import memstore.data.BufferedLoader;
 import memstore.data.DataLoader;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.List;
 
 /**
  * ColumnTable, which stores data in column-major format.
@@ -15,9 +13,43 @@ import java.util.List;
 public class ColumnTable implements Table {
     int numCols;
     int numRows;
-    ByteBuffer columns;
+    IntStorage columns;
+    StorageType storageType;
+    boolean batchedKernels;
+    int parallelism = 1;
+    int zoneMapBlockRows;
+    ZoneMap zoneMap;
+    int sharedScanBlockRows;
+    SharedScan sharedScan;
+    final MaintainedAggregates aggregates = new MaintainedAggregates(this);
+    MaintainedAggregates.ColumnSum col0Sum;
+    DominanceSum predicatedSum;
+    KeyedRowSum rowSums;
+    int lazyUpdateBlockRows;
+    PendingUpdates pendingUpdates;
+    ValueCounts col0Counts;
 
-    public ColumnTable() { }
+    public ColumnTable() {
+        this(StorageType.INT_ARRAY, ColumnKernels.BATCHED_BY_DEFAULT);
+    }
+
+    public ColumnTable(boolean batchedKernels) {
+        this(StorageType.INT_ARRAY, batchedKernels);
+    }
+
+    public ColumnTable(StorageType storageType) {
+        this(storageType, ColumnKernels.BATCHED_BY_DEFAULT);
+    }
+
+    /**
+     * @param storageType    storage to keep the columns in.
+     * @param batchedKernels whether queries use the batched, vectorizable scan
+     *                       kernels or the scalar field-at-a-time ones.
+     */
+    public ColumnTable(StorageType storageType, boolean batchedKernels) {
+        this.storageType = storageType;
+        this.batchedKernels = batchedKernels;
+    }
 
     /**
      * Loads data into the table through passed-in data loader. Is not timed.
@@ -26,18 +58,67 @@ public class ColumnTable implements Table {
      * @throws IOException
      */
     public void load(DataLoader loader) throws IOException {
+        loader = BufferedLoader.sized(loader);
         this.numCols = loader.getNumCols();
-        List<ByteBuffer> rows = loader.getRows();
-        numRows = rows.size();
-        this.columns = ByteBuffer.allocate(ByteFormat.FIELD_LEN*numRows*numCols);
-
-        for (int rowId = 0; rowId < numRows; rowId++) {
-            ByteBuffer curRow = rows.get(rowId);
-            for (int colId = 0; colId < numCols; colId++) {
-                int offset = ByteFormat.FIELD_LEN * ((colId * numRows) + rowId);
-                this.columns.putInt(offset, curRow.getInt(ByteFormat.FIELD_LEN*colId));
+        numRows = loader.getNumRows();
+        this.columns = storageType.allocate(numRows*numCols);
+
+        // Batches only write their own rows, so they can be copied in parallel.
+        loader.scanConcurrently(batch -> {
+            int[] fields = batch.fields();
+            int[] column = new int[Math.min(ColumnKernels.BATCH_SIZE, batch.getNumRows())];
+            for (int base = 0; base < batch.getNumRows(); base += column.length) {
+                int n = Math.min(column.length, batch.getNumRows() - base);
+                for (int colId = 0; colId < numCols; colId++) {
+                    for (int i = 0; i < n; i++) {
+                        column[i] = fields[(base + i) * numCols + colId];
+                    }
+                    this.columns.put((colId * numRows) + batch.getFirstRowId() + base, column, 0, n);
+                }
             }
+        });
+        loaded();
+    }
+
+    /**
+     * Writes the table's data to a snapshot file at `path`, which
+     * loadSnapshot() can map back.
+     */
+    public void writeSnapshot(String path) throws IOException {
+        if (pendingUpdates != null) {
+            pendingUpdates.applyAll();
         }
+        TableSnapshot.write(path, TableSnapshot.Layout.COLUMN_MAJOR, numRows, numCols, columns);
+    }
+
+    /**
+     * Loads the table from a snapshot written by writeSnapshot(), by
+     * memory-mapping the file as the table's storage instead of the storage
+     * type it was created with. Nothing is parsed or copied; pages are read
+     * in as queries first touch them. Writes to the table are not written
+     * back to the file.
+     */
+    public void loadSnapshot(String path) throws IOException {
+        TableSnapshot snapshot = TableSnapshot.map(path, TableSnapshot.Layout.COLUMN_MAJOR);
+        close();
+        this.numRows = snapshot.numRows;
+        this.numCols = snapshot.numCols;
+        this.columns = snapshot.data;
+        loaded();
+    }
+
+    /**
+     * Builds what the table keeps on top of freshly loaded data.
+     */
+    private void loaded() {
+        if (zoneMapBlockRows > 0) {
+            zoneMap = new ZoneMap(columns, numRows, numCols, zoneMapBlockRows);
+        }
+        sharedScan = sharedScanBlockRows > 0 ? new SharedScan(numRows, sharedScanBlockRows) : null;
+        pendingUpdates = lazyUpdateBlockRows > 0 && numCols > 3
+                ? new PendingUpdates(columns, numRows, lazyUpdateBlockRows)
+                : null;
+        aggregates.recomputeAll(numRows);
     }
 
     /**
@@ -45,8 +126,10 @@ public class ColumnTable implements Table {
      */
     @Override
     public int getIntField(int rowId, int colId) {
-        int offset = ByteFormat.FIELD_LEN * ((colId * numRows) + rowId);
-        return columns.getInt(offset);
+        if (colId == 3 && pendingUpdates != null) {
+            pendingUpdates.applyRow(rowId);
+        }
+        return columns.get((colId * numRows) + rowId);
     }
 
     /**
@@ -54,8 +137,251 @@ public class ColumnTable implements Table {
      */
     @Override
     public void putIntField(int rowId, int colId, int field) {
-        int offset = ByteFormat.FIELD_LEN * ((colId * numRows) + rowId);
-        columns.putInt(offset, field);
+        if (colId <= 3 && pendingUpdates != null) {
+            pendingUpdates.applyRow(rowId);
+        }
+        if (aggregates.dependsOn(colId)) {
+            aggregates.onPut(rowId, colId, getIntField(rowId, colId), field);
+        }
+        columns.put((colId * numRows) + rowId, field);
+        if (zoneMap != null) {
+            zoneMap.include(rowId, colId, field);
+        }
+    }
+
+    /**
+     * Frees the table's storage; see {@link StorageType#DIRECT}.
+     */
+    @Override
+    public void close() {
+        if (columns != null) {
+            columns.close();
+        }
+    }
+
+    /**
+     * Sets the number of threads each query may use. Queries split the row
+     * range into morsels and run them on a pool shared by all tables; the
+     * default of 1 runs every query on the calling thread.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the registry of aggregates this table keeps up to date.
+     */
+    public MaintainedAggregates getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Keeps a running SUM(col0) up to date on every write, so that
+     * columnSum() reads a counter instead of scanning.
+     */
+    public void setMaintainColumnSum(boolean maintain) {
+        if (maintain && col0Sum == null) {
+            col0Sum = aggregates.register(new MaintainedAggregates.ColumnSum(0));
+        } else if (!maintain && col0Sum != null) {
+            aggregates.unregister(col0Sum);
+            col0Sum = null;
+        }
+    }
+
+    /**
+     * Keeps SUM(col0) over every pair of col1 and col2 values in a
+     * {@link DominanceSum}, so that predicatedColumnSum() reads the tree
+     * instead of scanning while the domains of col1 and col2 are small
+     * enough for one.
+     */
+    public void setMaintainPredicatedColumnSum(boolean maintain) {
+        if (maintain && predicatedSum == null) {
+            predicatedSum = aggregates.register(new DominanceSum(0, 1, 2));
+        } else if (!maintain && predicatedSum != null) {
+            aggregates.unregister(predicatedSum);
+            predicatedSum = null;
+        }
+    }
+
+    /**
+     * Keeps the total of every row, bucketed by col0, in a
+     * {@link KeyedRowSum}, so that predicatedAllColumnsSum() reads the tree
+     * instead of scanning while the domain of col0 is small enough for one.
+     */
+    public void setMaintainPredicatedAllColumnsSum(boolean maintain) {
+        if (maintain && rowSums == null) {
+            rowSums = aggregates.register(new KeyedRowSum(0, () -> numCols));
+        } else if (!maintain && rowSums != null) {
+            aggregates.unregister(rowSums);
+            rowSums = null;
+        }
+    }
+
+    /**
+     * Defers predicatedUpdate() instead of running it: the update is
+     * recorded as pending for every block of `blockRows` rows and applied to
+     * a block the first time col3 is read in it, and the number of rows
+     * updated is counted from a {@link ValueCounts} view of col0. Writes to
+     * col0 to col3 apply the pending updates of their block first, and
+     * queries that read col3 apply them all. Updates run eagerly while zone
+     * maps or aggregates over col3 are kept, or if col0's domain is too
+     * large for the view. Takes effect immediately if the table is loaded,
+     * and on every later load; 0 turns lazy updates off.
+     */
+    public void setLazyUpdateBlockRows(int blockRows) {
+        if (pendingUpdates != null) {
+            pendingUpdates.applyAll();
+        }
+        this.lazyUpdateBlockRows = blockRows;
+        if (blockRows > 0 && col0Counts == null) {
+            col0Counts = aggregates.register(new ValueCounts(0));
+        } else if (blockRows == 0 && col0Counts != null) {
+            aggregates.unregister(col0Counts);
+            col0Counts = null;
+        }
+        this.pendingUpdates = blockRows > 0 && columns != null && numCols > 3
+                ? new PendingUpdates(columns, numRows, blockRows)
+                : null;
+    }
+
+    /**
+     * Applies the pending updates if the plan reads col3, or, for an UPDATE,
+     * touches any of col0 to col3.
+     */
+    private void applyPendingUpdates(QueryPlan plan) {
+        if (pendingUpdates == null) {
+            return;
+        }
+        for (int colId : plan.columns) {
+            if (colId == 3 || (plan.update && colId < 3)) {
+                pendingUpdates.applyAll();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Keeps per-block min/max metadata for every column, with blocks of
+     * `blockRows` rows, so that predicated queries can skip blocks none of
+     * whose rows can match. Pays off when the filtered columns are clustered
+     * or sorted. Takes effect immediately if the table is loaded, and on
+     * every later load; 0 turns zone maps off.
+     */
+    public void setZoneMapBlockRows(int blockRows) {
+        if (pendingUpdates != null) {
+            pendingUpdates.applyAll();
+        }
+        this.zoneMapBlockRows = blockRows;
+        this.zoneMap = blockRows > 0 && columns != null
+                ? new ZoneMap(columns, numRows, numCols, blockRows)
+                : null;
+    }
+
+    /**
+     * Runs SELECTs as {@link SharedScan}s over blocks of `blockRows` rows, so
+     * that SELECTs running on the table at the same time, such as those of a
+     * {@link ConcurrentTable} shared by many clients, stream each block from
+     * memory once for all of them. Each SELECT then runs on its own thread
+     * and its parallelism is ignored. Zone maps take precedence. Takes effect
+     * immediately if the table is loaded, and on every later load; 0 turns
+     * shared scans off.
+     */
+    public void setSharedScanBlockRows(int blockRows) {
+        this.sharedScanBlockRows = blockRows;
+        this.sharedScan = blockRows > 0 && columns != null ? new SharedScan(numRows, blockRows) : null;
+    }
+
+    /**
+     * Runs `kernel` over all rows, or only over the blocks that pass `filter`
+     * if zone maps are enabled.
+     */
+    private long scan(ZoneMap.BlockFilter filter, ParallelScan.RangeSum kernel) {
+        if (zoneMap == null) {
+            return ParallelScan.sum(numRows, parallelism, kernel);
+        }
+        return zoneMap.scan(parallelism, filter, kernel);
+    }
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        long[] result = plan.newResult();
+        if (plan.empty) {
+            return result;
+        }
+        applyPendingUpdates(plan);
+        QueryKernel kernel = plan.kernel(kernelKind());
+        ParallelScan.RangeSum morsel = (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.select(columns, 1, numRows, from, to, part);
+            plan.merge(result, part);
+            return 0;
+        };
+        if (sharedScan != null && zoneMap == null) {
+            sharedScan.scan(morsel);
+        } else {
+            scan(blockId -> plan.canMatch(zoneMap, blockId), morsel);
+        }
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated.
+     *
+     * Each row only reads and writes its own fields, so morsels never touch
+     * the same rows and can be updated independently. The total change to the
+     * updated column is passed on to the maintained aggregates, summed by key
+     * for those that ask for it.
+     *
+     * With zone maps, the range of the updated column in every block that can
+     * match is first widened by the range of the expression in that block.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        if (plan.empty) {
+            return 0;
+        }
+        applyPendingUpdates(plan);
+        if (zoneMap != null) {
+            for (int blockId = 0; blockId < zoneMap.numBlocks; blockId++) {
+                if (plan.canMatch(zoneMap, blockId)) {
+                    plan.widen(zoneMap, blockId);
+                }
+            }
+        }
+        QueryKernel kernel = plan.kernel(kernelKind());
+        boolean trackDelta = aggregates.dependsOn(plan.dstCol);
+        KeyedDeltas keyed = trackDelta ? aggregates.keyedDeltas(plan.dstCol) : null;
+        long[] result = plan.newResult();
+        scan(blockId -> plan.canMatch(zoneMap, blockId), (from, to) -> {
+            long[] part = plan.newResult();
+            KeyedDeltas.Part keyedPart = keyed != null ? keyed.newPart() : null;
+            kernel.update(columns, 1, numRows, from, to, part, trackDelta, keyedPart);
+            plan.merge(result, part);
+            if (keyed != null) {
+                keyed.merge(keyedPart);
+            }
+            return 0;
+        });
+        if (trackDelta) {
+            aggregates.onBulkUpdate(plan.dstCol, result[1], keyed);
+        }
+        return (int) result[0];
+    }
+
+    private QueryKernel.Kind kernelKind() {
+        return batchedKernels ? QueryKernel.Kind.BATCHED_COLUMNS : QueryKernel.Kind.FIELDS;
     }
 
     /**
@@ -66,8 +392,10 @@ public class ColumnTable implements Table {
      */
     @Override
     public long columnSum() {
-        // TODO: Implement this!
-        return 0;
+        if (col0Sum != null) {
+            return col0Sum.get();
+        }
+        return select(Query.COLUMN_SUM)[0];
     }
 
     /**
@@ -79,8 +407,10 @@ public class ColumnTable implements Table {
      */
     @Override
     public long predicatedColumnSum(int threshold1, int threshold2) {
-        // TODO: Implement this!
-        return 0;
+        if (predicatedSum != null && predicatedSum.isAvailable()) {
+            return predicatedSum.get(threshold1, threshold2);
+        }
+        return select(Query.predicatedColumnSum(threshold1, threshold2))[0];
     }
 
     /**
@@ -91,19 +421,26 @@ public class ColumnTable implements Table {
      */
     @Override
     public long predicatedAllColumnsSum(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        if (rowSums != null && rowSums.isAvailable()) {
+            return rowSums.get(threshold);
+        }
+        return select(Query.predicatedAllColumnsSum(numCols, threshold))[0];
     }
 
     /**
      * Implements the query
      *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
      *
-     *   Returns the number of rows updated.
+     *   Returns the number of rows updated. Deferred if lazy updates are on;
+     *   see setLazyUpdateBlockRows().
      */
     @Override
     public int predicatedUpdate(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        if (pendingUpdates != null && zoneMap == null && !aggregates.dependsOn(3)
+                && col0Counts.isAvailable()) {
+            pendingUpdates.add(threshold);
+            return col0Counts.countBelow(threshold);
+        }
+        return update(Query.predicatedUpdate(threshold));
     }
 }
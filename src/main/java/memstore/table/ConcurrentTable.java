@@ -0,0 +1,217 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+
+import java.io.IOException;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Wrapper that makes any table safe to share between threads.
+ *
+ * Rows are split into ranges of `stripeRows` rows, and the ranges are
+ * spread over a fixed number of stripes, each with its own lock. Point reads
+ * and writes only lock the stripe of their row, so those on different
+ * stripes never contend; point reads first try an optimistic read that does
+ * not write to the lock at all. Queries lock every stripe, always in stripe
+ * order, so that two queries never wait on each other's stripes in a cycle:
+ * SELECTs for reading, so they run alongside each other, and UPDATEs for
+ * writing.
+ *
+ * Striping is only safe if the wrapped table's point operations touch
+ * nothing but their own row and its SELECTs change nothing, as for a plain
+ * RowTable, ColumnTable or PaxTable. Tables with shared state, such as
+ * indexes, maintained aggregates, write buffers or lazy updates, must be
+ * wrapped with `rowLocal` false, which runs every operation under one
+ * exclusive lock.
+ */
+public class ConcurrentTable implements Table {
+    static final int DEFAULT_STRIPES = 64;
+    static final int DEFAULT_STRIPE_ROWS = 4096;
+
+    private final Table table;
+    private final int stripeRows;
+    private final boolean rowLocal;
+    private final StampedLock[] stripes;
+
+    /**
+     * Wraps `table` with the default striping.
+     *
+     * @param rowLocal whether the table's point operations are row-local;
+     *                 see above.
+     */
+    public ConcurrentTable(Table table, boolean rowLocal) {
+        this(table, DEFAULT_STRIPES, DEFAULT_STRIPE_ROWS, rowLocal);
+    }
+
+    /**
+     * @param table      table to wrap.
+     * @param numStripes number of locks.
+     * @param stripeRows number of consecutive rows that share a lock.
+     * @param rowLocal   whether the table's point operations are row-local;
+     *                   see above.
+     */
+    public ConcurrentTable(Table table, int numStripes, int stripeRows, boolean rowLocal) {
+        if (numStripes <= 0 || stripeRows <= 0) {
+            throw new IllegalArgumentException(
+                    "Bad striping: " + numStripes + " stripes of " + stripeRows + " rows");
+        }
+        this.table = table;
+        this.stripeRows = stripeRows;
+        this.rowLocal = rowLocal;
+        this.stripes = new StampedLock[rowLocal ? numStripes : 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+    private StampedLock stripe(int rowId) {
+        return stripes[(rowId / stripeRows) % stripes.length];
+    }
+
+    /**
+     * Locks every stripe in order, and returns their stamps.
+     */
+    private long[] lockAll(boolean write) {
+        long[] stamps = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) {
+            stamps[i] = write ? stripes[i].writeLock() : stripes[i].readLock();
+        }
+        return stamps;
+    }
+
+    private void unlockAll(long[] stamps) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock(stamps[i]);
+        }
+    }
+
+    @Override
+    public void load(DataLoader loader) throws IOException {
+        long[] stamps = lockAll(true);
+        try {
+            table.load(loader);
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public int getIntField(int rowId, int colId) {
+        StampedLock lock = stripe(rowId);
+        if (rowLocal) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                try {
+                    int field = table.getIntField(rowId, colId);
+                    if (lock.validate(stamp)) {
+                        return field;
+                    }
+                } catch (RuntimeException e) {
+                    // Read mid-load; retry under the lock.
+                }
+            }
+        }
+        long stamp = rowLocal ? lock.readLock() : lock.writeLock();
+        try {
+            return table.getIntField(rowId, colId);
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Inserts the passed-in int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public void putIntField(int rowId, int colId, int field) {
+        StampedLock lock = stripe(rowId);
+        long stamp = lock.writeLock();
+        try {
+            table.putIntField(rowId, colId, field);
+        } finally {
+            lock.unlock(stamp);
+        }
+    }
+
+    /**
+     * Runs `query` with every stripe locked for reading, or for writing if
+     * the table is not row-local.
+     */
+    private long read(LongSupplier query) {
+        long[] stamps = lockAll(!rowLocal);
+        try {
+            return query.getAsLong();
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    @Override
+    public long columnSum() {
+        return read(table::columnSum);
+    }
+
+    @Override
+    public long predicatedColumnSum(int threshold1, int threshold2) {
+        return read(() -> table.predicatedColumnSum(threshold1, threshold2));
+    }
+
+    @Override
+    public long predicatedAllColumnsSum(int threshold) {
+        return read(() -> table.predicatedAllColumnsSum(threshold));
+    }
+
+    @Override
+    public long[] select(Query query) {
+        long[] stamps = lockAll(!rowLocal);
+        try {
+            return table.select(query);
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    @Override
+    public int predicatedUpdate(int threshold) {
+        long[] stamps = lockAll(true);
+        try {
+            return table.predicatedUpdate(threshold);
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    @Override
+    public int update(Query query) {
+        long[] stamps = lockAll(true);
+        try {
+            return table.update(query);
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    @Override
+    public void setParallelism(int parallelism) {
+        long[] stamps = lockAll(true);
+        try {
+            table.setParallelism(parallelism);
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+
+    @Override
+    public void close() {
+        long[] stamps = lockAll(true);
+        try {
+            table.close();
+        } finally {
+            unlockAll(stamps);
+        }
+    }
+}
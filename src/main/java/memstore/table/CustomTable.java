@@ -1,25 +1,200 @@
 package memstore.table;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import memstore.data.BufferedLoader;
 import memstore.data.DataLoader;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Custom table implementation to adapt to provided query mix.
+ *
+ * Starts out column-major, and keeps {@link WorkloadStats} on the queries it
+ * runs: what they touch, how selective they are, and what they would have
+ * cost in each {@link TableLayout}. Selectivities are estimated by
+ * evaluating the predicates on a fixed sample of rows before each query.
+ * Every DECISION_QUERIES queries (or DECISION_POINT_OPS point accesses), it
+ * checks whether another layout would have been clearly cheaper and, if so,
+ * copies the table into that layout on a background thread while queries
+ * keep running on the current one. Fields written during the copy are
+ * copied again before switching over.
+ *
+ * To keep from thrashing between layouts, a switch needs the other layout
+ * to cost at most SWITCH_RATIO of the current one, to win CONFIRMATIONS
+ * decisions in a row, and to repay the copy within PAYBACK_DECISIONS
+ * decisions' worth of the difference; after a switch, the table stays put
+ * for COOLDOWN_DECISIONS decisions.
+ *
+ * SUM(col0) is maintained on every write in any layout, since the workload
+ * asks for it twice per round of updates.
+ *
+ * Like the other tables, it is not safe for concurrent writers.
  */
 public class CustomTable implements Table {
+    static final int DECISION_QUERIES = 32;
+    static final int DECISION_POINT_OPS = 1 << 16;
+    static final double SWITCH_RATIO = 0.7;
+    static final int CONFIRMATIONS = 2;
+    static final double PAYBACK_DECISIONS = 4;
+    static final int COOLDOWN_DECISIONS = 4;
+
+    /**
+     * Number of rows predicates are evaluated on to estimate selectivity.
+     */
+    static final int SAMPLE_ROWS = 256;
+
+    /**
+     * Thread that copies tables into their new layouts, one at a time.
+     */
+    private static final ExecutorService MIGRATOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "memstore-layout-migration");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * A copy of the table into another layout, in progress.
+     */
+    private static final class Migration {
+        final TableLayout layout;
+        final int indexColumn;
+        final Table target;
+        final TableCopyLoader loader;
+        final Future<?> future;
+        final boolean[] dirtyColumns;
+        /**
+         * Fields written since the copy started, as rowId << 32 | colId.
+         */
+        final LongArrayList dirtyFields = new LongArrayList();
+
+        Migration(TableLayout layout, int indexColumn, Table target, TableCopyLoader loader, int numCols) {
+            this.layout = layout;
+            this.indexColumn = indexColumn;
+            this.target = target;
+            this.loader = loader;
+            this.dirtyColumns = new boolean[numCols];
+            this.future = MIGRATOR.submit(() -> {
+                target.load(loader);
+                return null;
+            });
+        }
+    }
+
+    int numCols;
+    int numRows;
+    private Table active;
+    private TableLayout layout = TableLayout.COLUMN;
+    private int indexColumn;
+    private int parallelism = 1;
+    private boolean adaptive = true;
+    private long col0Sum;
+
+    private WorkloadStats stats;
+    private int[] sampleRowIds;
+    private int queriesSinceDecision;
+    private int pointOpsSinceDecision;
+    private TableLayout pendingLayout;
+    private int pendingIndexColumn;
+    private int confirmations;
+    private int cooldown;
+    private Migration migration;
 
     public CustomTable() { }
 
     /**
      * Loads data into the table through passed-in data loader. Is not timed.
+     * The table starts out column-major, with fresh statistics.
      *
      * @param loader Loader to load data from.
      * @throws IOException
      */
     @Override
     public void load(DataLoader loader) throws IOException {
-        // TODO: Implement this!
+        abandonMigration();
+        loader = BufferedLoader.sized(loader);
+        Table table = TableLayout.COLUMN.create(0, parallelism);
+        table.load(loader);
+        if (active != null) {
+            active.close();
+        }
+        this.active = table;
+        this.layout = TableLayout.COLUMN;
+        this.numCols = loader.getNumCols();
+        this.numRows = loader.getNumRows();
+        col0Sum = numCols == 0 ? 0 : active.select(Query.COLUMN_SUM)[0];
+
+        stats = new WorkloadStats(numRows, numCols);
+        Random random = new Random(numRows);
+        sampleRowIds = new int[Math.min(SAMPLE_ROWS, numRows)];
+        for (int i = 0; i < sampleRowIds.length; i++) {
+            sampleRowIds[i] = numRows <= SAMPLE_ROWS ? i : random.nextInt(numRows);
+        }
+        queriesSinceDecision = 0;
+        pointOpsSinceDecision = 0;
+        pendingLayout = null;
+        confirmations = 0;
+        cooldown = 0;
+    }
+
+    /**
+     * Returns the layout the table currently serves queries from.
+     */
+    public TableLayout getLayout() {
+        return layout;
+    }
+
+    /**
+     * Returns the indexed column, if the layout is INDEXED.
+     */
+    public int getIndexColumn() {
+        return indexColumn;
+    }
+
+    /**
+     * Returns the statistics on the queries run since the table was loaded.
+     */
+    public WorkloadStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Turns statistics and layout changes on or off; on by default. A
+     * migration in progress still completes.
+     */
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Whether the table is being copied into another layout.
+     */
+    public boolean isMigrating() {
+        return migration != null;
+    }
+
+    /**
+     * Waits for a migration in progress to finish, and switches to the new
+     * layout.
+     */
+    public void awaitMigration() {
+        if (migration == null) {
+            return;
+        }
+        try {
+            migration.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (ExecutionException e) {
+            // Reported by finishMigration().
+        }
+        finishMigration();
     }
 
     /**
@@ -27,8 +202,11 @@ public class CustomTable implements Table {
      */
     @Override
     public int getIntField(int rowId, int colId) {
-        // TODO: Implement this!
-        return 0;
+        if (adaptive) {
+            stats.recordGet(rowId);
+            countPointOp();
+        }
+        return active.getIntField(rowId, colId);
     }
 
     /**
@@ -36,7 +214,41 @@ public class CustomTable implements Table {
      */
     @Override
     public void putIntField(int rowId, int colId, int field) {
-        // TODO: Implement this!
+        finishMigrationIfDone();
+        if (colId == 0) {
+            col0Sum += (long) field - active.getIntField(rowId, 0);
+        }
+        active.putIntField(rowId, colId, field);
+        if (migration != null) {
+            markDirty(rowId, colId);
+        }
+        if (adaptive) {
+            stats.recordPut(rowId, colId);
+            countPointOp();
+        }
+    }
+
+    @Override
+    public void close() {
+        abandonMigration();
+        if (active != null) {
+            active.close();
+        }
+    }
+
+    /**
+     * Sets the number of threads each query may use; see
+     * {@link ColumnTable#setParallelism(int)}. Applies to every layout.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        if (active != null) {
+            active.setParallelism(parallelism);
+        }
+        if (migration != null) {
+            migration.target.setParallelism(parallelism);
+        }
     }
 
     /**
@@ -47,8 +259,10 @@ public class CustomTable implements Table {
      */
     @Override
     public long columnSum() {
-        // TODO: Implement this!
-        return 0;
+        if (adaptive) {
+            stats.recordCall(WorkloadStats.QueryKind.COLUMN_SUM);
+        }
+        return col0Sum;
     }
 
     /**
@@ -60,8 +274,15 @@ public class CustomTable implements Table {
      */
     @Override
     public long predicatedColumnSum(int threshold1, int threshold2) {
-        // TODO: Implement this!
-        return 0;
+        finishMigrationIfDone();
+        if (!adaptive) {
+            return active.predicatedColumnSum(threshold1, threshold2);
+        }
+        QueryPlan plan = Query.predicatedColumnSum(threshold1, threshold2).plan();
+        double[] selectivity = sampleSelectivity(plan);
+        long result = active.predicatedColumnSum(threshold1, threshold2);
+        record(WorkloadStats.QueryKind.PREDICATED_COLUMN_SUM, plan, selectivity, -1);
+        return result;
     }
 
     /**
@@ -72,8 +293,15 @@ public class CustomTable implements Table {
      */
     @Override
     public long predicatedAllColumnsSum(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        finishMigrationIfDone();
+        if (!adaptive) {
+            return active.predicatedAllColumnsSum(threshold);
+        }
+        QueryPlan plan = Query.predicatedAllColumnsSum(numCols, threshold).plan();
+        double[] selectivity = sampleSelectivity(plan);
+        long result = active.predicatedAllColumnsSum(threshold);
+        record(WorkloadStats.QueryKind.PREDICATED_ALL_COLUMNS_SUM, plan, selectivity, -1);
+        return result;
     }
 
     /**
@@ -84,8 +312,248 @@ public class CustomTable implements Table {
      */
     @Override
     public int predicatedUpdate(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        finishMigrationIfDone();
+        QueryPlan plan = Query.predicatedUpdate(threshold).plan();
+        double[] selectivity = adaptive ? sampleSelectivity(plan) : null;
+        int count = active.predicatedUpdate(threshold);
+        updated(plan);
+        if (adaptive) {
+            record(WorkloadStats.QueryKind.PREDICATED_UPDATE, plan, selectivity, count);
+        }
+        return count;
     }
 
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order.
+     */
+    @Override
+    public long[] select(Query query) {
+        finishMigrationIfDone();
+        if (!adaptive) {
+            return active.select(query);
+        }
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        double[] selectivity = sampleSelectivity(plan);
+        long[] result = active.select(query);
+        record(WorkloadStats.QueryKind.SELECT, plan, selectivity, -1);
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated.
+     */
+    @Override
+    public int update(Query query) {
+        finishMigrationIfDone();
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        double[] selectivity = adaptive ? sampleSelectivity(plan) : null;
+        int count = active.update(query);
+        updated(plan);
+        if (adaptive) {
+            record(WorkloadStats.QueryKind.UPDATE, plan, selectivity, count);
+        }
+        return count;
+    }
+
+    /**
+     * Follows an UPDATE that ran on the active table.
+     */
+    private void updated(QueryPlan plan) {
+        if (plan.dstCol == 0) {
+            col0Sum = active.select(Query.COLUMN_SUM)[0];
+        }
+        if (migration != null) {
+            migration.dirtyColumns[plan.dstCol] = true;
+        }
+    }
+
+    /**
+     * Returns the fraction of sample rows that pass each predicate of `plan`
+     * on its own, followed by the fraction that pass all of them.
+     */
+    private double[] sampleSelectivity(QueryPlan plan) {
+        int[] passed = new int[plan.numPredicates + 1];
+        for (int rowId : sampleRowIds) {
+            boolean all = true;
+            for (int p = 0; p < plan.numPredicates; p++) {
+                int value = active.getIntField(rowId, plan.columns[p]);
+                if (value >= plan.lo[p] && value <= plan.hi[p]) {
+                    passed[p]++;
+                } else {
+                    all = false;
+                }
+            }
+            passed[plan.numPredicates] += all ? 1 : 0;
+        }
+        double[] selectivity = new double[passed.length];
+        for (int i = 0; i < passed.length; i++) {
+            selectivity[i] = sampleRowIds.length == 0 || plan.empty
+                    ? 0
+                    : (double) passed[i] / sampleRowIds.length;
+        }
+        return selectivity;
+    }
+
+    /**
+     * Records a query in the statistics, with the number of rows it matched
+     * if known, or -1 to use the estimate from the sample.
+     */
+    private void record(WorkloadStats.QueryKind kind, QueryPlan plan, double[] selectivity, long matched) {
+        double all = matched >= 0 && numRows > 0
+                ? (double) matched / numRows
+                : selectivity[plan.numPredicates];
+        stats.recordQuery(kind, plan, selectivity, all);
+        if (++queriesSinceDecision >= DECISION_QUERIES) {
+            decide();
+        }
+    }
+
+    private void countPointOp() {
+        if (++pointOpsSinceDecision >= DECISION_POINT_OPS) {
+            decide();
+        }
+    }
+
+    /**
+     * Considers switching layouts, then decays the statistics so that the
+     * next decision weighs recent queries most.
+     */
+    private void decide() {
+        queriesSinceDecision = 0;
+        pointOpsSinceDecision = 0;
+        finishMigrationIfDone();
+        if (migration == null) {
+            if (cooldown > 0) {
+                cooldown--;
+            } else {
+                considerSwitch();
+            }
+        }
+        stats.decay();
+    }
+
+    private void considerSwitch() {
+        double current = stats.cost(layout, indexColumn);
+        int bestIndexColumn = stats.bestIndexColumn();
+        TableLayout best = layout;
+        int bestColumn = indexColumn;
+        double bestCost = current;
+        for (TableLayout candidate : TableLayout.values()) {
+            int column = candidate == TableLayout.INDEXED ? bestIndexColumn : 0;
+            double cost = stats.cost(candidate, column);
+            if (cost < bestCost) {
+                best = candidate;
+                bestColumn = column;
+                bestCost = cost;
+            }
+        }
+        boolean same = best == layout && (best != TableLayout.INDEXED || bestColumn == indexColumn);
+        boolean worthIt = !same
+                && bestCost < SWITCH_RATIO * current
+                && (current - bestCost) * PAYBACK_DECISIONS > stats.migrationCost(best);
+        if (!worthIt) {
+            pendingLayout = null;
+            confirmations = 0;
+            return;
+        }
+        if (best == pendingLayout && bestColumn == pendingIndexColumn) {
+            confirmations++;
+        } else {
+            pendingLayout = best;
+            pendingIndexColumn = bestColumn;
+            confirmations = 1;
+        }
+        if (confirmations >= CONFIRMATIONS) {
+            pendingLayout = null;
+            confirmations = 0;
+            Table target = best.create(bestColumn, parallelism);
+            migration = new Migration(best, bestColumn, target,
+                    new TableCopyLoader(active, numRows, numCols), numCols);
+        }
+    }
+
+    /**
+     * Notes that a field was written while the table is being copied. Once
+     * more fields were written than the table has rows, every column is
+     * copied again instead.
+     */
+    private void markDirty(int rowId, int colId) {
+        if (migration.dirtyColumns[colId]) {
+            return;
+        }
+        migration.dirtyFields.add((long) rowId << 32 | colId);
+        if (migration.dirtyFields.size() > numRows) {
+            Arrays.fill(migration.dirtyColumns, true);
+            migration.dirtyFields.clear();
+        }
+    }
+
+    private void finishMigrationIfDone() {
+        if (migration != null && migration.future.isDone()) {
+            finishMigration();
+        }
+    }
+
+    /**
+     * Switches to the layout of a finished copy, after copying the fields
+     * written since the copy started once more.
+     */
+    private void finishMigration() {
+        Migration m = migration;
+        migration = null;
+        try {
+            m.future.get();
+        } catch (InterruptedException | ExecutionException e) {
+            m.target.close();
+            cooldown = COOLDOWN_DECISIONS;
+            throw new IllegalStateException("Copying the table into " + m.layout + " failed", e);
+        }
+        for (int colId = 0; colId < numCols; colId++) {
+            if (m.dirtyColumns[colId]) {
+                for (int rowId = 0; rowId < numRows; rowId++) {
+                    m.target.putIntField(rowId, colId, active.getIntField(rowId, colId));
+                }
+            }
+        }
+        for (int i = 0; i < m.dirtyFields.size(); i++) {
+            long field = m.dirtyFields.getLong(i);
+            int rowId = (int) (field >>> 32);
+            int colId = (int) field;
+            if (!m.dirtyColumns[colId]) {
+                m.target.putIntField(rowId, colId, active.getIntField(rowId, colId));
+            }
+        }
+        Table old = active;
+        active = m.target;
+        layout = m.layout;
+        indexColumn = m.indexColumn;
+        old.close();
+        cooldown = COOLDOWN_DECISIONS;
+    }
+
+    /**
+     * Stops a migration in progress and drops its copy.
+     */
+    private void abandonMigration() {
+        Migration m = migration;
+        if (m == null) {
+            return;
+        }
+        migration = null;
+        m.loader.cancel();
+        try {
+            m.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // Cancelled.
+        }
+        m.target.close();
+    }
 }
@@ -0,0 +1,166 @@
+package memstore.table;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntMap;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ObjectIterator;
+
+/**
+ * Write buffer in front of a read-optimized table: point writes land in a
+ * primitive hash map keyed by (rowId, colId) instead of the table's own
+ * storage, so that they do not have to repack or re-encode it one field at
+ * a time.
+ *
+ * For every column, the rows with a buffered field in that column are kept
+ * both as a bitmap and as a list, and likewise for rows with a buffered field
+ * in any column. Scans use the bitmaps to leave rows whose predicate columns
+ * are buffered out of their batched pass over the main storage, and the
+ * lists to correct their result for the buffered fields, in time linear in
+ * the size of the buffer. The owner folds the buffer into its storage once
+ * it grows past a threshold.
+ */
+final class DeltaStore {
+    private final Long2IntOpenHashMap fields = new Long2IntOpenHashMap();
+    /**
+     * Bit rowId % 64 of word rowId / 64 is set if the row has buffered fields;
+     * per column, allocated on the first write to it.
+     */
+    private final long[][] dirtyColumns;
+    private final IntArrayList[] dirtyColumnRowIds;
+    private final long[] dirtyRows;
+    private final IntArrayList dirtyRowIds = new IntArrayList();
+
+    private static final IntArrayList NO_ROWS = new IntArrayList();
+
+    DeltaStore(int numRows, int numCols) {
+        this.dirtyColumns = new long[numCols][];
+        this.dirtyColumnRowIds = new IntArrayList[numCols];
+        this.dirtyRows = new long[(numRows + 63) / 64];
+    }
+
+    private static long key(int rowId, int colId) {
+        return (long) rowId << 32 | colId;
+    }
+
+    /**
+     * Returns the number of buffered fields.
+     */
+    int size() {
+        return fields.size();
+    }
+
+    /**
+     * Whether the row has a buffered field in any column.
+     */
+    boolean isDirty(int rowId) {
+        return (dirtyRows[rowId >>> 6] & (1L << rowId)) != 0;
+    }
+
+    boolean isDirty(int rowId, int colId) {
+        long[] bits = dirtyColumns[colId];
+        return bits != null && (bits[rowId >>> 6] & (1L << rowId)) != 0;
+    }
+
+    /**
+     * Returns the buffered value of the field, or `base`, its value in the
+     * main storage, if it has none.
+     */
+    int get(int rowId, int colId, int base) {
+        return isDirty(rowId, colId) ? fields.get(key(rowId, colId)) : base;
+    }
+
+    void put(int rowId, int colId, int field) {
+        fields.put(key(rowId, colId), field);
+        if (dirtyColumns[colId] == null) {
+            dirtyColumns[colId] = new long[dirtyRows.length];
+            dirtyColumnRowIds[colId] = new IntArrayList();
+        }
+        if (!isDirty(rowId, colId)) {
+            dirtyColumns[colId][rowId >>> 6] |= 1L << rowId;
+            dirtyColumnRowIds[colId].add(rowId);
+        }
+        if (!isDirty(rowId)) {
+            dirtyRows[rowId >>> 6] |= 1L << rowId;
+            dirtyRowIds.add(rowId);
+        }
+    }
+
+    /**
+     * Returns the ids of the rows with a buffered field in any column, in no
+     * particular order.
+     */
+    IntArrayList dirtyRowIds() {
+        return dirtyRowIds;
+    }
+
+    /**
+     * Returns the ids of the rows with a buffered field in column `colId`,
+     * in no particular order.
+     */
+    IntArrayList dirtyRowIds(int colId) {
+        return dirtyColumnRowIds[colId] == null ? NO_ROWS : dirtyColumnRowIds[colId];
+    }
+
+    /**
+     * Clears the bits of rows with a buffered field in any column from
+     * `selection`, a bitmap over the rows starting at `fromRow`, which must
+     * be a multiple of 64.
+     */
+    void clearDirty(long[] selection, int fromRow) {
+        clear(selection, fromRow, dirtyRows);
+    }
+
+    /**
+     * Clears the bits of rows with a buffered field in column `colId` from
+     * `selection`, as for clearDirty(selection, fromRow).
+     */
+    void clearDirty(long[] selection, int fromRow, int colId) {
+        if (dirtyColumns[colId] != null) {
+            clear(selection, fromRow, dirtyColumns[colId]);
+        }
+    }
+
+    private static void clear(long[] selection, int fromRow, long[] dirty) {
+        int word = fromRow >>> 6;
+        int n = Math.min(selection.length, dirty.length - word);
+        for (int i = 0; i < n; i++) {
+            selection[i] &= ~dirty[word + i];
+        }
+    }
+
+    /**
+     * Receives the buffered fields.
+     */
+    interface FieldConsumer {
+        void accept(int rowId, int colId, int field);
+    }
+
+    void forEach(FieldConsumer consumer) {
+        ObjectIterator<Long2IntMap.Entry> it = fields.long2IntEntrySet().fastIterator();
+        while (it.hasNext()) {
+            Long2IntMap.Entry entry = it.next();
+            long key = entry.getLongKey();
+            consumer.accept((int) (key >>> 32), (int) key, entry.getIntValue());
+        }
+    }
+
+    /**
+     * Empties the buffer, once its fields have been folded into the main storage.
+     */
+    void clear() {
+        fields.clear();
+        for (int colId = 0; colId < dirtyColumns.length; colId++) {
+            if (dirtyColumns[colId] != null) {
+                clear(dirtyColumns[colId], dirtyColumnRowIds[colId]);
+            }
+        }
+        clear(dirtyRows, dirtyRowIds);
+    }
+
+    private static void clear(long[] dirty, IntArrayList rowIds) {
+        for (int i = 0; i < rowIds.size(); i++) {
+            dirty[rowIds.getInt(i) >>> 6] = 0;
+        }
+        rowIds.clear();
+    }
+}
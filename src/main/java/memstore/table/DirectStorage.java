@@ -0,0 +1,105 @@
+package memstore.table;
+
+import memstore.data.ByteFormat;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+
+/**
+ * IntStorage in native-byte-order direct memory, outside the Java heap.
+ *
+ * A single ByteBuffer is limited to 2GB, so the fields are split across
+ * chunks of 2^chunkShift fields each. The memory is freed by close(), after
+ * which any access fails with an IndexOutOfBoundsException.
+ */
+public final class DirectStorage implements IntStorage {
+    /**
+     * 64M fields (256MB) per chunk by default.
+     */
+    static final int DEFAULT_CHUNK_SHIFT = 26;
+
+    private final int chunkShift;
+    private final int chunkMask;
+    private int size;
+    private ByteBuffer[] buffers;
+    private IntBuffer[] chunks;
+
+    public DirectStorage(int size) {
+        this(size, DEFAULT_CHUNK_SHIFT);
+    }
+
+    DirectStorage(int size, int chunkShift) {
+        this.size = size;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+
+        int numChunks = (int) (((long) size + chunkMask) >>> chunkShift);
+        this.buffers = new ByteBuffer[numChunks];
+        this.chunks = new IntBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int chunkSize = Math.min(1 << chunkShift, size - (i << chunkShift));
+            buffers[i] = ByteBuffer.allocateDirect(ByteFormat.FIELD_LEN * chunkSize)
+                    .order(ByteOrder.nativeOrder());
+            chunks[i] = buffers[i].asIntBuffer();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int index) {
+        return chunks[index >>> chunkShift].get(index & chunkMask);
+    }
+
+    @Override
+    public void put(int index, int value) {
+        chunks[index >>> chunkShift].put(index & chunkMask, value);
+    }
+
+    @Override
+    public void get(int index, int[] dst, int offset, int length) {
+        while (length > 0) {
+            int inChunk = index & chunkMask;
+            int n = Math.min(length, (1 << chunkShift) - inChunk);
+            IntBuffer view = chunks[index >>> chunkShift].duplicate();
+            ((Buffer) view).position(inChunk);
+            view.get(dst, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void put(int index, int[] src, int offset, int length) {
+        while (length > 0) {
+            int inChunk = index & chunkMask;
+            int n = Math.min(length, (1 << chunkShift) - inChunk);
+            IntBuffer view = chunks[index >>> chunkShift].duplicate();
+            ((Buffer) view).position(inChunk);
+            view.put(src, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Frees the off-heap memory. Must not race with other accesses.
+     */
+    @Override
+    public void close() {
+        ByteBuffer[] toFree = buffers;
+        size = 0;
+        buffers = new ByteBuffer[0];
+        chunks = new IntBuffer[0];
+        for (ByteBuffer buffer : toFree) {
+            DirectMemory.free(buffer);
+        }
+    }
+}
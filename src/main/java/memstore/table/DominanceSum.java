@@ -0,0 +1,211 @@
+package memstore.table;
+
+/**
+ * Maintained view of
+ *   SELECT SUM(valueCol) FROM table WHERE xCol > threshold1 AND yCol < threshold2;
+ * for any pair of thresholds, as a 2-D Fenwick tree over the values of xCol
+ * and yCol. Cell (x, y) holds the sum of valueCol over the rows with those
+ * values, so the query is a difference of two prefix sums, and a write
+ * moves one row's value between cells; both take O(log Dx * log Dy) time
+ * for domains of Dx and Dy values.
+ *
+ * The domains are the ranges of values present when the tree is built. The
+ * view is unavailable if their product exceeds MAX_CELLS, in which case the
+ * owner scans instead; the build is only retried after a recompute() or a
+ * bulk write, not after every point write. A write of a value outside the
+ * domains marks the tree stale, and it is rebuilt over the wider domains
+ * when next queried.
+ */
+public final class DominanceSum implements MaintainedAggregates.Aggregate {
+    /**
+     * Most cells the tree may have, at 8 bytes per cell.
+     */
+    static final long MAX_CELLS = 1 << 22;
+
+    private final int valueCol;
+    private final int xCol;
+    private final int yCol;
+
+    private Table table;
+    private int numRows;
+    private boolean stale = true;
+    private boolean bulkWritten;
+
+    private int minX;
+    private int minY;
+    private int sizeX;
+    private int sizeY;
+    /**
+     * Fenwick tree with 1-based indices; cell (i, j) is at i * (sizeY + 1) + j.
+     */
+    private long[] tree;
+
+    public DominanceSum(int valueCol, int xCol, int yCol) {
+        this.valueCol = valueCol;
+        this.xCol = xCol;
+        this.yCol = yCol;
+    }
+
+    /**
+     * Whether the view can answer queries, rebuilding it first if it is
+     * stale. False right after a bulk write, see bulkUpdate(), or if the
+     * domains are too large.
+     */
+    public boolean isAvailable() {
+        if (bulkWritten) {
+            bulkWritten = false;
+            return false;
+        }
+        if (stale) {
+            build();
+        }
+        return tree != null;
+    }
+
+    /**
+     * Returns SUM(valueCol) over the rows with xCol > threshold1 and
+     * yCol < threshold2. The view must be available.
+     */
+    public long get(int threshold1, int threshold2) {
+        // Number of x values <= threshold1 and of y values < threshold2.
+        int xs = clamp((long) threshold1 - minX + 1, sizeX);
+        int ys = clamp((long) threshold2 - minY, sizeY);
+        return prefix(sizeX, ys) - prefix(xs, ys);
+    }
+
+    private static int clamp(long count, int size) {
+        return (int) Math.max(0, Math.min(size, count));
+    }
+
+    /**
+     * Returns the sum over the first `xs` x values and first `ys` y values.
+     */
+    private long prefix(int xs, int ys) {
+        long sum = 0;
+        for (int i = xs; i > 0; i -= i & -i) {
+            int row = i * (sizeY + 1);
+            for (int j = ys; j > 0; j -= j & -j) {
+                sum += tree[row + j];
+            }
+        }
+        return sum;
+    }
+
+    private void add(int x, int y, long delta) {
+        for (int i = x - minX + 1; i <= sizeX; i += i & -i) {
+            int row = i * (sizeY + 1);
+            for (int j = y - minY + 1; j <= sizeY; j += j & -j) {
+                tree[row + j] += delta;
+            }
+        }
+    }
+
+    private boolean inDomain(int x, int y) {
+        return (long) x - minX >= 0 && (long) x - minX < sizeX
+                && (long) y - minY >= 0 && (long) y - minY < sizeY;
+    }
+
+    @Override
+    public boolean dependsOn(int colId) {
+        return colId == valueCol || colId == xCol || colId == yCol;
+    }
+
+    @Override
+    public void recompute(Table table, int numRows) {
+        this.table = table;
+        this.numRows = numRows;
+        this.stale = true;
+        this.bulkWritten = false;
+        this.tree = null;
+    }
+
+    /**
+     * Builds the tree over the current domains in O(n + Dx * Dy) time: the
+     * cells are filled in first, then turned into a Fenwick tree one
+     * dimension at a time.
+     */
+    private void build() {
+        stale = false;
+        tree = null;
+        if (numRows == 0) {
+            return;
+        }
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            int x = table.getIntField(rowId, xCol);
+            int y = table.getIntField(rowId, yCol);
+            minX = Math.min(minX, x);
+            maxX = Math.max(maxX, x);
+            minY = Math.min(minY, y);
+            maxY = Math.max(maxY, y);
+        }
+        long cells = ((long) maxX - minX + 2) * ((long) maxY - minY + 2);
+        if (cells > MAX_CELLS) {
+            return;
+        }
+        sizeX = maxX - minX + 1;
+        sizeY = maxY - minY + 1;
+        int stride = sizeY + 1;
+        tree = new long[(int) cells];
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            int i = table.getIntField(rowId, xCol) - minX + 1;
+            int j = table.getIntField(rowId, yCol) - minY + 1;
+            tree[i * stride + j] += table.getIntField(rowId, valueCol);
+        }
+        for (int i = 1; i <= sizeX; i++) {
+            for (int j = 1; j <= sizeY; j++) {
+                int parent = j + (j & -j);
+                if (parent <= sizeY) {
+                    tree[i * stride + parent] += tree[i * stride + j];
+                }
+            }
+        }
+        for (int i = 1; i <= sizeX; i++) {
+            int parent = i + (i & -i);
+            if (parent <= sizeX) {
+                for (int j = 1; j <= sizeY; j++) {
+                    tree[parent * stride + j] += tree[i * stride + j];
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the row's value from its old cell to its new one. Called before
+     * the write, so the table still holds the row's old fields.
+     */
+    @Override
+    public void update(int rowId, int colId, int oldValue, int newValue) {
+        if (stale || tree == null) {
+            // Rebuilt when next queried, or the domains are too large.
+            return;
+        }
+        int value = table.getIntField(rowId, valueCol);
+        int x = table.getIntField(rowId, xCol);
+        int y = table.getIntField(rowId, yCol);
+        int newX = colId == xCol ? newValue : x;
+        int newY = colId == yCol ? newValue : y;
+        if (!inDomain(newX, newY)) {
+            stale = true;
+            return;
+        }
+        add(x, y, -value);
+        add(newX, newY, colId == valueCol ? newValue : value);
+    }
+
+    /**
+     * A bulk write does not say which rows changed, so the tree is rebuilt,
+     * but only for a query that follows another without a bulk write in
+     * between; the first query after a bulk write scans. That way, bulk
+     * writes interleaved with queries do not rebuild the tree every time.
+     */
+    @Override
+    public boolean bulkUpdate(int colId, long delta) {
+        stale = true;
+        bulkWritten = true;
+        return true;
+    }
+}
@@ -0,0 +1,62 @@
+package memstore.table;
+
+import java.util.Arrays;
+
+/**
+ * The right-hand side of an UPDATE: the sum of some columns of the row plus
+ * a constant, wrapping around on int overflow like Java int arithmetic.
+ */
+public final class Expression {
+    final int[] colIds;
+    final int constant;
+
+    private Expression(int[] colIds, int constant) {
+        for (int colId : colIds) {
+            if (colId < 0) {
+                throw new IllegalArgumentException("Negative column " + colId);
+            }
+        }
+        this.colIds = colIds;
+        this.constant = constant;
+    }
+
+    public static Expression column(int colId) {
+        return sum(colId);
+    }
+
+    public static Expression constant(int value) {
+        return new Expression(new int[0], value);
+    }
+
+    /**
+     * col_a + col_b + ...
+     */
+    public static Expression sum(int... colIds) {
+        return new Expression(colIds.clone(), 0);
+    }
+
+    /**
+     * this + col
+     */
+    public Expression plusColumn(int colId) {
+        int[] cols = Arrays.copyOf(colIds, colIds.length + 1);
+        cols[colIds.length] = colId;
+        return new Expression(cols, constant);
+    }
+
+    /**
+     * this + value
+     */
+    public Expression plus(int value) {
+        return new Expression(colIds, constant + value);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int colId : colIds) {
+            sb.append("col").append(colId).append(" + ");
+        }
+        return sb.append(constant).toString();
+    }
+}
@@ -0,0 +1,18 @@
+package memstore.table;
+
+/**
+ * Kind of index an IndexedRowTable keeps on its index column.
+ */
+public enum IndexType {
+    /**
+     * TreeMap from each distinct value to the list of rows holding it.
+     */
+    TREE,
+
+    /**
+     * Compressed bitmap per distinct value, plus range-encoded bitmaps so that
+     * range predicates need only a few bitmap fetches. Best suited to small
+     * value domains.
+     */
+    BITMAP
+}
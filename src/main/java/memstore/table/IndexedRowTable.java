@@ -1,10 +1,11 @@
 package memstore.table;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import memstore.data.BufferedLoader;
 import memstore.data.DataLoader;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
+import java.util.Map;
 import java.util.TreeMap;
 
 /**
@@ -13,18 +14,58 @@ import java.util.TreeMap;
  *   row 1 | row 2 | ... | row n.
  *
  * Also has a tree index on column `indexColumn`, which points
- * to all row indices with the given value.
+ * to all row indices with the given value, or a bitmap index on that
+ * column; see {@link IndexType}.
  */
 public class IndexedRowTable implements Table {
 
     int numCols;
     int numRows;
     private TreeMap<Integer, IntArrayList> index;
-    private ByteBuffer rows;
+    private BitmapIndex bitmapIndex;
+    private IndexType indexType;
+    private IntStorage rows;
+    private StorageType storageType;
     private int indexColumn;
+    private int parallelism = 1;
+
+    /**
+     * Number of index entries (distinct values) per morsel when a query is
+     * answered from the index in parallel.
+     */
+    private static final int MORSEL_KEYS = 8;
+
+    /**
+     * Number of bitmap words (64 rows each) per morsel when a query is
+     * answered from a bitmap index in parallel.
+     */
+    private static final int MORSEL_WORDS = 1024;
 
     public IndexedRowTable(int indexColumn) {
+        this(indexColumn, StorageType.INT_ARRAY);
+    }
+
+    /**
+     * @param indexColumn column to build the index on.
+     * @param storageType storage to keep the rows in.
+     */
+    public IndexedRowTable(int indexColumn, StorageType storageType) {
+        this(indexColumn, storageType, IndexType.TREE);
+    }
+
+    public IndexedRowTable(int indexColumn, IndexType indexType) {
+        this(indexColumn, StorageType.INT_ARRAY, indexType);
+    }
+
+    /**
+     * @param indexColumn column to build the index on.
+     * @param storageType storage to keep the rows in.
+     * @param indexType   kind of index to build.
+     */
+    public IndexedRowTable(int indexColumn, StorageType storageType, IndexType indexType) {
         this.indexColumn = indexColumn;
+        this.storageType = storageType;
+        this.indexType = indexType;
     }
 
     /**
@@ -35,7 +76,31 @@ public class IndexedRowTable implements Table {
      */
     @Override
     public void load(DataLoader loader) throws IOException {
-        // TODO: Implement this!
+        loader = BufferedLoader.sized(loader);
+        this.numCols = loader.getNumCols();
+        numRows = loader.getNumRows();
+        this.rows = storageType.allocate(numRows * numCols);
+        this.index = indexType == IndexType.TREE ? new TreeMap<>() : null;
+        this.bitmapIndex = indexType == IndexType.BITMAP
+                ? new BitmapIndex(numRows, BitmapIndex.DEFAULT_BIN_WIDTH)
+                : null;
+
+        loader.scan(batch -> {
+            int firstRowId = batch.getFirstRowId();
+            this.rows.put(firstRowId * numCols, batch.fields(), 0, batch.getNumRows() * numCols);
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                int rowId = firstRowId + row;
+                int key = batch.getInt(row, indexColumn);
+                if (index != null) {
+                    index.computeIfAbsent(key, k -> new IntArrayList()).add(rowId);
+                } else {
+                    bitmapIndex.add(rowId, key);
+                }
+            }
+        });
+        if (bitmapIndex != null) {
+            bitmapIndex.buildRanges();
+        }
     }
 
     /**
@@ -43,8 +108,7 @@ public class IndexedRowTable implements Table {
      */
     @Override
     public int getIntField(int rowId, int colId) {
-        // TODO: Implement this!
-        return 0;
+        return rows.get((rowId * numCols) + colId);
     }
 
     /**
@@ -52,7 +116,46 @@ public class IndexedRowTable implements Table {
      */
     @Override
     public void putIntField(int rowId, int colId, int field) {
-        // TODO: Implement this!
+        int offset = (rowId * numCols) + colId;
+        if (colId == indexColumn) {
+            int oldField = rows.get(offset);
+            if (oldField == field) {
+                return;
+            }
+            if (bitmapIndex != null) {
+                bitmapIndex.move(rowId, oldField, field);
+                rows.put(offset, field);
+                return;
+            }
+            IntArrayList oldRowIds = index.get(oldField);
+            oldRowIds.rem(rowId);
+            if (oldRowIds.isEmpty()) {
+                index.remove(oldField);
+            }
+            index.computeIfAbsent(field, k -> new IntArrayList()).add(rowId);
+        }
+        rows.put(offset, field);
+    }
+
+    /**
+     * Frees the table's storage; see {@link StorageType#DIRECT}.
+     */
+    @Override
+    public void close() {
+        if (rows != null) {
+            rows.close();
+        }
+    }
+
+    /**
+     * Sets the number of threads each query may use. Scans split the row
+     * range into morsels, and index lookups split the matching index entries,
+     * and run them on a pool shared by all tables; the default of 1 runs every
+     * query on the calling thread.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
     }
 
     /**
@@ -63,8 +166,23 @@ public class IndexedRowTable implements Table {
      */
     @Override
     public long columnSum() {
-        // TODO: Implement this!
-        return 0;
+        if (indexColumn == 0 && bitmapIndex != null) {
+            return bitmapIndex.sum();
+        }
+        if (indexColumn == 0) {
+            long sum = 0;
+            for (Map.Entry<Integer, IntArrayList> entry : index.entrySet()) {
+                sum += (long) entry.getKey() * entry.getValue().size();
+            }
+            return sum;
+        }
+        return ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long sum = 0;
+            for (int rowId = from; rowId < to; rowId++) {
+                sum += rows.get(rowId * numCols);
+            }
+            return sum;
+        });
     }
 
     /**
@@ -76,8 +194,60 @@ public class IndexedRowTable implements Table {
      */
     @Override
     public long predicatedColumnSum(int threshold1, int threshold2) {
-        // TODO: Implement this!
-        return 0;
+        if (bitmapIndex != null && (indexColumn == 1 || indexColumn == 2)) {
+            long[] selection = indexColumn == 1
+                    ? bitmapIndex.greaterThan(threshold1)
+                    : bitmapIndex.lessThan(threshold2);
+            return sumSelected(selection, rowId -> {
+                int offset = rowId * numCols;
+                return rows.get(offset + 1) > threshold1 && rows.get(offset + 2) < threshold2
+                        ? rows.get(offset)
+                        : 0;
+            });
+        }
+        if (indexColumn == 1) {
+            IntArrayList[] entries = entries(index.tailMap(threshold1, false));
+            return ParallelScan.sum(entries.length, MORSEL_KEYS, parallelism, (from, to) -> {
+                long sum = 0;
+                for (int i = from; i < to; i++) {
+                    IntArrayList rowIds = entries[i];
+                    for (int j = 0; j < rowIds.size(); j++) {
+                        int offset = rowIds.getInt(j) * numCols;
+                        if (rows.get(offset + 2) < threshold2) {
+                            sum += rows.get(offset);
+                        }
+                    }
+                }
+                return sum;
+            });
+        }
+        if (indexColumn == 2) {
+            IntArrayList[] entries = entries(index.headMap(threshold2, false));
+            return ParallelScan.sum(entries.length, MORSEL_KEYS, parallelism, (from, to) -> {
+                long sum = 0;
+                for (int i = from; i < to; i++) {
+                    IntArrayList rowIds = entries[i];
+                    for (int j = 0; j < rowIds.size(); j++) {
+                        int offset = rowIds.getInt(j) * numCols;
+                        if (rows.get(offset + 1) > threshold1) {
+                            sum += rows.get(offset);
+                        }
+                    }
+                }
+                return sum;
+            });
+        }
+        return ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long sum = 0;
+            for (int rowId = from; rowId < to; rowId++) {
+                int offset = rowId * numCols;
+                if (rows.get(offset + 1) > threshold1
+                        && rows.get(offset + 2) < threshold2) {
+                    sum += rows.get(offset);
+                }
+            }
+            return sum;
+        });
     }
 
     /**
@@ -88,8 +258,31 @@ public class IndexedRowTable implements Table {
      */
     @Override
     public long predicatedAllColumnsSum(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        if (indexColumn == 0 && bitmapIndex != null) {
+            return sumSelected(bitmapIndex.greaterThan(threshold), this::rowSum);
+        }
+        if (indexColumn == 0) {
+            IntArrayList[] entries = entries(index.tailMap(threshold, false));
+            return ParallelScan.sum(entries.length, MORSEL_KEYS, parallelism, (from, to) -> {
+                long sum = 0;
+                for (int i = from; i < to; i++) {
+                    IntArrayList rowIds = entries[i];
+                    for (int j = 0; j < rowIds.size(); j++) {
+                        sum += rowSum(rowIds.getInt(j));
+                    }
+                }
+                return sum;
+            });
+        }
+        return ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long sum = 0;
+            for (int rowId = from; rowId < to; rowId++) {
+                if (rows.get(rowId * numCols) > threshold) {
+                    sum += rowSum(rowId);
+                }
+            }
+            return sum;
+        });
     }
 
     /**
@@ -97,10 +290,150 @@ public class IndexedRowTable implements Table {
      *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
      *
      *   Returns the number of rows updated.
+     *
+     *   Each row only reads and writes its own fields, so morsels never touch
+     *   the same rows and can be updated independently. The one exception is
+     *   an index on col3, which every update has to modify; that case runs on
+     *   the calling thread.
      */
     @Override
     public int predicatedUpdate(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        if (indexColumn == 0 && bitmapIndex != null) {
+            return (int) sumSelected(bitmapIndex.lessThan(threshold), rowId -> {
+                updateRow(rowId);
+                return 1;
+            });
+        }
+        if (indexColumn == 0) {
+            IntArrayList[] entries = entries(index.headMap(threshold, false));
+            return (int) ParallelScan.sum(entries.length, MORSEL_KEYS, parallelism, (from, to) -> {
+                int count = 0;
+                for (int i = from; i < to; i++) {
+                    IntArrayList rowIds = entries[i];
+                    for (int j = 0; j < rowIds.size(); j++) {
+                        updateRow(rowIds.getInt(j));
+                    }
+                    count += rowIds.size();
+                }
+                return count;
+            });
+        }
+        if (indexColumn == 3) {
+            int count = 0;
+            for (int rowId = 0; rowId < numRows; rowId++) {
+                if (getIntField(rowId, 0) < threshold) {
+                    putIntField(rowId, 3, getIntField(rowId, 1) + getIntField(rowId, 2));
+                    count++;
+                }
+            }
+            return count;
+        }
+        return (int) ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            int count = 0;
+            for (int rowId = from; rowId < to; rowId++) {
+                if (rows.get(rowId * numCols) < threshold) {
+                    updateRow(rowId);
+                    count++;
+                }
+            }
+            return count;
+        });
+    }
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order. General queries scan the
+     * rows rather than use the index.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        long[] result = plan.newResult();
+        if (plan.empty) {
+            return result;
+        }
+        QueryKernel kernel = plan.kernel(QueryKernel.Kind.ROWS);
+        ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.select(rows, numCols, 1, from, to, part);
+            plan.merge(result, part);
+            return 0;
+        });
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated. Updates to the indexed column go
+     * through putIntField() on the calling thread, so that the index follows.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        if (plan.dstCol == indexColumn) {
+            return (int) plan.update(this, numRows)[0];
+        }
+        if (plan.empty) {
+            return 0;
+        }
+        QueryKernel kernel = plan.kernel(QueryKernel.Kind.ROWS);
+        long[] result = plan.newResult();
+        ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.update(rows, numCols, 1, from, to, part, false);
+            plan.merge(result, part);
+            return 0;
+        });
+        return (int) result[0];
+    }
+
+    /**
+     * Computes a partial result for a single row.
+     */
+    private interface RowFunction {
+        long apply(int rowId);
+    }
+
+    /**
+     * Returns the sum of `fn` over the rows set in `selection`, a plain bitmap
+     * over all rows.
+     */
+    private long sumSelected(long[] selection, RowFunction fn) {
+        return ParallelScan.sum(selection.length, MORSEL_WORDS, parallelism, (from, to) -> {
+            long sum = 0;
+            for (int i = from; i < to; i++) {
+                long bits = selection[i];
+                while (bits != 0) {
+                    sum += fn.apply(64 * i + Long.numberOfTrailingZeros(bits));
+                    bits &= bits - 1;
+                }
+            }
+            return sum;
+        });
+    }
+
+    private static IntArrayList[] entries(Map<Integer, IntArrayList> subIndex) {
+        return subIndex.values().toArray(new IntArrayList[0]);
+    }
+
+    private long rowSum(int rowId) {
+        int offset = rowId * numCols;
+        long sum = 0;
+        for (int colId = 0; colId < numCols; colId++) {
+            sum += rows.get(offset + colId);
+        }
+        return sum;
+    }
+
+    /**
+     * Sets col3 = col1 + col2 for `rowId`; only valid when col3 is not indexed.
+     */
+    private void updateRow(int rowId) {
+        int offset = rowId * numCols;
+        rows.put(offset + 3, rows.get(offset + 1) + rows.get(offset + 2));
     }
 }
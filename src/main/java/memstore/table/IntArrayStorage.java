@@ -0,0 +1,37 @@
+package memstore.table;
+
+/**
+ * IntStorage backed by a plain int[].
+ */
+public final class IntArrayStorage implements IntStorage {
+    private final int[] data;
+
+    public IntArrayStorage(int size) {
+        this.data = new int[size];
+    }
+
+    @Override
+    public int size() {
+        return data.length;
+    }
+
+    @Override
+    public int get(int index) {
+        return data[index];
+    }
+
+    @Override
+    public void put(int index, int value) {
+        data[index] = value;
+    }
+
+    @Override
+    public void get(int index, int[] dst, int offset, int length) {
+        System.arraycopy(data, index, dst, offset, length);
+    }
+
+    @Override
+    public void put(int index, int[] src, int offset, int length) {
+        System.arraycopy(src, offset, data, index, length);
+    }
+}
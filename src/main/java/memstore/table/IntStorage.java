@@ -0,0 +1,42 @@
+package memstore.table;
+
+/**
+ * Fixed-size array of int fields that a table lays its data out in.
+ * Fields are addressed by their int index, not by byte offset.
+ *
+ * Implementations must allow concurrent reads, and concurrent writes to
+ * disjoint indices, so that parallel scans can share one storage.
+ */
+public interface IntStorage extends AutoCloseable {
+    /**
+     * Returns the number of int fields in the storage.
+     */
+    int size();
+
+    /**
+     * Returns the int field at `index`.
+     */
+    int get(int index);
+
+    /**
+     * Sets the int field at `index` to `value`.
+     */
+    void put(int index, int value);
+
+    /**
+     * Copies the `length` fields starting at `index` into `dst[offset..]`.
+     */
+    void get(int index, int[] dst, int offset, int length);
+
+    /**
+     * Copies `src[offset..offset+length)` into the fields starting at `index`.
+     */
+    void put(int index, int[] src, int offset, int length);
+
+    /**
+     * Releases any memory held outside the Java heap. The storage must not be
+     * used afterwards.
+     */
+    @Override
+    default void close() { }
+}
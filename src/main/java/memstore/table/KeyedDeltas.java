@@ -0,0 +1,80 @@
+package memstore.table;
+
+/**
+ * Changes of a bulk write to one column, summed by the value of another,
+ * key column, for an aggregate that buckets rows by that key; see
+ * {@link MaintainedAggregates.Aggregate#keyedDeltas(int)}.
+ *
+ * Keys are counted from minKey over a fixed number of values. Each morsel
+ * of the write adds its rows' changes to its own Part, which is merged in
+ * when the morsel is done. A row whose key is outside the range makes the
+ * deltas incomplete.
+ */
+public final class KeyedDeltas {
+    final MaintainedAggregates.Aggregate owner;
+    final int keyCol;
+    final int minKey;
+    /**
+     * Summed change of the rows with key minKey + i.
+     */
+    final long[] deltas;
+    private boolean complete = true;
+
+    /**
+     * @param owner  aggregate the deltas are passed back to.
+     * @param keyCol column the changes are summed by; not the written column.
+     */
+    public KeyedDeltas(MaintainedAggregates.Aggregate owner, int keyCol, int minKey, int numKeys) {
+        this.owner = owner;
+        this.keyCol = keyCol;
+        this.minKey = minKey;
+        this.deltas = new long[numKeys];
+    }
+
+    Part newPart() {
+        return new Part(keyCol, minKey, deltas.length);
+    }
+
+    /**
+     * Adds the changes of a morsel into the deltas. May be called by several
+     * morsels at once.
+     */
+    synchronized void merge(Part part) {
+        complete &= part.complete;
+        for (int i = 0; i < deltas.length; i++) {
+            deltas[i] += part.deltas[i];
+        }
+    }
+
+    /**
+     * Whether every changed row's key was within the range.
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * The changes of one morsel.
+     */
+    static final class Part {
+        final int keyCol;
+        private final int minKey;
+        private final long[] deltas;
+        private boolean complete = true;
+
+        private Part(int keyCol, int minKey, int numKeys) {
+            this.keyCol = keyCol;
+            this.minKey = minKey;
+            this.deltas = new long[numKeys];
+        }
+
+        void add(int key, long delta) {
+            long i = (long) key - minKey;
+            if (i >= 0 && i < deltas.length) {
+                deltas[(int) i] += delta;
+            } else {
+                complete = false;
+            }
+        }
+    }
+}
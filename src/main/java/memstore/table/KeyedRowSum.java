@@ -0,0 +1,232 @@
+package memstore.table;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Maintained view of
+ *   SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE keyCol > threshold;
+ * for any threshold, as a Fenwick tree over the values of keyCol. Cell k
+ * holds the total of all fields of the rows whose keyCol is k, so the query
+ * is the grand total minus a prefix sum. A write to any column adds its
+ * change to the row's cell, and a write to keyCol moves the row's total
+ * between cells; both take O(log D) time for a domain of D values, plus
+ * O(numCols) to total the row when it moves.
+ *
+ * As with {@link DominanceSum}, the domain is the range of values present
+ * when the tree is built, the view is unavailable if it has more than
+ * MAX_KEYS values, and writes outside it or bulk writes mark the tree stale
+ * until a later query rebuilds it. A domain that was too large is only
+ * retried after a recompute() or a bulk write.
+ *
+ * A bulk write to any column but keyCol, such as predicatedUpdate(), sums
+ * its rows' changes by key into {@link KeyedDeltas}, which are added to the
+ * cells in O(D) time, so the tree stays available. That is done for domains
+ * of up to MAX_DELTA_KEYS values, since every morsel of the write sums into
+ * its own array of that size.
+ */
+public final class KeyedRowSum implements MaintainedAggregates.Aggregate {
+    /**
+     * Most values the domain may have, at 8 bytes per value.
+     */
+    static final int MAX_KEYS = 1 << 22;
+
+    /**
+     * Largest domain for which bulk writes are summed by key.
+     */
+    static final int MAX_DELTA_KEYS = 1 << 16;
+
+    private final int keyCol;
+    private final IntSupplier numCols;
+
+    private Table table;
+    private int numRows;
+    private boolean stale = true;
+    private boolean bulkWritten;
+
+    private int minKey;
+    private int size;
+    private long total;
+    /**
+     * Fenwick tree with 1-based indices.
+     */
+    private long[] tree;
+
+    /**
+     * @param keyCol  column whose values the rows are bucketed by.
+     * @param numCols number of columns of the owning table, read when the
+     *                tree is built and when a row moves.
+     */
+    public KeyedRowSum(int keyCol, IntSupplier numCols) {
+        this.keyCol = keyCol;
+        this.numCols = numCols;
+    }
+
+    /**
+     * Whether the view can answer queries, rebuilding it first if it is
+     * stale. False right after a bulk write, see bulkUpdate(), or if the
+     * domain is too large.
+     */
+    public boolean isAvailable() {
+        if (bulkWritten) {
+            bulkWritten = false;
+            return false;
+        }
+        if (stale) {
+            build();
+        }
+        return tree != null;
+    }
+
+    /**
+     * Returns the total of all fields of the rows with keyCol > threshold.
+     * The view must be available.
+     */
+    public long get(int threshold) {
+        // Number of key values <= threshold.
+        int keys = (int) Math.max(0, Math.min(size, (long) threshold - minKey + 1));
+        long sum = 0;
+        for (int i = keys; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return total - sum;
+    }
+
+    private void add(int key, long delta) {
+        for (int i = key - minKey + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+        total += delta;
+    }
+
+    private long rowTotal(int rowId) {
+        long sum = 0;
+        for (int colId = 0; colId < numCols.getAsInt(); colId++) {
+            sum += table.getIntField(rowId, colId);
+        }
+        return sum;
+    }
+
+    @Override
+    public boolean dependsOn(int colId) {
+        return true;
+    }
+
+    @Override
+    public void recompute(Table table, int numRows) {
+        this.table = table;
+        this.numRows = numRows;
+        this.stale = true;
+        this.bulkWritten = false;
+        this.tree = null;
+    }
+
+    /**
+     * Builds the tree over the current domain in O(n * numCols + D) time:
+     * the cells are filled in first, then turned into a Fenwick tree.
+     */
+    private void build() {
+        stale = false;
+        tree = null;
+        if (numRows == 0) {
+            return;
+        }
+        int[] keys = new int[numRows];
+        int maxKey = Integer.MIN_VALUE;
+        minKey = Integer.MAX_VALUE;
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            int key = table.getIntField(rowId, keyCol);
+            keys[rowId] = key;
+            minKey = Math.min(minKey, key);
+            maxKey = Math.max(maxKey, key);
+        }
+        if ((long) maxKey - minKey + 1 > MAX_KEYS) {
+            return;
+        }
+        size = maxKey - minKey + 1;
+        tree = new long[size + 1];
+        total = 0;
+        // Column by column, so that column-major tables are read in order.
+        for (int colId = 0; colId < numCols.getAsInt(); colId++) {
+            for (int rowId = 0; rowId < numRows; rowId++) {
+                int field = table.getIntField(rowId, colId);
+                tree[keys[rowId] - minKey + 1] += field;
+                total += field;
+            }
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    /**
+     * Adds the change to the row's cell, or moves the row to its new cell.
+     * Called before the write, so the table still holds the row's old fields.
+     */
+    @Override
+    public void update(int rowId, int colId, int oldValue, int newValue) {
+        if (stale || tree == null) {
+            // Rebuilt when next queried, or the domain is too large.
+            return;
+        }
+        int key = table.getIntField(rowId, keyCol);
+        if (colId != keyCol) {
+            add(key, (long) newValue - oldValue);
+            return;
+        }
+        if ((long) newValue - minKey < 0 || (long) newValue - minKey >= size) {
+            stale = true;
+            return;
+        }
+        long rowTotal = rowTotal(rowId);
+        add(key, -rowTotal);
+        add(newValue, rowTotal + newValue - oldValue);
+    }
+
+    @Override
+    public KeyedDeltas keyedDeltas(int colId) {
+        if (stale || tree == null || colId == keyCol || size > MAX_DELTA_KEYS) {
+            return null;
+        }
+        return new KeyedDeltas(this, keyCol, minKey, size);
+    }
+
+    /**
+     * Adds the summed changes to the cells, turning them into a Fenwick tree
+     * of deltas on the way as build() does. Falls back to bulkUpdate() if a
+     * changed row's key was outside the domain.
+     */
+    @Override
+    public boolean keyedUpdate(int colId, KeyedDeltas deltas) {
+        if (stale || tree == null || !deltas.isComplete()) {
+            return bulkUpdate(colId, 0);
+        }
+        long[] cells = new long[size + 1];
+        for (int i = 1; i <= size; i++) {
+            long delta = deltas.deltas[i - 1];
+            total += delta;
+            cells[i] += delta;
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                cells[parent] += cells[i];
+            }
+            tree[i] += cells[i];
+        }
+        return true;
+    }
+
+    /**
+     * A bulk write does not say which rows changed, so the tree is rebuilt,
+     * but only for a query that follows another without a bulk write in
+     * between; the first query after a bulk write scans. That way, bulk
+     * writes interleaved with queries do not rebuild the tree every time.
+     */
+    @Override
+    public boolean bulkUpdate(int colId, long delta) {
+        stale = true;
+        bulkWritten = true;
+        return true;
+    }
+}
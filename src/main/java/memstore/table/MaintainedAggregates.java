@@ -0,0 +1,196 @@
+package memstore.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Registry of aggregates that a table keeps up to date as its data changes,
+ * so that queries over them can read a value instead of scanning.
+ *
+ * The owning table calls recomputeAll() after loading, onPut() before every
+ * single-field write, and onBulkUpdate() after writing many fields of a
+ * column at once. Aggregates that cannot be maintained from a bulk delta are
+ * recomputed from the table, unless they asked for the changes of the write
+ * to be summed by key, see keyedDeltas().
+ */
+public final class MaintainedAggregates {
+    /**
+     * An aggregate over some of a table's columns.
+     */
+    public interface Aggregate {
+        /**
+         * Whether writes to column `colId` can change the aggregate.
+         */
+        boolean dependsOn(int colId);
+
+        /**
+         * Recomputes the aggregate from the first `numRows` rows of `table`.
+         */
+        void recompute(Table table, int numRows);
+
+        /**
+         * Applies a write of `newValue` over `oldValue` at (rowId, colId).
+         */
+        void update(int rowId, int colId, int oldValue, int newValue);
+
+        /**
+         * Applies a bulk write to column `colId` that changed its values by
+         * `delta` in total. Returns false if that is not enough to maintain
+         * the aggregate, in which case it is recomputed.
+         */
+        boolean bulkUpdate(int colId, long delta);
+
+        /**
+         * Returns deltas for a bulk write to column `colId` to be summed
+         * into, or null if the total change is enough. If the write fills
+         * them in, they are passed to keyedUpdate() instead of calling
+         * bulkUpdate().
+         */
+        default KeyedDeltas keyedDeltas(int colId) {
+            return null;
+        }
+
+        /**
+         * Applies a bulk write to column `colId` whose changes were summed
+         * into `deltas`, as returned by keyedDeltas(). Returns false if that
+         * is not enough to maintain the aggregate, as bulkUpdate() does.
+         */
+        default boolean keyedUpdate(int colId, KeyedDeltas deltas) {
+            return false;
+        }
+    }
+
+    /**
+     * SUM of one column.
+     */
+    public static final class ColumnSum implements Aggregate {
+        private final int colId;
+        private long sum;
+
+        public ColumnSum(int colId) {
+            this.colId = colId;
+        }
+
+        public long get() {
+            return sum;
+        }
+
+        @Override
+        public boolean dependsOn(int colId) {
+            return colId == this.colId;
+        }
+
+        @Override
+        public void recompute(Table table, int numRows) {
+            long sum = 0;
+            for (int rowId = 0; rowId < numRows; rowId++) {
+                sum += table.getIntField(rowId, colId);
+            }
+            this.sum = sum;
+        }
+
+        @Override
+        public void update(int rowId, int colId, int oldValue, int newValue) {
+            sum += (long) newValue - oldValue;
+        }
+
+        @Override
+        public boolean bulkUpdate(int colId, long delta) {
+            sum += delta;
+            return true;
+        }
+    }
+
+    private final Table table;
+    private final List<Aggregate> aggregates = new ArrayList<>();
+    private int numRows = -1;
+
+    public MaintainedAggregates(Table table) {
+        this.table = table;
+    }
+
+    /**
+     * Registers `aggregate`, computing it right away if the table is loaded.
+     */
+    public <A extends Aggregate> A register(A aggregate) {
+        aggregates.add(aggregate);
+        if (numRows >= 0) {
+            aggregate.recompute(table, numRows);
+        }
+        return aggregate;
+    }
+
+    public void unregister(Aggregate aggregate) {
+        aggregates.remove(aggregate);
+    }
+
+    /**
+     * Recomputes every aggregate after the table has loaded `numRows` rows.
+     */
+    public void recomputeAll(int numRows) {
+        this.numRows = numRows;
+        for (Aggregate aggregate : aggregates) {
+            aggregate.recompute(table, numRows);
+        }
+    }
+
+    /**
+     * Whether any registered aggregate depends on column `colId`.
+     */
+    public boolean dependsOn(int colId) {
+        for (Aggregate aggregate : aggregates) {
+            if (aggregate.dependsOn(colId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void onPut(int rowId, int colId, int oldValue, int newValue) {
+        for (Aggregate aggregate : aggregates) {
+            if (aggregate.dependsOn(colId)) {
+                aggregate.update(rowId, colId, oldValue, newValue);
+            }
+        }
+    }
+
+    /**
+     * Returns the deltas a bulk write to column `colId` should sum its
+     * changes into, or null if no aggregate needs them. Only the first
+     * aggregate that asks gets them; the others are told the total change.
+     */
+    public KeyedDeltas keyedDeltas(int colId) {
+        for (Aggregate aggregate : aggregates) {
+            if (aggregate.dependsOn(colId)) {
+                KeyedDeltas deltas = aggregate.keyedDeltas(colId);
+                if (deltas != null) {
+                    return deltas;
+                }
+            }
+        }
+        return null;
+    }
+
+    public void onBulkUpdate(int colId, long delta) {
+        onBulkUpdate(colId, delta, null);
+    }
+
+    /**
+     * Follows a bulk write to column `colId` that changed its values by
+     * `delta` in total, and whose changes were summed into `deltas` if it is
+     * not null; see keyedDeltas().
+     */
+    public void onBulkUpdate(int colId, long delta, KeyedDeltas deltas) {
+        for (Aggregate aggregate : aggregates) {
+            if (!aggregate.dependsOn(colId)) {
+                continue;
+            }
+            boolean maintained = deltas != null && deltas.owner == aggregate
+                    ? aggregate.keyedUpdate(colId, deltas)
+                    : aggregate.bulkUpdate(colId, delta);
+            if (!maintained) {
+                aggregate.recompute(table, numRows);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package memstore.table;
+
+import memstore.data.ByteFormat;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * IntStorage over a memory-mapped region of a file, such as the data of a
+ * table snapshot; see {@link TableSnapshot}.
+ *
+ * The region is mapped privately (copy-on-write): pages are read from the file
+ * as they are first touched, and writes only change this process's copy of a
+ * page, never the file. If the channel is not writable, the region is mapped
+ * read-only and writes fail. Like DirectStorage, the fields are split across
+ * chunks of 2^chunkShift fields, each mapped on its own. close() unmaps them.
+ */
+final class MappedStorage implements IntStorage {
+    private final int chunkShift;
+    private final int chunkMask;
+    private int size;
+    private MappedByteBuffer[] buffers;
+    private IntBuffer[] chunks;
+
+    MappedStorage(FileChannel channel, FileChannel.MapMode mode, long offset, int size,
+                  ByteOrder order) throws IOException {
+        this(channel, mode, offset, size, order, DirectStorage.DEFAULT_CHUNK_SHIFT);
+    }
+
+    /**
+     * @param mode PRIVATE, or READ_ONLY if the channel is not writable.
+     */
+    MappedStorage(FileChannel channel, FileChannel.MapMode mode, long offset, int size,
+                  ByteOrder order, int chunkShift) throws IOException {
+        this.size = size;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1 << chunkShift) - 1;
+
+        int numChunks = (int) (((long) size + chunkMask) >>> chunkShift);
+        this.buffers = new MappedByteBuffer[numChunks];
+        this.chunks = new IntBuffer[numChunks];
+        for (int i = 0; i < numChunks; i++) {
+            int chunkSize = Math.min(1 << chunkShift, size - (i << chunkShift));
+            long chunkOffset = offset + (long) ByteFormat.FIELD_LEN * ((long) i << chunkShift);
+            buffers[i] = channel.map(mode, chunkOffset,
+                    (long) ByteFormat.FIELD_LEN * chunkSize);
+            chunks[i] = buffers[i].order(order).asIntBuffer();
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public int get(int index) {
+        return chunks[index >>> chunkShift].get(index & chunkMask);
+    }
+
+    @Override
+    public void put(int index, int value) {
+        chunks[index >>> chunkShift].put(index & chunkMask, value);
+    }
+
+    @Override
+    public void get(int index, int[] dst, int offset, int length) {
+        while (length > 0) {
+            int inChunk = index & chunkMask;
+            int n = Math.min(length, (1 << chunkShift) - inChunk);
+            IntBuffer view = chunks[index >>> chunkShift].duplicate();
+            ((Buffer) view).position(inChunk);
+            view.get(dst, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    @Override
+    public void put(int index, int[] src, int offset, int length) {
+        while (length > 0) {
+            int inChunk = index & chunkMask;
+            int n = Math.min(length, (1 << chunkShift) - inChunk);
+            IntBuffer view = chunks[index >>> chunkShift].duplicate();
+            ((Buffer) view).position(inChunk);
+            view.put(src, offset, n);
+            index += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /**
+     * Unmaps the file. Must not race with other accesses.
+     */
+    @Override
+    public void close() {
+        ByteBuffer[] toFree = buffers;
+        size = 0;
+        buffers = new MappedByteBuffer[0];
+        chunks = new IntBuffer[0];
+        for (ByteBuffer buffer : toFree) {
+            DirectMemory.free(buffer);
+        }
+    }
+}
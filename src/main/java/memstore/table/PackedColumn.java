@@ -0,0 +1,203 @@
+package memstore.table;
+
+/**
+ * A column of ints stored as fixed-width codes bit-packed into longs.
+ *
+ * Every value is stored as code = value - base, using `width` bits, where
+ * base is the smallest value the column can hold. Each word holds
+ * floor(64 / width) codes, and codes never straddle two words, so that a scan
+ * can walk the words with shifts and masks only.
+ *
+ * Predicates are evaluated on the codes directly, by translating their
+ * thresholds into the code domain once per query.
+ */
+final class PackedColumn {
+    private final int numRows;
+    private long base;
+    private int width;
+    private int perWord;
+    private long mask;
+    private long[] words;
+
+    /**
+     * Creates a column for `numRows` values in [min, max], all set to min.
+     */
+    PackedColumn(int numRows, int min, int max) {
+        this.numRows = numRows;
+        layout(min, max);
+        this.words = new long[wordsFor(numRows)];
+    }
+
+    private void layout(long min, long max) {
+        this.base = min;
+        this.width = Math.max(1, 64 - Long.numberOfLeadingZeros(max - min));
+        this.perWord = 64 / width;
+        this.mask = (1L << width) - 1;
+    }
+
+    private int wordsFor(int rows) {
+        return (rows + perWord - 1) / perWord;
+    }
+
+    int width() {
+        return width;
+    }
+
+    long base() {
+        return base;
+    }
+
+    long maxValue() {
+        return base + mask;
+    }
+
+    int get(int rowId) {
+        long word = words[rowId / perWord];
+        return (int) (((word >>> ((rowId % perWord) * width)) & mask) + base);
+    }
+
+    /**
+     * Sets the value at `rowId`, widening the column first if the value is out
+     * of its current range.
+     */
+    void set(int rowId, int value) {
+        ensureRange(value, value);
+        setCode(rowId, value - base);
+    }
+
+    private void setCode(int rowId, long code) {
+        int wordId = rowId / perWord;
+        int shift = (rowId % perWord) * width;
+        words[wordId] = (words[wordId] & ~(mask << shift)) | (code << shift);
+    }
+
+    /**
+     * Repacks the column, if needed, so that it can hold every value in
+     * [min, max] as well as every value it can hold now.
+     */
+    void ensureRange(long min, long max) {
+        if (min >= base && max <= maxValue()) {
+            return;
+        }
+        long oldBase = base;
+        int oldWidth = width;
+        int oldPerWord = perWord;
+        long oldMask = mask;
+        long[] oldWords = words;
+
+        layout(Math.min(min, base), Math.max(max, maxValue()));
+        words = new long[wordsFor(numRows)];
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            long word = oldWords[rowId / oldPerWord];
+            long value = ((word >>> ((rowId % oldPerWord) * oldWidth)) & oldMask) + oldBase;
+            setCode(rowId, value - base);
+        }
+    }
+
+    /**
+     * Translates `value > threshold` into the smallest matching code, clamped
+     * to [0, mask + 1].
+     */
+    long codeAbove(long threshold) {
+        return clamp(threshold + 1 - base);
+    }
+
+    /**
+     * Translates `value < threshold` into one past the largest matching code,
+     * clamped to [0, mask + 1].
+     */
+    long codeBelow(long threshold) {
+        return clamp(threshold - base);
+    }
+
+    private long clamp(long code) {
+        return Math.max(0, Math.min(mask + 1, code));
+    }
+
+    /**
+     * Returns the sum of the codes of rows [from, to); add (to - from) * base
+     * to get the sum of the values.
+     */
+    long sumCodes(int from, int to) {
+        long sum = 0;
+        int wordId = from / perWord;
+        int slot = from % perWord;
+        int rowId = from;
+        while (rowId < to) {
+            long bits = words[wordId++] >>> (slot * width);
+            int n = Math.min(perWord - slot, to - rowId);
+            for (int i = 0; i < n; i++) {
+                sum += bits & mask;
+                bits >>>= width;
+            }
+            rowId += n;
+            slot = 0;
+        }
+        return sum;
+    }
+
+    /**
+     * Evaluates lo <= code < hi on rows [from, to), setting bit (rowId - from)
+     * of `selection` to the result and clearing the bits past the last row. If
+     * `and` is set, the result is ANDed into the selection instead.
+     */
+    void filter(int from, int to, long lo, long hi, long[] selection, boolean and) {
+        int wordId = from / perWord;
+        int slot = from % perWord;
+        int rowId = from;
+        long acc = 0;
+        int accBits = 0;
+        int selId = 0;
+        while (rowId < to) {
+            long bits = words[wordId++] >>> (slot * width);
+            int n = Math.min(perWord - slot, to - rowId);
+            for (int i = 0; i < n; i++) {
+                long code = bits & mask;
+                bits >>>= width;
+                acc |= (code >= lo & code < hi ? 1L : 0L) << accBits;
+                if (++accBits == 64) {
+                    selection[selId] = and ? selection[selId] & acc : acc;
+                    selId++;
+                    acc = 0;
+                    accBits = 0;
+                }
+            }
+            rowId += n;
+            slot = 0;
+        }
+        if (accBits > 0) {
+            selection[selId] = and ? selection[selId] & acc : acc;
+            selId++;
+        }
+        if (!and) {
+            for (; selId < selection.length; selId++) {
+                selection[selId] = 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the sum of the codes of the rows in [from, to) whose bit is set
+     * in `selection`.
+     */
+    long sumCodesSelected(int from, int to, long[] selection) {
+        long sum = 0;
+        int wordId = from / perWord;
+        int slot = from % perWord;
+        int rowId = from;
+        int selBit = 0;
+        while (rowId < to) {
+            long bits = words[wordId++] >>> (slot * width);
+            int n = Math.min(perWord - slot, to - rowId);
+            for (int i = 0; i < n; i++) {
+                long selected = -((selection[selBit >>> 6] >>> selBit) & 1L);
+                sum += bits & mask & selected;
+                bits >>>= width;
+                selBit++;
+            }
+            rowId += n;
+            slot = 0;
+        }
+        return sum;
+    }
+}
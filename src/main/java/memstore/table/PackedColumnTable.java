@@ -0,0 +1,398 @@
+package memstore.table;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import memstore.data.BufferedLoader;
+import memstore.data.DataLoader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * PackedColumnTable, which stores data in column-major format with every
+ * column bit-packed to the smallest width that holds its range of values.
+ * That is, data is laid out like
+ *   col 1 | col 2 | ... | col m,
+ * but a column of values in [0, 1024) takes 10 bits per value rather than 32.
+ *
+ * Queries run on the packed codes directly: predicates are evaluated into
+ * selection bitmaps a batch of rows at a time, and sums are taken over the
+ * codes with the column base added back once per batch. Writes that fall
+ * outside a column's range widen (repack) that column.
+ *
+ * Point writes can instead be buffered in a {@link DeltaStore}; see
+ * setDeltaThreshold().
+ */
+public class PackedColumnTable implements Table {
+    /**
+     * Rows per batch; the selection bitmap for a batch is BATCH_ROWS / 64 longs.
+     */
+    static final int BATCH_ROWS = 4096;
+
+    int numCols;
+    int numRows;
+    PackedColumn[] columns;
+    int deltaThreshold;
+    DeltaStore delta;
+
+    public PackedColumnTable() { }
+
+    /**
+     * Loads data into the table through passed-in data loader. Is not timed.
+     *
+     * @param loader Loader to load data from.
+     * @throws IOException
+     */
+    @Override
+    public void load(DataLoader loader) throws IOException {
+        loader = BufferedLoader.sized(loader);
+        this.numCols = loader.getNumCols();
+        numRows = loader.getNumRows();
+
+        int[] mins = new int[numCols];
+        int[] maxs = new int[numCols];
+        for (int colId = 0; colId < numCols; colId++) {
+            mins[colId] = numRows == 0 ? 0 : Integer.MAX_VALUE;
+            maxs[colId] = numRows == 0 ? 0 : Integer.MIN_VALUE;
+        }
+        // Scans the loader twice, to size the columns before filling them in.
+        loader.scan(batch -> {
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                for (int colId = 0; colId < numCols; colId++) {
+                    int field = batch.getInt(row, colId);
+                    mins[colId] = Math.min(mins[colId], field);
+                    maxs[colId] = Math.max(maxs[colId], field);
+                }
+            }
+        });
+
+        this.columns = new PackedColumn[numCols];
+        for (int colId = 0; colId < numCols; colId++) {
+            columns[colId] = new PackedColumn(numRows, mins[colId], maxs[colId]);
+        }
+        loader.scan(batch -> {
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                for (int colId = 0; colId < numCols; colId++) {
+                    columns[colId].set(batch.getFirstRowId() + row, batch.getInt(row, colId));
+                }
+            }
+        });
+        delta = deltaThreshold > 0 ? new DeltaStore(numRows, numCols) : null;
+    }
+
+    /**
+     * Buffers point writes in a DeltaStore of up to `maxFields` fields, so
+     * that the columns stay packed as they are; the buffer is folded into
+     * the columns, widening each at most once, when it grows past that.
+     * Scans leave rows with buffered fields out of their batched pass and
+     * add them back one at a time. 0, the default, writes straight to the
+     * columns. Takes effect immediately if the table is loaded.
+     */
+    public void setDeltaThreshold(int maxFields) {
+        this.deltaThreshold = maxFields;
+        if (columns == null) {
+            return;
+        }
+        if (maxFields <= 0) {
+            mergeDelta();
+            delta = null;
+        } else if (delta == null) {
+            delta = new DeltaStore(numRows, numCols);
+        } else if (delta.size() > maxFields) {
+            mergeDelta();
+        }
+    }
+
+    /**
+     * Returns the number of fields buffered in the delta store.
+     */
+    public int getDeltaSize() {
+        return delta == null ? 0 : delta.size();
+    }
+
+    /**
+     * Folds the delta store into the columns and empties it.
+     */
+    public void mergeDelta() {
+        if (delta == null || delta.size() == 0) {
+            return;
+        }
+        long[] mins = new long[numCols];
+        long[] maxs = new long[numCols];
+        Arrays.fill(mins, Long.MAX_VALUE);
+        Arrays.fill(maxs, Long.MIN_VALUE);
+        delta.forEach((rowId, colId, field) -> {
+            mins[colId] = Math.min(mins[colId], field);
+            maxs[colId] = Math.max(maxs[colId], field);
+        });
+        for (int colId = 0; colId < numCols; colId++) {
+            if (mins[colId] <= maxs[colId]) {
+                columns[colId].ensureRange(mins[colId], maxs[colId]);
+            }
+        }
+        delta.forEach((rowId, colId, field) -> columns[colId].set(rowId, field));
+        delta.clear();
+    }
+
+    /**
+     * Returns the number of bits each value of column `colId` currently takes.
+     */
+    public int getColumnWidth(int colId) {
+        return columns[colId].width();
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public int getIntField(int rowId, int colId) {
+        int field = columns[colId].get(rowId);
+        return delta == null ? field : delta.get(rowId, colId, field);
+    }
+
+    /**
+     * Inserts the passed-in int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public void putIntField(int rowId, int colId, int field) {
+        if (delta == null) {
+            columns[colId].set(rowId, field);
+            return;
+        }
+        delta.put(rowId, colId, field);
+        if (delta.size() > deltaThreshold) {
+            mergeDelta();
+        }
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table;
+     *
+     *  Returns the sum of all elements in the first column of the table.
+     */
+    @Override
+    public long columnSum() {
+        PackedColumn col0 = columns[0];
+        long sum = col0.sumCodes(0, numRows) + numRows * col0.base();
+        if (delta != null) {
+            IntArrayList dirty = delta.dirtyRowIds(0);
+            for (int i = 0; i < dirty.size(); i++) {
+                int rowId = dirty.getInt(i);
+                sum += getIntField(rowId, 0) - col0.get(rowId);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table WHERE col1 > threshold1 AND col2 < threshold2;
+     *
+     *  Returns the sum of all elements in the first column of the table,
+     *  subject to the passed-in predicates.
+     */
+    @Override
+    public long predicatedColumnSum(int threshold1, int threshold2) {
+        PackedColumn col0 = columns[0];
+        PackedColumn col1 = columns[1];
+        PackedColumn col2 = columns[2];
+        long lo1 = col1.codeAbove(threshold1);
+        long hi2 = col2.codeBelow(threshold2);
+
+        long[] selection = new long[BATCH_ROWS / 64];
+        long sum = 0;
+        for (int from = 0; from < numRows; from += BATCH_ROWS) {
+            int to = Math.min(numRows, from + BATCH_ROWS);
+            col1.filter(from, to, lo1, Long.MAX_VALUE, selection, false);
+            col2.filter(from, to, 0, hi2, selection, true);
+            if (delta != null) {
+                delta.clearDirty(selection, from, 1);
+                delta.clearDirty(selection, from, 2);
+            }
+            long count = bitCount(selection);
+            if (count > 0) {
+                sum += col0.sumCodesSelected(from, to, selection) + count * col0.base();
+            }
+        }
+        if (delta != null) {
+            // Rows that passed on their stored col1 and col2 may have a buffered col0.
+            IntArrayList dirty = delta.dirtyRowIds(0);
+            for (int i = 0; i < dirty.size(); i++) {
+                int rowId = dirty.getInt(i);
+                if (!delta.isDirty(rowId, 1) && !delta.isDirty(rowId, 2)
+                        && col1.get(rowId) > threshold1 && col2.get(rowId) < threshold2) {
+                    sum += getIntField(rowId, 0) - col0.get(rowId);
+                }
+            }
+            // Rows with a buffered col1 or col2 were left out.
+            for (int p = 1; p <= 2; p++) {
+                dirty = delta.dirtyRowIds(p);
+                for (int i = 0; i < dirty.size(); i++) {
+                    int rowId = dirty.getInt(i);
+                    if (p == 2 && delta.isDirty(rowId, 1)) {
+                        continue;
+                    }
+                    if (getIntField(rowId, 1) > threshold1 && getIntField(rowId, 2) < threshold2) {
+                        sum += getIntField(rowId, 0);
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE col0 > threshold;
+     *
+     *  Returns the sum of all elements in the rows which pass the predicate.
+     */
+    @Override
+    public long predicatedAllColumnsSum(int threshold) {
+        PackedColumn col0 = columns[0];
+        long lo = col0.codeAbove(threshold);
+
+        long[] selection = new long[BATCH_ROWS / 64];
+        long sum = 0;
+        for (int from = 0; from < numRows; from += BATCH_ROWS) {
+            int to = Math.min(numRows, from + BATCH_ROWS);
+            col0.filter(from, to, lo, Long.MAX_VALUE, selection, false);
+            if (delta != null) {
+                delta.clearDirty(selection, from, 0);
+            }
+            long count = bitCount(selection);
+            if (count == 0) {
+                continue;
+            }
+            for (PackedColumn col : columns) {
+                if (count == to - from) {
+                    sum += col.sumCodes(from, to) + count * col.base();
+                } else {
+                    sum += col.sumCodesSelected(from, to, selection) + count * col.base();
+                }
+            }
+        }
+        if (delta != null) {
+            // Rows that passed on their stored col0 may have other buffered fields.
+            for (int colId = 1; colId < numCols; colId++) {
+                IntArrayList dirty = delta.dirtyRowIds(colId);
+                for (int i = 0; i < dirty.size(); i++) {
+                    int rowId = dirty.getInt(i);
+                    if (!delta.isDirty(rowId, 0) && col0.get(rowId) > threshold) {
+                        sum += getIntField(rowId, colId) - columns[colId].get(rowId);
+                    }
+                }
+            }
+            // Rows with a buffered col0 were left out.
+            IntArrayList dirty = delta.dirtyRowIds(0);
+            for (int i = 0; i < dirty.size(); i++) {
+                int rowId = dirty.getInt(i);
+                if (getIntField(rowId, 0) > threshold) {
+                    for (int colId = 0; colId < numCols; colId++) {
+                        sum += getIntField(rowId, colId);
+                    }
+                }
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Implements the query
+     *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+     *
+     *   Returns the number of rows updated.
+     *
+     *   col3 is widened up front to hold any sum of a col1 and a col2 value, so
+     *   that it is repacked at most once per call.
+     */
+    @Override
+    public int predicatedUpdate(int threshold) {
+        PackedColumn col0 = columns[0];
+        PackedColumn col1 = columns[1];
+        PackedColumn col2 = columns[2];
+        PackedColumn col3 = columns[3];
+        long hi = col0.codeBelow(threshold);
+        int count = 0;
+        if (delta != null) {
+            // Rows with buffered fields are updated in the buffer. This adds at
+            // most one field per such row; the next write folds it in if needed.
+            IntArrayList dirty = delta.dirtyRowIds();
+            for (int i = 0; i < dirty.size(); i++) {
+                int rowId = dirty.getInt(i);
+                if (getIntField(rowId, 0) < threshold) {
+                    delta.put(rowId, 3, getIntField(rowId, 1) + getIntField(rowId, 2));
+                    count++;
+                }
+            }
+        }
+        if (hi == 0) {
+            return count;
+        }
+        long minSum = col1.base() + col2.base();
+        long maxSum = col1.maxValue() + col2.maxValue();
+        if (minSum < Integer.MIN_VALUE || maxSum > Integer.MAX_VALUE) {
+            // Sums may wrap around, so any int can come out.
+            col3.ensureRange(Integer.MIN_VALUE, Integer.MAX_VALUE);
+        } else {
+            col3.ensureRange(minSum, maxSum);
+        }
+
+        long[] selection = new long[BATCH_ROWS / 64];
+        for (int from = 0; from < numRows; from += BATCH_ROWS) {
+            int to = Math.min(numRows, from + BATCH_ROWS);
+            col0.filter(from, to, 0, hi, selection, false);
+            if (delta != null) {
+                delta.clearDirty(selection, from);
+            }
+            for (int i = 0; i < selection.length; i++) {
+                long bits = selection[i];
+                while (bits != 0) {
+                    int rowId = from + 64 * i + Long.numberOfTrailingZeros(bits);
+                    col3.set(rowId, col1.get(rowId) + col2.get(rowId));
+                    bits &= bits - 1;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order. General queries are
+     * evaluated one field at a time rather than on the packed codes.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        return plan.select(this, numRows);
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated. Writes go through putIntField(), so
+     * the updated column is widened as needed.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        return (int) plan.update(this, numRows)[0];
+    }
+
+    /**
+     * Returns the number of set bits in `selection`. Bits past the end of the
+     * batch are always clear, since filter() clears them.
+     */
+    private static long bitCount(long[] selection) {
+        long count = 0;
+        for (long bits : selection) {
+            count += Long.bitCount(bits);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,101 @@
+package memstore.table;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Morsel-driven parallel execution of range scans.
+ *
+ * A scan over [0, n) is split into morsels of `morselSize` elements. Up to
+ * `parallelism` workers (the calling thread plus tasks on the common pool)
+ * repeatedly claim the next unprocessed morsel and add its partial result to
+ * their own running total; the totals are merged once all morsels are done.
+ * If a morsel throws, no more morsels are claimed, and the first failure is
+ * rethrown once every worker has stopped, with the others suppressed.
+ *
+ * The common pool is also the one parallel loads run on, see
+ * memstore.data.ParallelTasks. It has one worker per core but one, so that
+ * with the calling thread every core is busy.
+ */
+final class ParallelScan {
+    /**
+     * Default number of rows per morsel.
+     */
+    static final int MORSEL_ROWS = 1 << 16;
+
+    private ParallelScan() { }
+
+    /**
+     * Computes a partial result over the range [from, to).
+     */
+    interface RangeSum {
+        long apply(int from, int to);
+    }
+
+    static long sum(int n, int parallelism, RangeSum fn) {
+        return sum(n, MORSEL_ROWS, parallelism, fn);
+    }
+
+    static long sum(int n, int morselSize, int parallelism, RangeSum fn) {
+        if (parallelism <= 1 || n <= morselSize) {
+            return fn.apply(0, n);
+        }
+        int numMorsels = (n + morselSize - 1) / morselSize;
+        int numWorkers = Math.min(parallelism, numMorsels);
+        AtomicInteger nextMorsel = new AtomicInteger();
+
+        List<ForkJoinTask<Long>> tasks = new ArrayList<>();
+        for (int i = 1; i < numWorkers; i++) {
+            tasks.add(ForkJoinPool.commonPool().submit(() -> drain(n, morselSize, numMorsels, nextMorsel, fn)));
+        }
+        long total = 0;
+        Throwable failure = null;
+        try {
+            total = drain(n, morselSize, numMorsels, nextMorsel, fn);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        // Wait for every worker even after a failure, so that no morsel is
+        // still running, or writing, once the scan has returned.
+        for (ForkJoinTask<Long> task : tasks) {
+            task.quietlyJoin();
+            Throwable e = task.getException();
+            if (e == null) {
+                total += task.join();
+            } else if (failure == null) {
+                failure = e;
+            } else {
+                failure.addSuppressed(e);
+            }
+        }
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw (RuntimeException) failure;
+        }
+        return total;
+    }
+
+    /**
+     * Runs the unclaimed morsels until none are left. A failure stops the
+     * other workers from claiming more.
+     */
+    private static long drain(int n, int morselSize, int numMorsels, AtomicInteger nextMorsel,
+                              RangeSum fn) {
+        long total = 0;
+        int morsel;
+        try {
+            while ((morsel = nextMorsel.getAndIncrement()) < numMorsels) {
+                int from = morsel * morselSize;
+                total += fn.apply(from, Math.min(n, from + morselSize));
+            }
+        } catch (RuntimeException | Error e) {
+            nextMorsel.set(numMorsels);
+            throw e;
+        }
+        return total;
+    }
+}
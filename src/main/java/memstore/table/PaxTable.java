@@ -0,0 +1,354 @@
+package memstore.table;
+
+import memstore.data.BufferedLoader;
+import memstore.data.DataLoader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * PaxTable, which stores data in pages of a fixed number of rows, with the
+ * columns of each page stored one after the other (PAX, "partition
+ * attributes across"). That is, data is laid out like
+ *   page 1: col 1 | col 2 | ... | col m
+ *   page 2: col 1 | col 2 | ... | col m
+ *   ...
+ * where each column run holds the page's rows of that column.
+ *
+ * A page is sized to stay in cache, so a query that touches several columns
+ * of a row finds them all in the same few cache-resident pages, while a scan
+ * of one column still reads contiguous runs of values.
+ *
+ * Columns can also be stored in groups: the columns of a group are kept
+ * row-major inside the page, for columns that are always read together.
+ * Queries run with the batched column kernels.
+ */
+public class PaxTable implements Table {
+    /**
+     * Target size of a page when the number of rows per page is not given.
+     */
+    static final int DEFAULT_PAGE_BYTES = 1 << 15;
+
+    /**
+     * Fewest rows per page when the number of rows per page is not given.
+     */
+    static final int MIN_PAGE_ROWS = 16;
+
+    int numCols;
+    int numRows;
+    IntStorage data;
+    StorageType storageType;
+    int parallelism = 1;
+
+    final int requestedPageRows;
+    final int[][] requestedGroups;
+
+    int pageRows;
+    int pageShift;
+    int pageFields;
+    int numPages;
+
+    /**
+     * Offset of column colId's value for row 0 of a page from the start of
+     * the page; the value for row r is r * columnWidth[colId] further.
+     */
+    int[] columnOffset;
+    /**
+     * Number of columns in colId's group.
+     */
+    int[] columnWidth;
+
+    public PaxTable() {
+        this(StorageType.INT_ARRAY, 0);
+    }
+
+    public PaxTable(int pageRows, int[]... columnGroups) {
+        this(StorageType.INT_ARRAY, pageRows, columnGroups);
+    }
+
+    /**
+     * @param storageType  storage to keep the pages in.
+     * @param pageRows     rows per page, a power of two, or 0 to size pages
+     *                     to about DEFAULT_PAGE_BYTES for the loaded columns.
+     * @param columnGroups columns to store together row-major inside each
+     *                     page. Columns in no group are stored on their own.
+     */
+    public PaxTable(StorageType storageType, int pageRows, int[]... columnGroups) {
+        if (pageRows < 0 || Integer.bitCount(pageRows) > 1) {
+            throw new IllegalArgumentException("Rows per page must be a power of two: " + pageRows);
+        }
+        this.storageType = storageType;
+        this.requestedPageRows = pageRows;
+        this.requestedGroups = columnGroups;
+    }
+
+    /**
+     * Loads data into the table through passed-in data loader. Is not timed.
+     *
+     * @param loader Loader to load data from.
+     * @throws IOException
+     */
+    @Override
+    public void load(DataLoader loader) throws IOException {
+        loader = BufferedLoader.sized(loader);
+        this.numCols = loader.getNumCols();
+        numRows = loader.getNumRows();
+        layOut();
+        close();
+        this.data = storageType.allocate(numPages * pageFields);
+
+        // Batches only write their own rows, so they can be copied in parallel.
+        loader.scanConcurrently(batch -> {
+            int[] fields = batch.fields();
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                int rowId = batch.getFirstRowId() + row;
+                for (int colId = 0; colId < numCols; colId++) {
+                    data.put(index(rowId, colId), fields[row * numCols + colId]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Sizes the pages and places every column inside them.
+     */
+    private void layOut() {
+        pageRows = requestedPageRows;
+        if (pageRows == 0) {
+            int rows = DEFAULT_PAGE_BYTES / (Integer.BYTES * Math.max(1, numCols));
+            pageRows = Math.max(MIN_PAGE_ROWS, Integer.highestOneBit(Math.max(1, rows)));
+        }
+        pageShift = Integer.numberOfTrailingZeros(pageRows);
+        if ((long) pageRows * numCols > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Pages of " + pageRows + " rows are too large");
+        }
+        pageFields = pageRows * numCols;
+        numPages = (numRows + pageRows - 1) >>> pageShift;
+        if ((long) numPages * pageFields > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Table of " + numRows + " rows is too large");
+        }
+
+        columnOffset = new int[numCols];
+        columnWidth = new int[numCols];
+        boolean[] placed = new boolean[numCols];
+        int start = 0;
+        for (int[] group : requestedGroups) {
+            for (int pos = 0; pos < group.length; pos++) {
+                int colId = group[pos];
+                if (colId < 0 || colId >= numCols || placed[colId]) {
+                    throw new IllegalArgumentException(
+                            "Bad column groups " + Arrays.deepToString(requestedGroups)
+                                    + " for " + numCols + " columns");
+                }
+                placed[colId] = true;
+                columnOffset[colId] = start * pageRows + pos;
+                columnWidth[colId] = group.length;
+            }
+            start += group.length;
+        }
+        for (int colId = 0; colId < numCols; colId++) {
+            if (!placed[colId]) {
+                columnOffset[colId] = start * pageRows;
+                columnWidth[colId] = 1;
+                start++;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of rows per page of the loaded table.
+     */
+    public int getPageRows() {
+        return pageRows;
+    }
+
+    private int index(int rowId, int colId) {
+        return (rowId >>> pageShift) * pageFields + columnOffset[colId]
+                + (rowId & (pageRows - 1)) * columnWidth[colId];
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public int getIntField(int rowId, int colId) {
+        return data.get(index(rowId, colId));
+    }
+
+    /**
+     * Inserts the passed-in int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public void putIntField(int rowId, int colId, int field) {
+        data.put(index(rowId, colId), field);
+    }
+
+    /**
+     * Frees the table's storage; see {@link StorageType#DIRECT}.
+     */
+    @Override
+    public void close() {
+        if (data != null) {
+            data.close();
+        }
+    }
+
+    /**
+     * Sets the number of threads each query may use; see
+     * {@link ColumnTable#setParallelism}. Morsels are whole pages.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Column runs of the pages, as read by the batched kernels. A run of
+     * rows may span several pages. Holds scratch space, so each morsel uses
+     * its own.
+     */
+    private final class PageColumns implements QueryKernel.Columns {
+        private int[] scratch = new int[0];
+
+        @Override
+        public void get(int colId, int rowId, int[] dst, int n) {
+            int width = columnWidth[colId];
+            for (int done = 0; done < n; ) {
+                int r = (rowId + done) & (pageRows - 1);
+                int len = Math.min(n - done, pageRows - r);
+                int start = index(rowId + done, colId);
+                if (width == 1) {
+                    data.get(start, dst, done, len);
+                } else {
+                    if (scratch.length < len * width) {
+                        scratch = new int[len * width];
+                    }
+                    data.get(start, scratch, 0, (len - 1) * width + 1);
+                    for (int i = 0; i < len; i++) {
+                        dst[done + i] = scratch[i * width];
+                    }
+                }
+                done += len;
+            }
+        }
+
+        @Override
+        public void put(int colId, int rowId, int[] src, int n) {
+            int width = columnWidth[colId];
+            for (int done = 0; done < n; ) {
+                int r = (rowId + done) & (pageRows - 1);
+                int len = Math.min(n - done, pageRows - r);
+                int start = index(rowId + done, colId);
+                if (width == 1) {
+                    data.put(start, src, done, len);
+                } else {
+                    for (int i = 0; i < len; i++) {
+                        data.put(start + i * width, src[done + i]);
+                    }
+                }
+                done += len;
+            }
+        }
+    }
+
+    /**
+     * Runs `kernel` over all rows, in morsels of whole pages.
+     */
+    private long scan(ParallelScan.RangeSum kernel) {
+        int morselRows = Math.max(pageRows, ParallelScan.MORSEL_ROWS);
+        return ParallelScan.sum(numRows, morselRows, parallelism, kernel);
+    }
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        long[] result = plan.newResult();
+        if (plan.empty) {
+            return result;
+        }
+        QueryKernel.BatchedColumns kernel =
+                (QueryKernel.BatchedColumns) plan.kernel(QueryKernel.Kind.BATCHED_COLUMNS);
+        scan((from, to) -> {
+            long[] part = plan.newResult();
+            kernel.select(new PageColumns(), from, to, part);
+            plan.merge(result, part);
+            return 0;
+        });
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        if (plan.empty) {
+            return 0;
+        }
+        QueryKernel.BatchedColumns kernel =
+                (QueryKernel.BatchedColumns) plan.kernel(QueryKernel.Kind.BATCHED_COLUMNS);
+        long[] result = plan.newResult();
+        scan((from, to) -> {
+            long[] part = plan.newResult();
+            kernel.update(new PageColumns(), from, to, part, false);
+            plan.merge(result, part);
+            return 0;
+        });
+        return (int) result[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table;
+     *
+     *  Returns the sum of all elements in the first column of the table.
+     */
+    @Override
+    public long columnSum() {
+        return select(Query.COLUMN_SUM)[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table WHERE col1 > threshold1 AND col2 < threshold2;
+     *
+     *  Returns the sum of all elements in the first column of the table,
+     *  subject to the passed-in predicates.
+     */
+    @Override
+    public long predicatedColumnSum(int threshold1, int threshold2) {
+        return select(Query.predicatedColumnSum(threshold1, threshold2))[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE col0 > threshold;
+     *
+     *  Returns the sum of all elements in the rows which pass the predicate.
+     */
+    @Override
+    public long predicatedAllColumnsSum(int threshold) {
+        return select(Query.predicatedAllColumnsSum(numCols, threshold))[0];
+    }
+
+    /**
+     * Implements the query
+     *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+     *
+     *   Returns the number of rows updated.
+     */
+    @Override
+    public int predicatedUpdate(int threshold) {
+        return update(Query.predicatedUpdate(threshold));
+    }
+}
@@ -0,0 +1,90 @@
+package memstore.table;
+
+import java.util.Arrays;
+
+/**
+ * Deferred runs of
+ *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+ * on a column-major table, applied one block of rows at a time when the
+ * block is first read.
+ *
+ * While updates are pending, col0, col1 and col2 must not change, so the
+ * owner applies a block before writing to any of them in it. Under that
+ * rule, a sequence of pending updates leaves every row as the update with
+ * the largest threshold alone would: a row with col0 below any of the
+ * thresholds ends up with col1 + col2. So each block only keeps the largest
+ * threshold pending for it.
+ */
+final class PendingUpdates {
+    private static final int NONE = Integer.MIN_VALUE;
+
+    final int blockRows;
+    private final IntStorage columns;
+    private final int numRows;
+    /**
+     * Largest threshold pending for each block, or NONE.
+     */
+    private final int[] thresholds;
+    private boolean anyPending;
+    private final ColumnKernels.Scratch scratch = new ColumnKernels.Scratch();
+
+    /**
+     * @param columns   the table's column-major storage.
+     * @param numRows   number of rows of the table.
+     * @param blockRows number of rows per block.
+     */
+    PendingUpdates(IntStorage columns, int numRows, int blockRows) {
+        this.columns = columns;
+        this.numRows = numRows;
+        this.blockRows = blockRows;
+        this.thresholds = new int[(numRows + blockRows - 1) / blockRows];
+        Arrays.fill(thresholds, NONE);
+    }
+
+    /**
+     * Defers an update with the given threshold over every block.
+     */
+    void add(int threshold) {
+        if (threshold == NONE) {
+            return;
+        }
+        for (int blockId = 0; blockId < thresholds.length; blockId++) {
+            thresholds[blockId] = Math.max(thresholds[blockId], threshold);
+        }
+        anyPending = true;
+    }
+
+    /**
+     * Applies the updates pending for the block holding row `rowId`.
+     */
+    void applyRow(int rowId) {
+        if (anyPending) {
+            apply(rowId / blockRows);
+        }
+    }
+
+    private void apply(int blockId) {
+        int threshold = thresholds[blockId];
+        if (threshold == NONE) {
+            return;
+        }
+        thresholds[blockId] = NONE;
+        int from = blockId * blockRows;
+        int to = Math.min(numRows, from + blockRows);
+        ColumnKernels.updateWhereLt(columns, 0, threshold, numRows, 2 * numRows, 3 * numRows,
+                from, to, scratch);
+    }
+
+    /**
+     * Applies every pending update.
+     */
+    void applyAll() {
+        if (!anyPending) {
+            return;
+        }
+        for (int blockId = 0; blockId < thresholds.length; blockId++) {
+            apply(blockId);
+        }
+        anyPending = false;
+    }
+}
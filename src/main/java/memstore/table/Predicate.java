@@ -0,0 +1,71 @@
+package memstore.table;
+
+/**
+ * A range predicate lo <= col <= hi on a single column; see {@link Query}.
+ * The predicates of a query are ANDed together.
+ */
+public final class Predicate {
+    final int colId;
+    final long lo;
+    final long hi;
+
+    private Predicate(int colId, long lo, long hi) {
+        if (colId < 0) {
+            throw new IllegalArgumentException("Negative column " + colId);
+        }
+        this.colId = colId;
+        this.lo = lo;
+        this.hi = hi;
+    }
+
+    /**
+     * col > threshold
+     */
+    public static Predicate gt(int colId, int threshold) {
+        return new Predicate(colId, (long) threshold + 1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * col >= threshold
+     */
+    public static Predicate ge(int colId, int threshold) {
+        return new Predicate(colId, threshold, Integer.MAX_VALUE);
+    }
+
+    /**
+     * col < threshold
+     */
+    public static Predicate lt(int colId, int threshold) {
+        return new Predicate(colId, Integer.MIN_VALUE, (long) threshold - 1);
+    }
+
+    /**
+     * col <= threshold
+     */
+    public static Predicate le(int colId, int threshold) {
+        return new Predicate(colId, Integer.MIN_VALUE, threshold);
+    }
+
+    /**
+     * col = value
+     */
+    public static Predicate eq(int colId, int value) {
+        return new Predicate(colId, value, value);
+    }
+
+    /**
+     * lo <= col <= hi
+     */
+    public static Predicate between(int colId, int lo, int hi) {
+        return new Predicate(colId, lo, hi);
+    }
+
+    public int getColumn() {
+        return colId;
+    }
+
+    @Override
+    public String toString() {
+        return lo + " <= col" + colId + " <= " + hi;
+    }
+}
@@ -0,0 +1,146 @@
+package memstore.table;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A query over a table: either
+ *   SELECT agg1, agg2, ... FROM table WHERE p1 AND p2 AND ...;
+ * or
+ *   UPDATE(col = expr) WHERE p1 AND p2 AND ...;
+ * where every predicate is a range on one column.
+ *
+ * Queries are immutable. A query is compiled into a {@link QueryPlan} the
+ * first time it runs, and the plan keeps the scan kernel for each storage
+ * layout it has run on, so a query that is run repeatedly is only compiled
+ * once. The benchmark queries, which are built anew for every threshold,
+ * are bound from a template query of the same shape instead, so that only
+ * their predicate ranges are computed per call.
+ */
+public final class Query {
+    final Aggregation[] aggregations;
+    final int updateColumn;
+    final Expression expression;
+    final Predicate[] predicates;
+    private volatile QueryPlan plan;
+
+    private Query(Aggregation[] aggregations, int updateColumn, Expression expression,
+                  Predicate[] predicates) {
+        this.aggregations = aggregations;
+        this.updateColumn = updateColumn;
+        this.expression = expression;
+        this.predicates = predicates;
+    }
+
+    /**
+     * SELECT aggregations FROM table;
+     */
+    public static Query select(Aggregation... aggregations) {
+        if (aggregations.length == 0) {
+            throw new IllegalArgumentException("SELECT needs at least one aggregation");
+        }
+        return new Query(aggregations.clone(), -1, null, new Predicate[0]);
+    }
+
+    /**
+     * UPDATE(col = expression);
+     */
+    public static Query update(int colId, Expression expression) {
+        if (colId < 0) {
+            throw new IllegalArgumentException("Negative column " + colId);
+        }
+        return new Query(null, colId, expression, new Predicate[0]);
+    }
+
+    /**
+     * Returns this query with `predicates` ANDed to its WHERE clause.
+     */
+    public Query where(Predicate... predicates) {
+        Predicate[] all = Arrays.copyOf(this.predicates, this.predicates.length + predicates.length);
+        System.arraycopy(predicates, 0, all, this.predicates.length, predicates.length);
+        return new Query(aggregations, updateColumn, expression, all);
+    }
+
+    public boolean isUpdate() {
+        return aggregations == null;
+    }
+
+    /**
+     * Returns this query with its WHERE clause replaced by `predicates`. If
+     * they only filter on columns this query filters on, the new query's plan
+     * is bound from this query's plan rather than compiled again.
+     */
+    Query withPredicates(Predicate... predicates) {
+        Query query = new Query(aggregations, updateColumn, expression, predicates.clone());
+        query.plan = plan().withPredicates(query.predicates);
+        return query;
+    }
+
+    QueryPlan plan() {
+        QueryPlan plan = this.plan;
+        if (plan == null) {
+            plan = new QueryPlan(this);
+            this.plan = plan;
+        }
+        return plan;
+    }
+
+    /**
+     * SELECT SUM(col0) FROM table;
+     */
+    static final Query COLUMN_SUM = select(Aggregation.sum(0));
+
+    private static final Query PREDICATED_COLUMN_SUM = select(Aggregation.sum(0))
+            .where(Predicate.gt(1, 0), Predicate.lt(2, 0));
+
+    /**
+     * Templates of predicatedAllColumnsSum(), by number of columns.
+     */
+    private static final Map<Integer, Query> PREDICATED_ALL_COLUMNS_SUM = new ConcurrentHashMap<>();
+
+    private static final Query PREDICATED_UPDATE = update(3, Expression.sum(1, 2))
+            .where(Predicate.lt(0, 0));
+
+    /**
+     * SELECT SUM(col0) FROM table WHERE col1 > threshold1 AND col2 < threshold2;
+     */
+    static Query predicatedColumnSum(int threshold1, int threshold2) {
+        return PREDICATED_COLUMN_SUM.withPredicates(Predicate.gt(1, threshold1), Predicate.lt(2, threshold2));
+    }
+
+    /**
+     * SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE col0 > threshold;
+     */
+    static Query predicatedAllColumnsSum(int numCols, int threshold) {
+        Query template = PREDICATED_ALL_COLUMNS_SUM.computeIfAbsent(numCols, n -> {
+            int[] colIds = new int[n];
+            for (int colId = 0; colId < n; colId++) {
+                colIds[colId] = colId;
+            }
+            return select(Aggregation.sum(colIds)).where(Predicate.gt(0, 0));
+        });
+        return template.withPredicates(Predicate.gt(0, threshold));
+    }
+
+    /**
+     * UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+     */
+    static Query predicatedUpdate(int threshold) {
+        return PREDICATED_UPDATE.withPredicates(Predicate.lt(0, threshold));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        if (isUpdate()) {
+            sb.append("UPDATE(col").append(updateColumn).append(" = ").append(expression).append(")");
+        } else {
+            sb.append("SELECT ").append(Arrays.toString(aggregations));
+        }
+        for (int i = 0; i < predicates.length; i++) {
+            sb.append(i == 0 ? " WHERE " : " AND ").append(predicates[i]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,613 @@
+package memstore.table;
+
+import java.util.Arrays;
+
+/**
+ * A scan kernel compiled from a {@link QueryPlan} for one storage layout.
+ *
+ * Kernels read a table's IntStorage directly, with field (rowId, colId) at
+ * index rowId * rowStride + colId * colStride, and work on a row range
+ * [from, to) so that scans can be split into morsels. Each call adds its
+ * result into the accumulators it is passed; see QueryPlan.
+ *
+ * The batched kernel can also read and write through {@link Columns}, for
+ * layouts where a run of rows of one column is not a single strided range.
+ */
+abstract class QueryKernel {
+    enum Kind {
+        /**
+         * Column-major data, scanned a batch of rows at a time with the
+         * vectorizable loops of {@link BatchedColumns}.
+         */
+        BATCHED_COLUMNS,
+        /**
+         * Row-major data (colStride 1), read in place one row at a time.
+         */
+        ROWS,
+        /**
+         * Any layout, read one field at a time.
+         */
+        FIELDS
+    }
+
+    /**
+     * Runs of column values, for the batched kernel.
+     */
+    interface Columns {
+        /**
+         * Copies the values of column `colId` in rows [rowId, rowId + n) to
+         * dst[0, n).
+         */
+        void get(int colId, int rowId, int[] dst, int n);
+
+        /**
+         * Writes src[0, n) to column `colId` in rows [rowId, rowId + n).
+         */
+        void put(int colId, int rowId, int[] src, int n);
+    }
+
+    /**
+     * Column-major columns: column colId starts at index colId * colStride.
+     */
+    private static final class StridedColumns implements Columns {
+        private final IntStorage data;
+        private final int colStride;
+
+        StridedColumns(IntStorage data, int colStride) {
+            this.data = data;
+            this.colStride = colStride;
+        }
+
+        @Override
+        public void get(int colId, int rowId, int[] dst, int n) {
+            data.get(colId * colStride + rowId, dst, 0, n);
+        }
+
+        @Override
+        public void put(int colId, int rowId, int[] src, int n) {
+            data.put(colId * colStride + rowId, src, 0, n);
+        }
+    }
+
+    final QueryPlan plan;
+
+    QueryKernel(QueryPlan plan) {
+        this.plan = plan;
+    }
+
+    static QueryKernel compile(QueryPlan plan, Kind kind) {
+        switch (kind) {
+            case BATCHED_COLUMNS:
+                return new BatchedColumns(plan);
+            case ROWS:
+                return new Rows(plan);
+            default:
+                return new Fields(plan);
+        }
+    }
+
+    abstract void select(IntStorage data, int rowStride, int colStride, int from, int to, long[] acc);
+
+    /**
+     * Runs the UPDATE over rows [from, to). Kernels may skip adding the
+     * total change to the updated column to acc[1] unless `trackDelta` is set.
+     */
+    void update(IntStorage data, int rowStride, int colStride, int from, int to,
+                long[] acc, boolean trackDelta) {
+        update(data, rowStride, colStride, from, to, acc, trackDelta, null);
+    }
+
+    /**
+     * Runs the UPDATE as above, and also adds the change of every updated
+     * row to `keyed`, by the row's key, if it is not null.
+     */
+    abstract void update(IntStorage data, int rowStride, int colStride, int from, int to,
+                         long[] acc, boolean trackDelta, KeyedDeltas.Part keyed);
+
+    static final class BatchedColumns extends QueryKernel {
+        private static final int BATCH_SIZE = ColumnKernels.BATCH_SIZE;
+
+        BatchedColumns(QueryPlan plan) {
+            super(plan);
+        }
+
+        @Override
+        void select(IntStorage data, int rowStride, int colStride, int from, int to, long[] acc) {
+            select(new StridedColumns(data, colStride), from, to, acc);
+        }
+
+        @Override
+        void update(IntStorage data, int rowStride, int colStride, int from, int to,
+                    long[] acc, boolean trackDelta, KeyedDeltas.Part keyed) {
+            update(new StridedColumns(data, colStride), from, to, acc, trackDelta, keyed);
+        }
+
+        void select(Columns data, int from, int to, long[] acc) {
+            int[][] batch = new int[plan.columns.length][BATCH_SIZE];
+            boolean[] mask = new boolean[BATCH_SIZE];
+            for (int base = from; base < to; base += BATCH_SIZE) {
+                int n = Math.min(BATCH_SIZE, to - base);
+                int matches = filter(data, base, n, batch, mask);
+                if (matches == 0) {
+                    continue;
+                }
+                load(data, base, n, batch);
+                for (int a = 0; a < acc.length; a++) {
+                    Aggregation aggregation = plan.aggregations[a];
+                    if (aggregation.function == Aggregation.Function.COUNT) {
+                        acc[a] += matches;
+                    }
+                    for (int slot : plan.aggregationSlots[a]) {
+                        long value = aggregate(aggregation.function, batch[slot], mask, n, matches == n);
+                        acc[a] = aggregation.combine(acc[a], value);
+                    }
+                }
+            }
+        }
+
+        void update(Columns data, int from, int to, long[] acc, boolean trackDelta) {
+            update(data, from, to, acc, trackDelta, null);
+        }
+
+        void update(Columns data, int from, int to, long[] acc, boolean trackDelta, KeyedDeltas.Part keyed) {
+            int[][] batch = new int[plan.columns.length][BATCH_SIZE];
+            int[] values = new int[BATCH_SIZE];
+            boolean[] mask = new boolean[BATCH_SIZE];
+            int keySlot = -1;
+            int[] keys = null;
+            if (keyed != null) {
+                for (int slot = 0; slot < plan.columns.length; slot++) {
+                    if (plan.columns[slot] == keyed.keyCol) {
+                        keySlot = slot;
+                    }
+                }
+                keys = keySlot >= 0 ? batch[keySlot] : new int[BATCH_SIZE];
+            }
+            for (int base = from; base < to; base += BATCH_SIZE) {
+                int n = Math.min(BATCH_SIZE, to - base);
+                int matches = filter(data, base, n, batch, mask);
+                if (matches == 0) {
+                    continue;
+                }
+                load(data, base, n, batch);
+                for (int i = 0; i < n; i++) {
+                    values[i] = plan.exprConstant;
+                }
+                for (int slot : plan.exprSlots) {
+                    int[] column = batch[slot];
+                    for (int i = 0; i < n; i++) {
+                        values[i] += column[i];
+                    }
+                }
+                int[] dst = batch[plan.dstSlot];
+                boolean all = matches == n;
+                if (trackDelta) {
+                    long delta = 0;
+                    for (int i = 0; i < n; i++) {
+                        delta += all | mask[i] ? (long) values[i] - dst[i] : 0;
+                    }
+                    acc[1] += delta;
+                }
+                if (keyed != null) {
+                    if (keySlot < 0) {
+                        data.get(keyed.keyCol, base, keys, n);
+                    }
+                    for (int i = 0; i < n; i++) {
+                        if (all | mask[i]) {
+                            keyed.add(keys[i], (long) values[i] - dst[i]);
+                        }
+                    }
+                }
+                if (all) {
+                    System.arraycopy(values, 0, dst, 0, n);
+                } else {
+                    for (int i = 0; i < n; i++) {
+                        dst[i] = mask[i] ? values[i] : dst[i];
+                    }
+                }
+                data.put(plan.dstCol, base, dst, n);
+                acc[0] += matches;
+            }
+        }
+
+        /**
+         * Loads the predicate columns of rows [base, base + n) and evaluates
+         * the predicates into `mask`. Returns the number of matching rows.
+         */
+        private int filter(Columns data, int base, int n, int[][] batch, boolean[] mask) {
+            if (plan.numPredicates == 0) {
+                return n;
+            }
+            for (int p = 0; p < plan.numPredicates; p++) {
+                int[] column = batch[p];
+                int lo = plan.lo[p];
+                int hi = plan.hi[p];
+                data.get(plan.columns[p], base, column, n);
+                if (p == 0) {
+                    for (int i = 0; i < n; i++) {
+                        mask[i] = column[i] >= lo & column[i] <= hi;
+                    }
+                } else {
+                    for (int i = 0; i < n; i++) {
+                        mask[i] &= column[i] >= lo & column[i] <= hi;
+                    }
+                }
+            }
+            int matches = 0;
+            for (int i = 0; i < n; i++) {
+                matches += mask[i] ? 1 : 0;
+            }
+            return matches;
+        }
+
+        /**
+         * Loads the remaining, non-predicate columns of rows [base, base + n).
+         */
+        private void load(Columns data, int base, int n, int[][] batch) {
+            for (int slot = plan.numPredicates; slot < plan.columns.length; slot++) {
+                data.get(plan.columns[slot], base, batch[slot], n);
+            }
+        }
+
+        /**
+         * Aggregates the values of `column` whose mask bit is set, or all of
+         * them if `all` is set. Only called for batches with at least one match.
+         */
+        private static long aggregate(Aggregation.Function function, int[] column, boolean[] mask,
+                                      int n, boolean all) {
+            switch (function) {
+                case SUM: {
+                    long sum = 0;
+                    if (all) {
+                        for (int i = 0; i < n; i++) {
+                            sum += column[i];
+                        }
+                    } else {
+                        for (int i = 0; i < n; i++) {
+                            sum += mask[i] ? column[i] : 0;
+                        }
+                    }
+                    return sum;
+                }
+                case MIN: {
+                    int min = Integer.MAX_VALUE;
+                    for (int i = 0; i < n; i++) {
+                        min = all | mask[i] ? Math.min(min, column[i]) : min;
+                    }
+                    return min;
+                }
+                case MAX: {
+                    int max = Integer.MIN_VALUE;
+                    for (int i = 0; i < n; i++) {
+                        max = all | mask[i] ? Math.max(max, column[i]) : max;
+                    }
+                    return max;
+                }
+                default:
+                    throw new IllegalArgumentException("COUNT has no columns");
+            }
+        }
+    }
+
+    /**
+     * Row-major kernel: reads only the fields the plan touches, straight
+     * from storage at rowId * rowStride + colId, one row after the other, so
+     * that a scan streams through the rows without copying them. Plans with
+     * a single SUM run in loops specialized for up to two predicates, with a
+     * run of adjacent summed columns read in order, and UPDATEs in one for a
+     * single predicate.
+     *
+     * If every range is open on one side, as for > and <, each predicate is
+     * tested with one comparison: value >= lo, or value <= hi written as
+     * ~value >= ~hi, since ~ reverses the order of ints. So a predicate is
+     * (value ^ predFlip) >= predBound, with predFlip 0 or -1.
+     */
+    private static final class Rows extends QueryKernel {
+        private final int[] predCols;
+        private final int[] predLo;
+        private final int[] predHi;
+        private final boolean oneSided;
+        private final int[] predFlip;
+        private final int[] predBound;
+        /**
+         * Columns summed by the plan's only aggregation, or null if the plan
+         * is not a single SUM. If they are adjacent, sumFirst is the first.
+         */
+        private final int[] sumCols;
+        private final int sumFirst;
+        private final int[] exprCols;
+
+        Rows(QueryPlan plan) {
+            super(plan);
+            this.predCols = Arrays.copyOf(plan.columns, plan.numPredicates);
+            this.predLo = plan.lo;
+            this.predHi = plan.hi;
+            this.predFlip = new int[predCols.length];
+            this.predBound = new int[predCols.length];
+            boolean oneSided = true;
+            for (int p = 0; p < predCols.length; p++) {
+                if (predHi[p] == Integer.MAX_VALUE) {
+                    predBound[p] = predLo[p];
+                } else if (predLo[p] == Integer.MIN_VALUE) {
+                    predFlip[p] = -1;
+                    predBound[p] = ~predHi[p];
+                } else {
+                    oneSided = false;
+                }
+            }
+            this.oneSided = oneSided;
+            if (!plan.update && plan.aggregations.length == 1
+                    && plan.aggregations[0].function == Aggregation.Function.SUM) {
+                this.sumCols = columnsOf(plan.aggregationSlots[0]);
+                boolean adjacent = true;
+                for (int i = 1; i < sumCols.length; i++) {
+                    adjacent &= sumCols[i] == sumCols[0] + i;
+                }
+                this.sumFirst = adjacent && sumCols.length > 0 ? sumCols[0] : -1;
+            } else {
+                this.sumCols = null;
+                this.sumFirst = -1;
+            }
+            this.exprCols = plan.update ? columnsOf(plan.exprSlots) : null;
+        }
+
+        private int[] columnsOf(int[] slots) {
+            int[] colIds = new int[slots.length];
+            for (int i = 0; i < slots.length; i++) {
+                colIds[i] = plan.columns[slots[i]];
+            }
+            return colIds;
+        }
+
+        private static boolean inRange(int value, int lo, int hi) {
+            return value >= lo && value <= hi;
+        }
+
+        private boolean matches(IntStorage data, int row) {
+            if (oneSided) {
+                for (int p = 0; p < predCols.length; p++) {
+                    if ((data.get(row + predCols[p]) ^ predFlip[p]) < predBound[p]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            for (int p = 0; p < predCols.length; p++) {
+                if (!inRange(data.get(row + predCols[p]), predLo[p], predHi[p])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void select(IntStorage data, int rowStride, int colStride, int from, int to, long[] acc) {
+            if (sumCols != null) {
+                acc[0] += sum(data, rowStride, from * rowStride, to * rowStride);
+                return;
+            }
+            for (int row = from * rowStride; row < to * rowStride; row += rowStride) {
+                if (!matches(data, row)) {
+                    continue;
+                }
+                for (int a = 0; a < acc.length; a++) {
+                    Aggregation aggregation = plan.aggregations[a];
+                    if (aggregation.function == Aggregation.Function.COUNT) {
+                        acc[a]++;
+                    }
+                    for (int slot : plan.aggregationSlots[a]) {
+                        acc[a] = aggregation.combine(acc[a], data.get(row + plan.columns[slot]));
+                    }
+                }
+            }
+        }
+
+        /**
+         * Sums the summed columns of the matching rows starting at field
+         * offsets [start, end). Each predicate count has a loop of its own,
+         * so that the JIT profiles them separately.
+         */
+        private long sum(IntStorage data, int rowStride, int start, int end) {
+            switch (predCols.length) {
+                case 0:
+                    return sumAll(data, rowStride, start, end);
+                case 1:
+                    return sumWhere(data, rowStride, start, end);
+                case 2:
+                    return sumWhere2(data, rowStride, start, end);
+                default:
+                    return sumMatching(data, rowStride, start, end);
+            }
+        }
+
+        private long sumAll(IntStorage data, int rowStride, int start, int end) {
+            long sum = 0;
+            if (sumCols.length == 1) {
+                for (int i = start + sumCols[0]; i < end; i += rowStride) {
+                    sum += data.get(i);
+                }
+                return sum;
+            }
+            for (int row = start; row < end; row += rowStride) {
+                sum += sumRow(data, row);
+            }
+            return sum;
+        }
+
+        private long sumWhere(IntStorage data, int rowStride, int start, int end) {
+            int col0 = predCols[0], lo0 = predLo[0], hi0 = predHi[0];
+            long sum = 0;
+            if (oneSided) {
+                int flip0 = predFlip[0], bound0 = predBound[0];
+                for (int row = start; row < end; row += rowStride) {
+                    if ((data.get(row + col0) ^ flip0) >= bound0) {
+                        sum += sumRow(data, row);
+                    }
+                }
+                return sum;
+            }
+            for (int row = start; row < end; row += rowStride) {
+                if (inRange(data.get(row + col0), lo0, hi0)) {
+                    sum += sumRow(data, row);
+                }
+            }
+            return sum;
+        }
+
+        private long sumWhere2(IntStorage data, int rowStride, int start, int end) {
+            int col0 = predCols[0], lo0 = predLo[0], hi0 = predHi[0];
+            int col1 = predCols[1], lo1 = predLo[1], hi1 = predHi[1];
+            long sum = 0;
+            if (oneSided) {
+                int flip0 = predFlip[0], bound0 = predBound[0];
+                int flip1 = predFlip[1], bound1 = predBound[1];
+                for (int row = start; row < end; row += rowStride) {
+                    if ((data.get(row + col0) ^ flip0) >= bound0
+                            && (data.get(row + col1) ^ flip1) >= bound1) {
+                        sum += sumRow(data, row);
+                    }
+                }
+                return sum;
+            }
+            for (int row = start; row < end; row += rowStride) {
+                if (inRange(data.get(row + col0), lo0, hi0)
+                        && inRange(data.get(row + col1), lo1, hi1)) {
+                    sum += sumRow(data, row);
+                }
+            }
+            return sum;
+        }
+
+        private long sumMatching(IntStorage data, int rowStride, int start, int end) {
+            long sum = 0;
+            for (int row = start; row < end; row += rowStride) {
+                if (matches(data, row)) {
+                    sum += sumRow(data, row);
+                }
+            }
+            return sum;
+        }
+
+        private long sumRow(IntStorage data, int row) {
+            if (sumCols.length == 1) {
+                return data.get(row + sumCols[0]);
+            }
+            long sum = 0;
+            if (sumFirst >= 0) {
+                for (int i = row + sumFirst, end = i + sumCols.length; i < end; i++) {
+                    sum += data.get(i);
+                }
+            } else {
+                for (int col : sumCols) {
+                    sum += data.get(row + col);
+                }
+            }
+            return sum;
+        }
+
+        @Override
+        void update(IntStorage data, int rowStride, int colStride, int from, int to,
+                    long[] acc, boolean trackDelta, KeyedDeltas.Part keyed) {
+            int end = to * rowStride;
+            long count = 0;
+            long delta = 0;
+            if (oneSided && predCols.length == 1 && keyed == null) {
+                int col0 = predCols[0], flip0 = predFlip[0], bound0 = predBound[0];
+                for (int row = from * rowStride; row < end; row += rowStride) {
+                    if ((data.get(row + col0) ^ flip0) >= bound0) {
+                        delta += updateRow(data, row, trackDelta);
+                        count++;
+                    }
+                }
+                acc[0] += count;
+                acc[1] += delta;
+                return;
+            }
+            for (int row = from * rowStride; row < end; row += rowStride) {
+                if (matches(data, row)) {
+                    long change = updateRow(data, row, trackDelta || keyed != null);
+                    if (keyed != null) {
+                        keyed.add(data.get(row + keyed.keyCol), change);
+                    }
+                    delta += change;
+                    count++;
+                }
+            }
+            acc[0] += count;
+            acc[1] += delta;
+        }
+
+        /**
+         * Writes the expression to the updated column of the row at `row`, and
+         * returns the change if `trackDelta` is set.
+         */
+        private long updateRow(IntStorage data, int row, boolean trackDelta) {
+            int value = plan.exprConstant;
+            for (int col : exprCols) {
+                value += data.get(row + col);
+            }
+            int index = row + plan.dstCol;
+            long delta = trackDelta ? (long) value - data.get(index) : 0;
+            data.put(index, value);
+            return delta;
+        }
+    }
+
+    private static final class Fields extends QueryKernel {
+        Fields(QueryPlan plan) {
+            super(plan);
+        }
+
+        @Override
+        void select(IntStorage data, int rowStride, int colStride, int from, int to, long[] acc) {
+            for (int rowId = from; rowId < to; rowId++) {
+                int row = rowId * rowStride;
+                if (!matches(data, row, colStride)) {
+                    continue;
+                }
+                for (int a = 0; a < acc.length; a++) {
+                    Aggregation aggregation = plan.aggregations[a];
+                    if (aggregation.function == Aggregation.Function.COUNT) {
+                        acc[a]++;
+                    }
+                    for (int slot : plan.aggregationSlots[a]) {
+                        acc[a] = aggregation.combine(acc[a], data.get(row + plan.columns[slot] * colStride));
+                    }
+                }
+            }
+        }
+
+        @Override
+        void update(IntStorage data, int rowStride, int colStride, int from, int to,
+                    long[] acc, boolean trackDelta, KeyedDeltas.Part keyed) {
+            for (int rowId = from; rowId < to; rowId++) {
+                int row = rowId * rowStride;
+                if (!matches(data, row, colStride)) {
+                    continue;
+                }
+                int value = plan.exprConstant;
+                for (int slot : plan.exprSlots) {
+                    value += data.get(row + plan.columns[slot] * colStride);
+                }
+                int index = row + plan.dstCol * colStride;
+                int oldValue = data.get(index);
+                data.put(index, value);
+                if (keyed != null) {
+                    keyed.add(data.get(row + keyed.keyCol * colStride), (long) value - oldValue);
+                }
+                acc[0]++;
+                acc[1] += (long) value - oldValue;
+            }
+        }
+
+        private boolean matches(IntStorage data, int row, int colStride) {
+            for (int p = 0; p < plan.numPredicates; p++) {
+                int value = data.get(row + plan.columns[p] * colStride);
+                if (value < plan.lo[p] || value > plan.hi[p]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package memstore.table;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Query} normalized for execution.
+ *
+ * The predicates on each column are intersected into one int range, and
+ * the plan is marked empty if any range is. Every column the query touches
+ * gets a slot, predicate columns first, so that kernels can load each column
+ * once per batch and refer to it by slot.
+ *
+ * Results are kept in long[] accumulators: one per aggregation for a SELECT,
+ * and {rows updated, total change to the updated column} for an UPDATE.
+ */
+final class QueryPlan {
+    final boolean update;
+    final boolean empty;
+
+    /**
+     * Column of each slot; slots [0, numPredicates) hold the predicate columns.
+     */
+    final int[] columns;
+    final int numPredicates;
+    final int[] lo;
+    final int[] hi;
+
+    final Aggregation[] aggregations;
+    final int[][] aggregationSlots;
+
+    final int dstCol;
+    final int dstSlot;
+    final int[] exprSlots;
+    final int exprConstant;
+
+    private final QueryKernel[] kernels = new QueryKernel[QueryKernel.Kind.values().length];
+
+    QueryPlan(Query query) {
+        this.update = query.isUpdate();
+
+        int maxCol = update ? query.updateColumn : 0;
+        for (Predicate p : query.predicates) {
+            maxCol = Math.max(maxCol, p.colId);
+        }
+        int[][] touched = update
+                ? new int[][]{query.expression.colIds}
+                : new int[query.aggregations.length][];
+        for (int a = 0; !update && a < touched.length; a++) {
+            touched[a] = query.aggregations[a].colIds;
+        }
+        int numTouched = 1;
+        for (int[] colIds : touched) {
+            numTouched += colIds.length;
+            for (int colId : colIds) {
+                maxCol = Math.max(maxCol, colId);
+            }
+        }
+
+        long[] los = new long[maxCol + 1];
+        long[] his = new long[maxCol + 1];
+        boolean[] filtered = new boolean[maxCol + 1];
+        Arrays.fill(los, Integer.MIN_VALUE);
+        Arrays.fill(his, Integer.MAX_VALUE);
+        for (Predicate p : query.predicates) {
+            filtered[p.colId] = true;
+            los[p.colId] = Math.max(los[p.colId], p.lo);
+            his[p.colId] = Math.min(his[p.colId], p.hi);
+        }
+
+        // slotOf[colId] is the slot of column colId, or -1 if it has none yet.
+        int[] slotOf = new int[maxCol + 1];
+        Arrays.fill(slotOf, -1);
+        int[] slotColumns = new int[query.predicates.length + numTouched];
+        int numSlots = 0;
+        boolean empty = false;
+        for (int colId = 0; colId <= maxCol; colId++) {
+            if (filtered[colId]) {
+                empty |= los[colId] > his[colId];
+                slotOf[colId] = numSlots;
+                slotColumns[numSlots++] = colId;
+            }
+        }
+        this.empty = empty;
+        this.numPredicates = numSlots;
+        this.lo = new int[numPredicates];
+        this.hi = new int[numPredicates];
+        for (int i = 0; i < numPredicates; i++) {
+            lo[i] = (int) Math.max(Integer.MIN_VALUE, los[slotColumns[i]]);
+            hi[i] = (int) Math.min(Integer.MAX_VALUE, his[slotColumns[i]]);
+        }
+
+        int[][] touchedSlots = new int[touched.length][];
+        for (int a = 0; a < touched.length; a++) {
+            touchedSlots[a] = new int[touched[a].length];
+            for (int i = 0; i < touched[a].length; i++) {
+                int colId = touched[a][i];
+                if (slotOf[colId] < 0) {
+                    slotOf[colId] = numSlots;
+                    slotColumns[numSlots++] = colId;
+                }
+                touchedSlots[a][i] = slotOf[colId];
+            }
+        }
+
+        if (update) {
+            this.aggregations = null;
+            this.aggregationSlots = null;
+            this.exprConstant = query.expression.constant;
+            this.exprSlots = touchedSlots[0];
+            this.dstCol = query.updateColumn;
+            if (slotOf[dstCol] < 0) {
+                slotOf[dstCol] = numSlots;
+                slotColumns[numSlots++] = dstCol;
+            }
+            this.dstSlot = slotOf[dstCol];
+        } else {
+            this.aggregations = query.aggregations;
+            this.aggregationSlots = touchedSlots;
+            this.dstCol = -1;
+            this.dstSlot = -1;
+            this.exprSlots = null;
+            this.exprConstant = 0;
+        }
+        this.columns = Arrays.copyOf(slotColumns, numSlots);
+    }
+
+    /**
+     * Copies the slots of `shape`, with the predicate ranges `lo` and `hi`.
+     */
+    private QueryPlan(QueryPlan shape, int[] lo, int[] hi, boolean empty) {
+        this.update = shape.update;
+        this.empty = empty;
+        this.columns = shape.columns;
+        this.numPredicates = shape.numPredicates;
+        this.lo = lo;
+        this.hi = hi;
+        this.aggregations = shape.aggregations;
+        this.aggregationSlots = shape.aggregationSlots;
+        this.dstCol = shape.dstCol;
+        this.dstSlot = shape.dstSlot;
+        this.exprSlots = shape.exprSlots;
+        this.exprConstant = shape.exprConstant;
+    }
+
+    /**
+     * Returns the plan of this plan's query with its WHERE clause replaced by
+     * `predicates`, reusing this plan's slots, or null if a predicate is on a
+     * column this plan does not filter on. Only the ranges are computed, so
+     * this is linear in the number of predicates rather than in the number
+     * of columns the query touches.
+     */
+    QueryPlan withPredicates(Predicate[] predicates) {
+        long[] los = new long[numPredicates];
+        long[] his = new long[numPredicates];
+        Arrays.fill(los, Integer.MIN_VALUE);
+        Arrays.fill(his, Integer.MAX_VALUE);
+        for (Predicate p : predicates) {
+            int slot = 0;
+            while (slot < numPredicates && columns[slot] != p.colId) {
+                slot++;
+            }
+            if (slot == numPredicates) {
+                return null;
+            }
+            los[slot] = Math.max(los[slot], p.lo);
+            his[slot] = Math.min(his[slot], p.hi);
+        }
+        int[] lo = new int[numPredicates];
+        int[] hi = new int[numPredicates];
+        boolean empty = false;
+        for (int slot = 0; slot < numPredicates; slot++) {
+            empty |= los[slot] > his[slot];
+            lo[slot] = (int) Math.max(Integer.MIN_VALUE, los[slot]);
+            hi[slot] = (int) Math.min(Integer.MAX_VALUE, his[slot]);
+        }
+        return new QueryPlan(this, lo, hi, empty);
+    }
+
+    /**
+     * Returns the kernel of the given kind, compiling it on first use.
+     */
+    QueryKernel kernel(QueryKernel.Kind kind) {
+        QueryKernel kernel = kernels[kind.ordinal()];
+        if (kernel == null) {
+            kernel = QueryKernel.compile(this, kind);
+            kernels[kind.ordinal()] = kernel;
+        }
+        return kernel;
+    }
+
+    /**
+     * Checks that the plan is of the expected kind and only touches columns
+     * of a table with `numCols` columns.
+     */
+    void validate(boolean expectUpdate, int numCols) {
+        if (update != expectUpdate) {
+            throw new IllegalArgumentException(
+                    (update ? "Expected a SELECT" : "Expected an UPDATE") + " query");
+        }
+        for (int colId : columns) {
+            if (colId >= numCols) {
+                throw new IllegalArgumentException(
+                        "Column " + colId + " out of range for " + numCols + " columns");
+            }
+        }
+    }
+
+    /**
+     * Returns accumulators holding the result over no rows.
+     */
+    long[] newResult() {
+        if (update) {
+            return new long[2];
+        }
+        long[] result = new long[aggregations.length];
+        for (int a = 0; a < result.length; a++) {
+            result[a] = aggregations[a].identity();
+        }
+        return result;
+    }
+
+    /**
+     * Adds the partial result `part` into `result`. May be called by several
+     * morsels at once.
+     */
+    void merge(long[] result, long[] part) {
+        synchronized (result) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = update ? result[i] + part[i] : aggregations[i].combine(result[i], part[i]);
+            }
+        }
+    }
+
+    /**
+     * Whether any row of block `blockId` can pass all predicates.
+     */
+    boolean canMatch(ZoneMap zoneMap, int blockId) {
+        for (int p = 0; p < numPredicates; p++) {
+            if (zoneMap.max(columns[p], blockId) < lo[p] || zoneMap.min(columns[p], blockId) > hi[p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Widens the range of the updated column in block `blockId` by the range
+     * the expression can take there.
+     */
+    void widen(ZoneMap zoneMap, int blockId) {
+        long min = exprConstant;
+        long max = exprConstant;
+        for (int slot : exprSlots) {
+            min += zoneMap.min(columns[slot], blockId);
+            max += zoneMap.max(columns[slot], blockId);
+        }
+        if (min < Integer.MIN_VALUE || max > Integer.MAX_VALUE) {
+            // The sums may wrap around.
+            zoneMap.widen(dstCol, blockId, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        } else {
+            zoneMap.widen(dstCol, blockId, (int) min, (int) max);
+        }
+    }
+
+    /**
+     * Runs the SELECT against any table one field at a time, through
+     * getIntField().
+     */
+    long[] select(Table table, int numRows) {
+        long[] result = newResult();
+        if (empty) {
+            return result;
+        }
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            if (!matches(table, rowId)) {
+                continue;
+            }
+            for (int a = 0; a < aggregations.length; a++) {
+                Aggregation aggregation = aggregations[a];
+                if (aggregation.function == Aggregation.Function.COUNT) {
+                    result[a]++;
+                }
+                for (int slot : aggregationSlots[a]) {
+                    long value = table.getIntField(rowId, columns[slot]);
+                    result[a] = aggregation.combine(result[a], value);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the UPDATE against any table one field at a time, through
+     * getIntField() and putIntField(), so that the table can maintain
+     * whatever it keeps on top of its data.
+     */
+    long[] update(Table table, int numRows) {
+        long[] result = newResult();
+        if (empty) {
+            return result;
+        }
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            if (!matches(table, rowId)) {
+                continue;
+            }
+            int value = exprConstant;
+            for (int slot : exprSlots) {
+                value += table.getIntField(rowId, columns[slot]);
+            }
+            int oldValue = table.getIntField(rowId, dstCol);
+            table.putIntField(rowId, dstCol, value);
+            result[0]++;
+            result[1] += (long) value - oldValue;
+        }
+        return result;
+    }
+
+    private boolean matches(Table table, int rowId) {
+        for (int p = 0; p < numPredicates; p++) {
+            int value = table.getIntField(rowId, columns[p]);
+            if (value < lo[p] || value > hi[p]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,160 @@
+package memstore.table;
+
+import java.util.Arrays;
+
+/**
+ * Compressed set of row ids, split into chunks of 2^16 rows.
+ *
+ * A chunk is stored as a sorted array of the low 16 bits of its row ids while
+ * it holds at most ARRAY_MAX rows, and as a plain 2^16-bit bitmap once it
+ * holds more, so that both sparse and dense sets stay small.
+ */
+final class RowBitmap {
+    static final int ARRAY_MAX = 4096;
+    private static final int CHUNK_WORDS = 1 << 10;
+
+    private final char[][] arrays;
+    private final long[][] bitmaps;
+    private final int[] cards;
+
+    RowBitmap(int numRows) {
+        int numChunks = (numRows + 0xFFFF) >>> 16;
+        this.arrays = new char[numChunks][];
+        this.bitmaps = new long[numChunks][];
+        this.cards = new int[numChunks];
+    }
+
+    /**
+     * Builds a set from a plain bitmap over all rows.
+     */
+    static RowBitmap fromWords(long[] words, int numRows) {
+        RowBitmap set = new RowBitmap(numRows);
+        for (int chunk = 0; chunk < set.cards.length; chunk++) {
+            int base = chunk << 10;
+            int n = Math.min(CHUNK_WORDS, words.length - base);
+            int card = 0;
+            for (int i = 0; i < n; i++) {
+                card += Long.bitCount(words[base + i]);
+            }
+            set.cards[chunk] = card;
+            if (card > ARRAY_MAX) {
+                long[] bitmap = new long[CHUNK_WORDS];
+                System.arraycopy(words, base, bitmap, 0, n);
+                set.bitmaps[chunk] = bitmap;
+            } else if (card > 0) {
+                char[] array = new char[card];
+                int k = 0;
+                for (int i = 0; i < n; i++) {
+                    long bits = words[base + i];
+                    while (bits != 0) {
+                        array[k++] = (char) (64 * i + Long.numberOfTrailingZeros(bits));
+                        bits &= bits - 1;
+                    }
+                }
+                set.arrays[chunk] = array;
+            }
+        }
+        return set;
+    }
+
+    int cardinality() {
+        int card = 0;
+        for (int c : cards) {
+            card += c;
+        }
+        return card;
+    }
+
+    void add(int rowId) {
+        int chunk = rowId >>> 16;
+        char low = (char) rowId;
+        long[] bitmap = bitmaps[chunk];
+        if (bitmap != null) {
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) == 0) {
+                bitmap[low >>> 6] |= bit;
+                cards[chunk]++;
+            }
+            return;
+        }
+        char[] array = arrays[chunk];
+        int card = cards[chunk];
+        if (array == null) {
+            array = arrays[chunk] = new char[4];
+        }
+        int pos = Arrays.binarySearch(array, 0, card, low);
+        if (pos >= 0) {
+            return;
+        }
+        pos = -pos - 1;
+        if (card == ARRAY_MAX) {
+            toBitmap(chunk);
+            add(rowId);
+            return;
+        }
+        if (card == array.length) {
+            array = arrays[chunk] = Arrays.copyOf(array, Math.min(ARRAY_MAX, 2 * card));
+        }
+        System.arraycopy(array, pos, array, pos + 1, card - pos);
+        array[pos] = low;
+        cards[chunk]++;
+    }
+
+    void remove(int rowId) {
+        int chunk = rowId >>> 16;
+        char low = (char) rowId;
+        long[] bitmap = bitmaps[chunk];
+        if (bitmap != null) {
+            long bit = 1L << low;
+            if ((bitmap[low >>> 6] & bit) != 0) {
+                bitmap[low >>> 6] &= ~bit;
+                cards[chunk]--;
+            }
+            return;
+        }
+        char[] array = arrays[chunk];
+        int card = cards[chunk];
+        if (array == null) {
+            return;
+        }
+        int pos = Arrays.binarySearch(array, 0, card, low);
+        if (pos < 0) {
+            return;
+        }
+        System.arraycopy(array, pos + 1, array, pos, card - pos - 1);
+        cards[chunk]--;
+    }
+
+    private void toBitmap(int chunk) {
+        long[] bitmap = new long[CHUNK_WORDS];
+        char[] array = arrays[chunk];
+        for (int i = 0; i < cards[chunk]; i++) {
+            bitmap[array[i] >>> 6] |= 1L << array[i];
+        }
+        bitmaps[chunk] = bitmap;
+        arrays[chunk] = null;
+    }
+
+    /**
+     * Sets the bit of every row in the set in `words`, a plain bitmap over
+     * all rows.
+     */
+    void orInto(long[] words) {
+        for (int chunk = 0; chunk < cards.length; chunk++) {
+            int base = chunk << 10;
+            long[] bitmap = bitmaps[chunk];
+            if (bitmap != null) {
+                int n = Math.min(CHUNK_WORDS, words.length - base);
+                for (int i = 0; i < n; i++) {
+                    words[base + i] |= bitmap[i];
+                }
+            } else {
+                char[] array = arrays[chunk];
+                for (int i = 0; i < cards[chunk]; i++) {
+                    int rowId = (chunk << 16) | array[i];
+                    words[rowId >>> 6] |= 1L << rowId;
+                }
+            }
+        }
+    }
+}
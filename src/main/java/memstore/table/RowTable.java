@@ -1,11 +1,9 @@
 package memstore.table;
 
-import memstore.data.ByteFormat;
+import memstore.data.BufferedLoader;
 import memstore.data.DataLoader;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.util.List;
 
 /**
  * RowTable, which stores data in row-major format.
@@ -15,9 +13,24 @@ import java.util.List;
 public class RowTable implements Table {
     protected int numCols;
     protected int numRows;
-    protected ByteBuffer rows;
+    protected IntStorage rows;
+    protected StorageType storageType;
+    protected int parallelism = 1;
+    protected final MaintainedAggregates aggregates = new MaintainedAggregates(this);
+    protected MaintainedAggregates.ColumnSum col0Sum;
+    protected DominanceSum predicatedSum;
+    protected KeyedRowSum rowSums;
 
-    public RowTable() { }
+    public RowTable() {
+        this(StorageType.INT_ARRAY);
+    }
+
+    /**
+     * @param storageType storage to keep the rows in.
+     */
+    public RowTable(StorageType storageType) {
+        this.storageType = storageType;
+    }
 
     /**
      * Loads data into the table through passed-in data loader. Is not timed.
@@ -27,18 +40,39 @@ public class RowTable implements Table {
      */
     @Override
     public void load(DataLoader loader) throws IOException {
+        loader = BufferedLoader.sized(loader);
         this.numCols = loader.getNumCols();
-        List<ByteBuffer> rows = loader.getRows();
-        numRows = rows.size();
-        this.rows = ByteBuffer.allocate(ByteFormat.FIELD_LEN * numRows * numCols);
-
-        for (int rowId = 0; rowId < numRows; rowId++) {
-            ByteBuffer curRow = rows.get(rowId);
-            for (int colId = 0; colId < numCols; colId++) {
-                int offset = ByteFormat.FIELD_LEN * ((rowId * numCols) + colId);
-                this.rows.putInt(offset, curRow.getInt(ByteFormat.FIELD_LEN * colId));
-            }
-        }
+        numRows = loader.getNumRows();
+        this.rows = storageType.allocate(numRows * numCols);
+
+        // Batches only write their own rows, so they can be copied in parallel.
+        loader.scanConcurrently(batch -> this.rows.put(batch.getFirstRowId() * numCols, batch.fields(), 0,
+                batch.getNumRows() * numCols));
+        aggregates.recomputeAll(numRows);
+    }
+
+    /**
+     * Writes the table's data to a snapshot file at `path`, which
+     * loadSnapshot() can map back.
+     */
+    public void writeSnapshot(String path) throws IOException {
+        TableSnapshot.write(path, TableSnapshot.Layout.ROW_MAJOR, numRows, numCols, rows);
+    }
+
+    /**
+     * Loads the table from a snapshot written by writeSnapshot(), by
+     * memory-mapping the file as the table's storage instead of the storage
+     * type it was created with. Nothing is parsed or copied; pages are read
+     * in as queries first touch them. Writes to the table are not written
+     * back to the file.
+     */
+    public void loadSnapshot(String path) throws IOException {
+        TableSnapshot snapshot = TableSnapshot.map(path, TableSnapshot.Layout.ROW_MAJOR);
+        close();
+        this.numRows = snapshot.numRows;
+        this.numCols = snapshot.numCols;
+        this.rows = snapshot.data;
+        aggregates.recomputeAll(numRows);
     }
 
     /**
@@ -46,8 +80,7 @@ public class RowTable implements Table {
      */
     @Override
     public int getIntField(int rowId, int colId) {
-        // TODO: Implement this!
-        return 0;
+        return rows.get((rowId * numCols) + colId);
     }
 
     /**
@@ -55,7 +88,139 @@ public class RowTable implements Table {
      */
     @Override
     public void putIntField(int rowId, int colId, int field) {
-        // TODO: Implement this!
+        if (aggregates.dependsOn(colId)) {
+            aggregates.onPut(rowId, colId, getIntField(rowId, colId), field);
+        }
+        rows.put((rowId * numCols) + colId, field);
+    }
+
+    /**
+     * Frees the table's storage; see {@link StorageType#DIRECT}.
+     */
+    @Override
+    public void close() {
+        if (rows != null) {
+            rows.close();
+        }
+    }
+
+    /**
+     * Returns the registry of aggregates this table keeps up to date.
+     */
+    public MaintainedAggregates getAggregates() {
+        return aggregates;
+    }
+
+    /**
+     * Keeps a running SUM(col0) up to date on every write, so that
+     * columnSum() reads a counter instead of scanning.
+     */
+    public void setMaintainColumnSum(boolean maintain) {
+        if (maintain && col0Sum == null) {
+            col0Sum = aggregates.register(new MaintainedAggregates.ColumnSum(0));
+        } else if (!maintain && col0Sum != null) {
+            aggregates.unregister(col0Sum);
+            col0Sum = null;
+        }
+    }
+
+    /**
+     * Keeps SUM(col0) over every pair of col1 and col2 values in a
+     * {@link DominanceSum}, so that predicatedColumnSum() reads the tree
+     * instead of scanning while the domains of col1 and col2 are small
+     * enough for one.
+     */
+    public void setMaintainPredicatedColumnSum(boolean maintain) {
+        if (maintain && predicatedSum == null) {
+            predicatedSum = aggregates.register(new DominanceSum(0, 1, 2));
+        } else if (!maintain && predicatedSum != null) {
+            aggregates.unregister(predicatedSum);
+            predicatedSum = null;
+        }
+    }
+
+    /**
+     * Keeps the total of every row, bucketed by col0, in a
+     * {@link KeyedRowSum}, so that predicatedAllColumnsSum() reads the tree
+     * instead of scanning while the domain of col0 is small enough for one.
+     */
+    public void setMaintainPredicatedAllColumnsSum(boolean maintain) {
+        if (maintain && rowSums == null) {
+            rowSums = aggregates.register(new KeyedRowSum(0, () -> numCols));
+        } else if (!maintain && rowSums != null) {
+            aggregates.unregister(rowSums);
+            rowSums = null;
+        }
+    }
+
+    /**
+     * Sets the number of threads each query may use. Queries split the row
+     * range into morsels and run them on a pool shared by all tables; the
+     * default of 1 runs every query on the calling thread.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        long[] result = plan.newResult();
+        if (plan.empty) {
+            return result;
+        }
+        QueryKernel kernel = plan.kernel(QueryKernel.Kind.ROWS);
+        ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.select(rows, numCols, 1, from, to, part);
+            plan.merge(result, part);
+            return 0;
+        });
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated.
+     *
+     * Each row only reads and writes its own fields, so morsels never touch
+     * the same rows and can be updated independently. The total change to the
+     * updated column is passed on to the maintained aggregates, summed by key
+     * for those that ask for it.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        if (plan.empty) {
+            return 0;
+        }
+        QueryKernel kernel = plan.kernel(QueryKernel.Kind.ROWS);
+        boolean trackDelta = aggregates.dependsOn(plan.dstCol);
+        KeyedDeltas keyed = trackDelta ? aggregates.keyedDeltas(plan.dstCol) : null;
+        long[] result = plan.newResult();
+        ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long[] part = plan.newResult();
+            KeyedDeltas.Part keyedPart = keyed != null ? keyed.newPart() : null;
+            kernel.update(rows, numCols, 1, from, to, part, trackDelta, keyedPart);
+            plan.merge(result, part);
+            if (keyed != null) {
+                keyed.merge(keyedPart);
+            }
+            return 0;
+        });
+        if (trackDelta) {
+            aggregates.onBulkUpdate(plan.dstCol, result[1], keyed);
+        }
+        return (int) result[0];
     }
 
     /**
@@ -66,8 +231,10 @@ public class RowTable implements Table {
      */
     @Override
     public long columnSum() {
-        // TODO: Implement this!
-        return 0;
+        if (col0Sum != null) {
+            return col0Sum.get();
+        }
+        return select(Query.COLUMN_SUM)[0];
     }
 
     /**
@@ -79,8 +246,10 @@ public class RowTable implements Table {
      */
     @Override
     public long predicatedColumnSum(int threshold1, int threshold2) {
-        // TODO: Implement this!
-        return 0;
+        if (predicatedSum != null && predicatedSum.isAvailable()) {
+            return predicatedSum.get(threshold1, threshold2);
+        }
+        return select(Query.predicatedColumnSum(threshold1, threshold2))[0];
     }
 
     /**
@@ -91,8 +260,10 @@ public class RowTable implements Table {
      */
     @Override
     public long predicatedAllColumnsSum(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        if (rowSums != null && rowSums.isAvailable()) {
+            return rowSums.get(threshold);
+        }
+        return select(Query.predicatedAllColumnsSum(numCols, threshold))[0];
     }
 
     /**
@@ -103,7 +274,6 @@ public class RowTable implements Table {
      */
     @Override
     public int predicatedUpdate(int threshold) {
-        // TODO: Implement this!
-        return 0;
+        return update(Query.predicatedUpdate(threshold));
     }
 }
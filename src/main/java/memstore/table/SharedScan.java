@@ -0,0 +1,150 @@
+package memstore.table;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cooperative scans shared by the queries running on a table at the same
+ * time ("circular scans").
+ *
+ * Rows are split into blocks of `blockRows` rows, and one cursor goes round
+ * the blocks in order. A query attaches to the scan and, while it still
+ * needs blocks, repeatedly claims the block under the cursor and runs the
+ * kernel of every attached query that still needs blocks over it. Blocks
+ * are small enough to stay in cache, so each one is streamed from memory
+ * once for all of those queries rather than once per query. A query that
+ * arrives mid-scan starts at the cursor and rides it round until it has
+ * seen every block once, so it wraps around to the blocks it missed.
+ *
+ * Every attached query's thread helps to drive the scan, so queries run
+ * in parallel with each other rather than with morsels of themselves.
+ * Kernels of different queries may run on the same block at once, and of
+ * the same query on different blocks at once, so they must merge their
+ * partial results as morsel kernels do. If a query's kernel throws, on
+ * whichever thread, the query stops claiming blocks and its own scan()
+ * rethrows the failure once its blocks in flight are done; the other
+ * queries are not affected.
+ */
+final class SharedScan {
+    /**
+     * A query attached to the scan.
+     */
+    private static final class Rider {
+        final ParallelScan.RangeSum kernel;
+        /**
+         * Number of blocks not yet claimed for this query.
+         */
+        int unclaimed;
+        /**
+         * Number of blocks claimed for this query but not yet scanned.
+         */
+        int inFlight;
+        /**
+         * First exception or error thrown by the kernel, if any.
+         */
+        Throwable failure;
+
+        Rider(ParallelScan.RangeSum kernel, int numBlocks) {
+            this.kernel = kernel;
+            this.unclaimed = numBlocks;
+        }
+    }
+
+    final int blockRows;
+    final int numBlocks;
+    private final int numRows;
+
+    /**
+     * Attached queries with blocks left to claim. Guarded by this.
+     */
+    private final List<Rider> riders = new ArrayList<>();
+    /**
+     * Next block to claim. Guarded by this.
+     */
+    private int cursor;
+
+    SharedScan(int numRows, int blockRows) {
+        this.numRows = numRows;
+        this.blockRows = blockRows;
+        this.numBlocks = (numRows + blockRows - 1) / blockRows;
+    }
+
+    /**
+     * Runs `kernel` over every block once, sharing the scan with the other
+     * queries running meanwhile, and returns when all of them are done.
+     */
+    void scan(ParallelScan.RangeSum kernel) {
+        if (numBlocks == 0) {
+            return;
+        }
+        Rider self = new Rider(kernel, numBlocks);
+        synchronized (this) {
+            riders.add(self);
+        }
+        List<Rider> batch = new ArrayList<>();
+        while (true) {
+            int blockId;
+            synchronized (this) {
+                if (self.unclaimed == 0) {
+                    // Wait for the blocks other threads claimed for us.
+                    while (self.inFlight > 0) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new RuntimeException(e);
+                        }
+                    }
+                    if (self.failure instanceof Error) {
+                        throw (Error) self.failure;
+                    } else if (self.failure != null) {
+                        throw (RuntimeException) self.failure;
+                    }
+                    return;
+                }
+                blockId = cursor;
+                cursor = cursor + 1 == numBlocks ? 0 : cursor + 1;
+                batch.clear();
+                for (int i = riders.size() - 1; i >= 0; i--) {
+                    Rider rider = riders.get(i);
+                    rider.inFlight++;
+                    if (--rider.unclaimed == 0) {
+                        riders.remove(i);
+                    }
+                    batch.add(rider);
+                }
+            }
+            int from = blockId * blockRows;
+            int to = Math.min(numRows, from + blockRows);
+            for (Rider rider : batch) {
+                try {
+                    rider.kernel.apply(from, to);
+                } catch (RuntimeException | Error e) {
+                    failed(rider, e);
+                }
+            }
+            synchronized (this) {
+                for (Rider rider : batch) {
+                    rider.inFlight--;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Records that the kernel of `rider` threw `e`, and stops claiming
+     * blocks for it.
+     */
+    private synchronized void failed(Rider rider, Throwable e) {
+        if (rider.failure == null) {
+            rider.failure = e;
+        } else if (rider.failure != e) {
+            rider.failure.addSuppressed(e);
+        }
+        if (rider.unclaimed > 0) {
+            rider.unclaimed = 0;
+            riders.remove(rider);
+        }
+    }
+}
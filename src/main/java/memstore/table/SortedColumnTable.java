@@ -0,0 +1,364 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * SortedColumnTable, which stores data in column-major format like
+ * {@link ColumnTable}, with the rows clustered by the value of one column,
+ * the sort column. Rows keep their logical ids through a permutation:
+ * physicalOf[rowId] is the position of row rowId in the columns, and
+ * logicalOf[pos] the id of the row at position pos.
+ *
+ * A predicate on the sort column selects a contiguous run of positions,
+ * found by binary search, so queries filtering on it only scan the rows
+ * that can match. Other queries scan everything, as on a ColumnTable.
+ *
+ * Writes to the sort column move the row to its new position, shifting the
+ * rows in between by one, so they cost time linear in the distance moved.
+ */
+public class SortedColumnTable implements Table {
+    int numCols;
+    int numRows;
+    IntStorage columns;
+    StorageType storageType;
+    int parallelism = 1;
+
+    final int sortColumn;
+    int[] physicalOf;
+    int[] logicalOf;
+
+    private int[] scratch = new int[ColumnKernels.BATCH_SIZE];
+
+    public SortedColumnTable() {
+        this(StorageType.INT_ARRAY, 0);
+    }
+
+    public SortedColumnTable(int sortColumn) {
+        this(StorageType.INT_ARRAY, sortColumn);
+    }
+
+    /**
+     * @param storageType storage to keep the columns in.
+     * @param sortColumn  column to keep the rows sorted by.
+     */
+    public SortedColumnTable(StorageType storageType, int sortColumn) {
+        if (sortColumn < 0) {
+            throw new IllegalArgumentException("Bad sort column: " + sortColumn);
+        }
+        this.storageType = storageType;
+        this.sortColumn = sortColumn;
+    }
+
+    /**
+     * Loads data into the table through passed-in data loader. Is not timed.
+     *
+     * The rows are first loaded in their original order, then sorted.
+     *
+     * @param loader Loader to load data from.
+     * @throws IOException
+     */
+    @Override
+    public void load(DataLoader loader) throws IOException {
+        ColumnTable unsorted = new ColumnTable();
+        unsorted.load(loader);
+        if (sortColumn >= unsorted.numCols) {
+            throw new IllegalArgumentException(
+                    "Bad sort column " + sortColumn + " for " + unsorted.numCols + " columns");
+        }
+        this.numCols = unsorted.numCols;
+        this.numRows = unsorted.numRows;
+        close();
+        this.columns = storageType.allocate(numRows * numCols);
+        cluster(unsorted.columns);
+        unsorted.close();
+    }
+
+    /**
+     * Sorts the rows of `source`, a column-major table in logical row order,
+     * by the sort column into the table's columns, and builds the
+     * permutation. Ties keep their logical order.
+     */
+    private void cluster(IntStorage source) {
+        long[] keys = new long[numRows];
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            keys[rowId] = (long) source.get(sortColumn * numRows + rowId) << 32 | rowId;
+        }
+        Arrays.parallelSort(keys);
+        physicalOf = new int[numRows];
+        logicalOf = new int[numRows];
+        for (int pos = 0; pos < numRows; pos++) {
+            int rowId = (int) keys[pos];
+            logicalOf[pos] = rowId;
+            physicalOf[rowId] = pos;
+        }
+        for (int colId = 0; colId < numCols; colId++) {
+            for (int from = 0; from < numRows; from += scratch.length) {
+                int n = Math.min(scratch.length, numRows - from);
+                for (int i = 0; i < n; i++) {
+                    scratch[i] = source.get(colId * numRows + logicalOf[from + i]);
+                }
+                columns.put(colId * numRows + from, scratch, 0, n);
+            }
+        }
+    }
+
+    /**
+     * Returns the column the rows are sorted by.
+     */
+    public int getSortColumn() {
+        return sortColumn;
+    }
+
+    private int key(int pos) {
+        return columns.get(sortColumn * numRows + pos);
+    }
+
+    /**
+     * Returns the first position in [from, to) whose sort key is at least
+     * `value`, or `to` if there is none.
+     */
+    private int lowerBound(long value, int from, int to) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (key(mid) < value) {
+                from = mid + 1;
+            } else {
+                to = mid;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public int getIntField(int rowId, int colId) {
+        return columns.get((colId * numRows) + physicalOf[rowId]);
+    }
+
+    /**
+     * Inserts the passed-in int field at row `rowId` and column `colId`.
+     *
+     * A new sort key moves the row to the nearest position that keeps the
+     * rows sorted; see moveRow().
+     */
+    @Override
+    public void putIntField(int rowId, int colId, int field) {
+        int pos = physicalOf[rowId];
+        if (colId != sortColumn || field == key(pos)) {
+            columns.put((colId * numRows) + pos, field);
+            return;
+        }
+        int target;
+        if (field > key(pos)) {
+            target = lowerBound((long) field + 1, pos + 1, numRows) - 1;
+        } else {
+            target = lowerBound(field, 0, pos);
+        }
+        if (target != pos) {
+            moveRow(pos, target);
+        }
+        columns.put((colId * numRows) + target, field);
+    }
+
+    /**
+     * Moves the row at position `from` to position `to`, shifting the rows
+     * in between by one towards `from`.
+     */
+    private void moveRow(int from, int to) {
+        int rowId = logicalOf[from];
+        int lo = Math.min(from, to);
+        int hi = Math.max(from, to);
+        int shift = to > from ? -1 : 1;
+        for (int colId = 0; colId < numCols; colId++) {
+            int base = colId * numRows;
+            int moved = columns.get(base + from);
+            if (to > from) {
+                // Rows (from, to] move down, so copy them front to back.
+                for (int start = from + 1; start <= to; start += scratch.length) {
+                    int n = Math.min(scratch.length, to + 1 - start);
+                    columns.get(base + start, scratch, 0, n);
+                    columns.put(base + start - 1, scratch, 0, n);
+                }
+            } else {
+                // Rows [to, from) move up, so copy them back to front.
+                for (int end = from; end > to; end -= scratch.length) {
+                    int n = Math.min(scratch.length, end - to);
+                    columns.get(base + end - n, scratch, 0, n);
+                    columns.put(base + end - n + 1, scratch, 0, n);
+                }
+            }
+            columns.put(base + to, moved);
+        }
+        if (to > from) {
+            System.arraycopy(logicalOf, from + 1, logicalOf, from, to - from);
+        } else {
+            System.arraycopy(logicalOf, to, logicalOf, to + 1, from - to);
+        }
+        logicalOf[to] = rowId;
+        for (int pos = lo; pos <= hi; pos++) {
+            if (pos != to) {
+                physicalOf[logicalOf[pos]] += shift;
+            }
+        }
+        physicalOf[rowId] = to;
+    }
+
+    /**
+     * Frees the table's storage; see {@link StorageType#DIRECT}.
+     */
+    @Override
+    public void close() {
+        if (columns != null) {
+            columns.close();
+        }
+    }
+
+    /**
+     * Sets the number of threads each query may use; see
+     * {@link ColumnTable#setParallelism}.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Returns the positions [from, to) of the rows that can pass the plan's
+     * predicate on the sort column, as {from, to}; all rows if it has none.
+     */
+    private int[] slice(QueryPlan plan) {
+        for (int slot = 0; slot < plan.numPredicates; slot++) {
+            if (plan.columns[slot] == sortColumn) {
+                int from = lowerBound(plan.lo[slot], 0, numRows);
+                int to = lowerBound((long) plan.hi[slot] + 1, from, numRows);
+                return new int[]{from, to};
+            }
+        }
+        return new int[]{0, numRows};
+    }
+
+    /**
+     * Runs `kernel` over the positions [from, to).
+     */
+    private void scan(int from, int to, ParallelScan.RangeSum kernel) {
+        ParallelScan.sum(to - from, parallelism, (start, end) -> kernel.apply(from + start, from + end));
+    }
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order. Only the rows in the
+     * slice selected by a predicate on the sort column are scanned.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        long[] result = plan.newResult();
+        if (plan.empty) {
+            return result;
+        }
+        QueryKernel kernel = plan.kernel(QueryKernel.Kind.BATCHED_COLUMNS);
+        int[] slice = slice(plan);
+        scan(slice[0], slice[1], (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.select(columns, 1, numRows, from, to, part);
+            plan.merge(result, part);
+            return 0;
+        });
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated. Only the rows in the slice selected
+     * by a predicate on the sort column are scanned. An update of the sort
+     * column itself is applied in place and the rows are then sorted again.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        if (plan.empty) {
+            return 0;
+        }
+        QueryKernel kernel = plan.kernel(QueryKernel.Kind.BATCHED_COLUMNS);
+        long[] result = plan.newResult();
+        int[] slice = slice(plan);
+        scan(slice[0], slice[1], (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.update(columns, 1, numRows, from, to, part, false);
+            plan.merge(result, part);
+            return 0;
+        });
+        if (plan.dstCol == sortColumn && result[0] > 0) {
+            recluster();
+        }
+        return (int) result[0];
+    }
+
+    /**
+     * Sorts the rows again after the sort column was updated in place.
+     */
+    private void recluster() {
+        IntStorage unsorted = StorageType.INT_ARRAY.allocate(numRows * numCols);
+        for (int colId = 0; colId < numCols; colId++) {
+            for (int rowId = 0; rowId < numRows; rowId++) {
+                unsorted.put(colId * numRows + rowId, getIntField(rowId, colId));
+            }
+        }
+        cluster(unsorted);
+        unsorted.close();
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table;
+     *
+     *  Returns the sum of all elements in the first column of the table.
+     */
+    @Override
+    public long columnSum() {
+        return select(Query.COLUMN_SUM)[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table WHERE col1 > threshold1 AND col2 < threshold2;
+     *
+     *  Returns the sum of all elements in the first column of the table,
+     *  subject to the passed-in predicates.
+     */
+    @Override
+    public long predicatedColumnSum(int threshold1, int threshold2) {
+        return select(Query.predicatedColumnSum(threshold1, threshold2))[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE col0 > threshold;
+     *
+     *  Returns the sum of all elements in the rows which pass the predicate.
+     */
+    @Override
+    public long predicatedAllColumnsSum(int threshold) {
+        return select(Query.predicatedAllColumnsSum(numCols, threshold))[0];
+    }
+
+    /**
+     * Implements the query
+     *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+     *
+     *   Returns the number of rows updated.
+     */
+    @Override
+    public int predicatedUpdate(int threshold) {
+        return update(Query.predicatedUpdate(threshold));
+    }
+}
@@ -0,0 +1,44 @@
+package memstore.table;
+
+/**
+ * Physical storage a table can keep its fields in.
+ */
+public enum StorageType {
+    /**
+     * Plain int[] on the Java heap. The default.
+     */
+    INT_ARRAY {
+        @Override
+        public IntStorage allocate(int size) {
+            return new IntArrayStorage(size);
+        }
+    },
+
+    /**
+     * Big-endian heap ByteBuffer, as used by DataLoader rows.
+     */
+    BYTE_BUFFER {
+        @Override
+        public IntStorage allocate(int size) {
+            return new ByteBufferStorage(size);
+        }
+    },
+
+    /**
+     * Native-byte-order direct memory outside the Java heap, so that it is
+     * not scanned by the garbage collector. Freed when the owning table is
+     * closed. The total is capped by -XX:MaxDirectMemorySize, which defaults
+     * to the -Xmx value, so raise it to hold tables larger than the heap.
+     */
+    DIRECT {
+        @Override
+        public IntStorage allocate(int size) {
+            return new DirectStorage(size);
+        }
+    };
+
+    /**
+     * Allocates zeroed storage for `size` int fields.
+     */
+    public abstract IntStorage allocate(int size);
+}
@@ -8,7 +8,7 @@ import java.io.IOException;
  * Table interface, with one method for each query we wish to support.
  * Tables with specific storage formats should implement this interface.
  */
-public interface Table {
+public interface Table extends AutoCloseable {
     /**
      * Loads data into the table through passed-in data loader. Is not timed.
      *
@@ -59,4 +59,31 @@ public interface Table {
      *   Returns the number of rows updated.
      */
     int predicatedUpdate(int threshold);
+
+    /**
+     * Runs a SELECT query; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order.
+     */
+    long[] select(Query query);
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated.
+     */
+    int update(Query query);
+
+    /**
+     * Sets the number of threads each query may use. Tables that only run
+     * queries on the calling thread ignore it.
+     */
+    default void setParallelism(int parallelism) { }
+
+    /**
+     * Releases any memory the table holds outside the Java heap. The table
+     * must not be used afterwards.
+     */
+    @Override
+    default void close() { }
 }
@@ -0,0 +1,67 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RowBatch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+/**
+ * Loader that reads the rows of another, loaded table through getIntField(),
+ * so that a table can be loaded as a copy of one with a different layout.
+ *
+ * The copy is made one batch at a time and may run on a background thread
+ * while the source table keeps serving queries and writes. Fields written
+ * during the copy may be copied with either value; the caller has to copy
+ * those again once the copy is done. See {@link CustomTable}.
+ */
+final class TableCopyLoader implements DataLoader {
+    private final Table source;
+    private final int numRows;
+    private final int numCols;
+    private volatile boolean cancelled;
+
+    TableCopyLoader(Table source, int numRows, int numCols) {
+        this.source = source;
+        this.numRows = numRows;
+        this.numCols = numCols;
+    }
+
+    @Override
+    public int getNumCols() {
+        return numCols;
+    }
+
+    @Override
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * Makes scans in progress fail at the next batch.
+     */
+    void cancel() {
+        cancelled = true;
+    }
+
+    @Override
+    public void scan(RowConsumer consumer) throws IOException {
+        RowBatch batch = new RowBatch(numCols);
+        int[] fields = batch.fields();
+        for (int firstRowId = 0; firstRowId < numRows; firstRowId += RowBatch.DEFAULT_ROWS) {
+            if (cancelled) {
+                throw new InterruptedIOException("Copy cancelled");
+            }
+            batch.reset(firstRowId);
+            int n = Math.min(RowBatch.DEFAULT_ROWS, numRows - firstRowId);
+            for (int row = 0; row < n; row++) {
+                int offset = row * numCols;
+                for (int colId = 0; colId < numCols; colId++) {
+                    fields[offset + colId] = source.getIntField(firstRowId + row, colId);
+                }
+                batch.commit();
+            }
+            consumer.accept(batch);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package memstore.table;
+
+/**
+ * Physical layouts a table can keep its rows in.
+ */
+public enum TableLayout {
+    /**
+     * Row-major; see {@link RowTable}.
+     */
+    ROW {
+        @Override
+        public Table create(int indexColumn, int parallelism) {
+            return withParallelism(new RowTable(), parallelism);
+        }
+    },
+
+    /**
+     * Column-major; see {@link ColumnTable}.
+     */
+    COLUMN {
+        @Override
+        public Table create(int indexColumn, int parallelism) {
+            return withParallelism(new ColumnTable(), parallelism);
+        }
+    },
+
+    /**
+     * Column-major inside cache-sized pages of rows; see {@link PaxTable}.
+     */
+    PAX {
+        @Override
+        public Table create(int indexColumn, int parallelism) {
+            return withParallelism(new PaxTable(), parallelism);
+        }
+    },
+
+    /**
+     * Row-major with a tree index on one column; see {@link IndexedRowTable}.
+     */
+    INDEXED {
+        @Override
+        public Table create(int indexColumn, int parallelism) {
+            return withParallelism(new IndexedRowTable(indexColumn), parallelism);
+        }
+    };
+
+    /**
+     * Creates an empty table with this layout, indexed on column 0 if the
+     * layout has an index, that runs queries on the calling thread.
+     */
+    public Table create() {
+        return create(0, 1);
+    }
+
+    /**
+     * Creates an empty table with this layout.
+     *
+     * @param indexColumn column to index, for layouts with an index.
+     * @param parallelism number of threads each query may use.
+     */
+    public abstract Table create(int indexColumn, int parallelism);
+
+    private static Table withParallelism(Table table, int parallelism) {
+        table.setParallelism(parallelism);
+        return table;
+    }
+}
@@ -0,0 +1,150 @@
+package memstore.table;
+
+import memstore.data.ByteFormat;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary on-disk format for the data of a table, which can be memory-mapped
+ * back as the table's storage without parsing or copying.
+ *
+ * A snapshot is a header page followed by the table's fields in the order of
+ * its storage index, so that a column-major table is stored as
+ *   col 1 | col 2 | ... | col m
+ * and a row-major one as
+ *   row 1 | row 2 | ... | row n.
+ * The header (big-endian) is
+ *   magic "MSTABLE\0" | version | layout | encoding | byte order |
+ *   numRows | numCols | data offset (long)
+ * and the data starts at DATA_OFFSET, page-aligned, so that every mapped
+ * chunk of the data is page-aligned too. The only encoding is raw 32-bit ints
+ * in the byte order recorded in the header, which is the writer's native one.
+ *
+ * Mapped snapshots are private copy-on-write mappings, so tables can be
+ * updated in memory; writes reach the file only through a new snapshot.
+ */
+final class TableSnapshot {
+    enum Layout { COLUMN_MAJOR, ROW_MAJOR }
+
+    static final long MAGIC = 0x4d535441424c4500L; // "MSTABLE\0"
+    static final int VERSION = 1;
+    static final int ENCODING_INT32 = 0;
+    static final int DATA_OFFSET = 4096;
+
+    /**
+     * Fields copied per write when saving a snapshot.
+     */
+    private static final int WRITE_FIELDS = 1 << 16;
+
+    final Layout layout;
+    final int numRows;
+    final int numCols;
+    final IntStorage data;
+
+    private TableSnapshot(Layout layout, int numRows, int numCols, IntStorage data) {
+        this.layout = layout;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.data = data;
+    }
+
+    /**
+     * Writes `data` as a snapshot to `path`. The file is written under a
+     * temporary name and then moved into place, so that tables mapping an
+     * older snapshot at `path` keep reading the old file.
+     */
+    static void write(String path, Layout layout, int numRows, int numCols, IntStorage data)
+            throws IOException {
+        Path target = Paths.get(path);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        ByteOrder order = ByteOrder.nativeOrder();
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(DATA_OFFSET);
+            header.putLong(MAGIC)
+                    .putInt(VERSION)
+                    .putInt(layout.ordinal())
+                    .putInt(ENCODING_INT32)
+                    .putInt(order == ByteOrder.BIG_ENDIAN ? 1 : 0)
+                    .putInt(numRows)
+                    .putInt(numCols)
+                    .putLong(DATA_OFFSET);
+            ((Buffer) header).clear();
+            writeFully(channel, header);
+
+            int size = numRows * numCols;
+            int[] fields = new int[Math.min(WRITE_FIELDS, size)];
+            ByteBuffer bytes = ByteBuffer.allocate(ByteFormat.FIELD_LEN * fields.length).order(order);
+            for (int index = 0; index < size; index += fields.length) {
+                int n = Math.min(fields.length, size - index);
+                data.get(index, fields, 0, n);
+                ((Buffer) bytes).clear();
+                bytes.asIntBuffer().put(fields, 0, n);
+                ((Buffer) bytes).limit(ByteFormat.FIELD_LEN * n);
+                writeFully(channel, bytes);
+            }
+            channel.force(false);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Maps the snapshot at `path`, which must have the given layout.
+     */
+    static TableSnapshot map(String path, Layout layout) throws IOException {
+        // A private mapping needs a writable channel, even though the file is
+        // never written; read-only files are mapped read-only instead.
+        FileChannel.MapMode mode = Files.isWritable(Paths.get(path))
+                ? FileChannel.MapMode.PRIVATE
+                : FileChannel.MapMode.READ_ONLY;
+        StandardOpenOption[] options = mode == FileChannel.MapMode.PRIVATE
+                ? new StandardOpenOption[]{StandardOpenOption.READ, StandardOpenOption.WRITE}
+                : new StandardOpenOption[]{StandardOpenOption.READ};
+        try (FileChannel channel = FileChannel.open(Paths.get(path), options)) {
+            ByteBuffer header = ByteBuffer.allocate(40);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends.
+            }
+            ((Buffer) header).flip();
+            if (header.remaining() < 40 || header.getLong() != MAGIC) {
+                throw new IOException(path + " is not a table snapshot");
+            }
+            int version = header.getInt();
+            int layoutId = header.getInt();
+            int encoding = header.getInt();
+            ByteOrder order = header.getInt() == 1 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+            int numRows = header.getInt();
+            int numCols = header.getInt();
+            long dataOffset = header.getLong();
+            if (version != VERSION || encoding != ENCODING_INT32) {
+                throw new IOException(path + " has unsupported version " + version
+                        + " or encoding " + encoding);
+            }
+            if (layoutId != layout.ordinal()) {
+                throw new IOException(path + " has layout " + layoutId + ", expected " + layout);
+            }
+            long size = (long) numRows * numCols;
+            if (size > Integer.MAX_VALUE
+                    || channel.size() < dataOffset + ByteFormat.FIELD_LEN * size) {
+                throw new IOException(path + " is truncated");
+            }
+            IntStorage data = new MappedStorage(channel, mode, dataOffset, (int) size, order);
+            return new TableSnapshot(layout, numRows, numCols, data);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package memstore.table;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue of (rowId, colId, value) writes, for many
+ * producers and one consumer at a time.
+ *
+ * Producers claim a position by incrementing the tail, wait for its slot
+ * to be free, fill it in and publish it by setting the slot's sequence
+ * number to position + 1. The consumer takes published slots in position
+ * order and frees each by setting its sequence number to position +
+ * capacity, the position that will next use the slot. So no producer waits
+ * on another, and a full queue only makes producers wait for the consumer.
+ *
+ * Callers must make sure that only one thread consumes at a time, and that
+ * probe() does not run alongside a consumer.
+ */
+final class UpdateRing {
+    private final int capacity;
+    private final int mask;
+    private final long[] keys;
+    private final int[] values;
+    private final AtomicLongArray sequences;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+
+    /**
+     * @param capacity number of slots, a power of two.
+     */
+    UpdateRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.sequences = new AtomicLongArray(capacity);
+        for (int slot = 0; slot < capacity; slot++) {
+            sequences.set(slot, slot);
+        }
+    }
+
+    static long key(int rowId, int colId) {
+        return (long) rowId << 32 | colId;
+    }
+
+    static int rowId(long key) {
+        return (int) (key >>> 32);
+    }
+
+    static int colId(long key) {
+        return (int) key;
+    }
+
+    /**
+     * Enqueues a write, waiting for a free slot if the queue is full.
+     * Returns the position it was enqueued at.
+     */
+    long offer(int rowId, int colId, int value) {
+        long pos = tail.getAndIncrement();
+        int slot = (int) pos & mask;
+        while (sequences.get(slot) != pos) {
+            Thread.yield();
+        }
+        keys[slot] = key(rowId, colId);
+        values[slot] = value;
+        sequences.set(slot, pos + 1);
+        return pos;
+    }
+
+    /**
+     * Returns the position the next write will be enqueued at; every write
+     * enqueued so far is before it.
+     */
+    long tail() {
+        return tail.get();
+    }
+
+    /**
+     * Returns the position of the next write to consume.
+     */
+    long head() {
+        return head;
+    }
+
+    /**
+     * Dequeues published writes in order into the arrays, up to their
+     * length, stopping at the first slot not yet published. Returns the
+     * number of writes dequeued.
+     */
+    int drain(long[] keysOut, int[] valuesOut) {
+        long h = head;
+        int n = 0;
+        while (n < keysOut.length) {
+            int slot = (int) h & mask;
+            if (sequences.get(slot) != h + 1) {
+                break;
+            }
+            keysOut[n] = keys[slot];
+            valuesOut[n] = values[slot];
+            n++;
+            sequences.set(slot, h + capacity);
+            h++;
+        }
+        head = h;
+        return n;
+    }
+
+    /**
+     * Looks for the latest published write to `key` not yet consumed.
+     * Returns its value in value[0] and true, or false if there is none.
+     */
+    boolean probe(long key, int[] value) {
+        long h = head;
+        // Positions past h + capacity are claimed but cannot be published yet.
+        for (long pos = Math.min(tail.get(), h + capacity) - 1; pos >= h; pos--) {
+            int slot = (int) pos & mask;
+            if (sequences.get(slot) == pos + 1 && keys[slot] == key) {
+                value[0] = values[slot];
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,137 @@
+package memstore.table;
+
+/**
+ * Maintained view of
+ *   SELECT COUNT(*) FROM table WHERE col < threshold;
+ * for any threshold, as a Fenwick tree of the number of rows with each
+ * value of the column. Queries and writes take O(log D) time for a domain
+ * of D values.
+ *
+ * As with {@link DominanceSum}, the domain is the range of values present
+ * when the tree is built, the view is unavailable if it has more than
+ * MAX_VALUES values, and writes outside it or bulk writes mark the tree
+ * stale until the next query rebuilds it. A domain that was too large is
+ * only retried after a recompute() or a bulk write.
+ */
+public final class ValueCounts implements MaintainedAggregates.Aggregate {
+    /**
+     * Most values the domain may have, at 4 bytes per value.
+     */
+    static final int MAX_VALUES = 1 << 22;
+
+    private final int colId;
+
+    private Table table;
+    private int numRows;
+    private boolean stale = true;
+
+    private int minValue;
+    private int size;
+    /**
+     * Fenwick tree with 1-based indices.
+     */
+    private int[] tree;
+
+    public ValueCounts(int colId) {
+        this.colId = colId;
+    }
+
+    /**
+     * Whether the view can answer queries, rebuilding it first if it is
+     * stale. False if the domain is too large.
+     */
+    public boolean isAvailable() {
+        if (stale) {
+            build();
+        }
+        return tree != null;
+    }
+
+    /**
+     * Returns the number of rows whose value is below `threshold`. The view
+     * must be available.
+     */
+    public int countBelow(int threshold) {
+        int values = (int) Math.max(0, Math.min(size, (long) threshold - minValue));
+        int count = 0;
+        for (int i = values; i > 0; i -= i & -i) {
+            count += tree[i];
+        }
+        return count;
+    }
+
+    private void add(int value, int delta) {
+        for (int i = value - minValue + 1; i <= size; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    @Override
+    public boolean dependsOn(int colId) {
+        return colId == this.colId;
+    }
+
+    @Override
+    public void recompute(Table table, int numRows) {
+        this.table = table;
+        this.numRows = numRows;
+        this.stale = true;
+        this.tree = null;
+    }
+
+    /**
+     * Builds the tree over the current domain in O(n + D) time.
+     */
+    private void build() {
+        stale = false;
+        tree = null;
+        if (numRows == 0) {
+            return;
+        }
+        int maxValue = Integer.MIN_VALUE;
+        minValue = Integer.MAX_VALUE;
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            int value = table.getIntField(rowId, colId);
+            minValue = Math.min(minValue, value);
+            maxValue = Math.max(maxValue, value);
+        }
+        if ((long) maxValue - minValue + 1 > MAX_VALUES) {
+            return;
+        }
+        size = maxValue - minValue + 1;
+        tree = new int[size + 1];
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            tree[table.getIntField(rowId, colId) - minValue + 1]++;
+        }
+        for (int i = 1; i <= size; i++) {
+            int parent = i + (i & -i);
+            if (parent <= size) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    @Override
+    public void update(int rowId, int colId, int oldValue, int newValue) {
+        if (stale || tree == null) {
+            // Rebuilt when next queried, or the domain is too large.
+            return;
+        }
+        if ((long) newValue - minValue < 0 || (long) newValue - minValue >= size) {
+            stale = true;
+            return;
+        }
+        add(oldValue, -1);
+        add(newValue, 1);
+    }
+
+    /**
+     * A bulk write does not say which values changed, so the tree is rebuilt
+     * when next queried.
+     */
+    @Override
+    public boolean bulkUpdate(int colId, long delta) {
+        stale = true;
+        return true;
+    }
+}
@@ -0,0 +1,353 @@
+package memstore.table;
+
+import memstore.data.BufferedLoader;
+import memstore.data.DataLoader;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * VersionedColumnTable, which stores data column-major in chunks of a fixed
+ * number of rows, and keeps multiple versions of the table so that queries
+ * can be shared between threads without blocking writers (MVCC).
+ *
+ * A version is an array of references to chunks, and versions share the
+ * chunks they have in common. The current version is published through a
+ * volatile field. A query first seals the current version, which makes it
+ * immutable, and then reads that version only, so it sees a consistent
+ * snapshot however long it runs. Writes go to the current version while
+ * it is not sealed; once it is, the next write starts a new version, which
+ * copies the chunk references, and copies each chunk before its first
+ * write (copy-on-write). UPDATEs always build a new version on the side and
+ * publish it when done.
+ *
+ * Writers are serialized among themselves but never wait on queries; a
+ * query may only wait for a point write in progress on the version it
+ * seals. Old versions and their chunks are reclaimed by the garbage
+ * collector once no query holds them.
+ *
+ * Point reads are not snapshots: getIntField() reads the latest value.
+ */
+public class VersionedColumnTable implements Table {
+    static final int DEFAULT_CHUNK_ROWS = 1024;
+
+    private static final int OPEN = 0;
+    private static final int WRITING = 1;
+    private static final int SEALED = 2;
+
+    /**
+     * One version of the table. Chunk i * numChunks + c holds the rows of
+     * chunk c of column i.
+     */
+    private static final class Version {
+        final long id;
+        final AtomicReferenceArray<int[]> chunks;
+        /**
+         * Id of the version each chunk was copied for; chunks whose owner is
+         * this version can be written in place while it is not sealed. Only
+         * read and written by writers.
+         */
+        final long[] owners;
+        final AtomicInteger state = new AtomicInteger(OPEN);
+
+        Version(long id, int numChunks) {
+            this.id = id;
+            this.chunks = new AtomicReferenceArray<>(numChunks);
+            this.owners = new long[numChunks];
+        }
+
+        /**
+         * Returns a new version with the same chunks, none of them owned.
+         */
+        Version next(long id) {
+            Version next = new Version(id, owners.length);
+            for (int i = 0; i < owners.length; i++) {
+                next.chunks.set(i, chunks.get(i));
+                next.owners[i] = owners[i];
+            }
+            return next;
+        }
+
+        /**
+         * Makes the version immutable, waiting for a point write in progress.
+         */
+        void seal() {
+            while (true) {
+                int s = state.get();
+                if (s == SEALED || (s == OPEN && state.compareAndSet(OPEN, SEALED))) {
+                    return;
+                }
+                Thread.yield();
+            }
+        }
+    }
+
+    int numCols;
+    int numRows;
+    int parallelism = 1;
+
+    final int chunkRows;
+    private final int chunkShift;
+    private int numChunks;
+
+    private volatile Version current;
+    private final Object writeLock = new Object();
+    private long nextId;
+
+    public VersionedColumnTable() {
+        this(DEFAULT_CHUNK_ROWS);
+    }
+
+    /**
+     * @param chunkRows rows per chunk, a power of two no larger than the
+     *                  rows per morsel of a parallel scan.
+     */
+    public VersionedColumnTable(int chunkRows) {
+        if (chunkRows <= 0 || Integer.bitCount(chunkRows) != 1 || chunkRows > ParallelScan.MORSEL_ROWS) {
+            throw new IllegalArgumentException("Bad rows per chunk: " + chunkRows);
+        }
+        this.chunkRows = chunkRows;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkRows);
+    }
+
+    /**
+     * Loads data into the table through passed-in data loader. Is not timed.
+     *
+     * @param loader Loader to load data from.
+     * @throws IOException
+     */
+    @Override
+    public void load(DataLoader loader) throws IOException {
+        loader = BufferedLoader.sized(loader);
+        synchronized (writeLock) {
+            this.numCols = loader.getNumCols();
+            this.numRows = loader.getNumRows();
+            this.numChunks = (numRows + chunkRows - 1) >>> chunkShift;
+            Version version = new Version(nextId++, numCols * numChunks);
+            for (int i = 0; i < numCols * numChunks; i++) {
+                version.chunks.set(i, new int[chunkRows]);
+                version.owners[i] = version.id;
+            }
+
+            // Batches only write their own rows, so they can be copied in parallel.
+            loader.scanConcurrently(batch -> {
+                int[] fields = batch.fields();
+                for (int row = 0; row < batch.getNumRows(); row++) {
+                    int rowId = batch.getFirstRowId() + row;
+                    for (int colId = 0; colId < numCols; colId++) {
+                        version.chunks.get(chunkIndex(rowId, colId))[rowId & (chunkRows - 1)] =
+                                fields[row * numCols + colId];
+                    }
+                }
+            });
+            current = version;
+        }
+    }
+
+    private int chunkIndex(int rowId, int colId) {
+        return colId * numChunks + (rowId >>> chunkShift);
+    }
+
+    /**
+     * Returns the int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public int getIntField(int rowId, int colId) {
+        return current.chunks.get(chunkIndex(rowId, colId))[rowId & (chunkRows - 1)];
+    }
+
+    /**
+     * Returns chunk `index` of `version` for writing, copying it first unless
+     * the version owns it.
+     */
+    private int[] writableChunk(Version version, int index) {
+        int[] chunk = version.chunks.get(index);
+        if (version.owners[index] != version.id) {
+            chunk = chunk.clone();
+            version.owners[index] = version.id;
+            version.chunks.set(index, chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Inserts the passed-in int field at row `rowId` and column `colId`.
+     */
+    @Override
+    public void putIntField(int rowId, int colId, int field) {
+        int index = chunkIndex(rowId, colId);
+        synchronized (writeLock) {
+            Version version = current;
+            if (version.state.compareAndSet(OPEN, WRITING)) {
+                writableChunk(version, index)[rowId & (chunkRows - 1)] = field;
+                version.state.set(OPEN);
+            } else {
+                Version next = version.next(nextId++);
+                writableChunk(next, index)[rowId & (chunkRows - 1)] = field;
+                current = next;
+            }
+        }
+    }
+
+    /**
+     * Seals and returns the current version, for a query to read.
+     */
+    private Version snapshot() {
+        Version version = current;
+        version.seal();
+        return version;
+    }
+
+    /**
+     * Returns the id of the current version, which changes whenever a write
+     * has to start a new version.
+     */
+    public long getVersionId() {
+        return current.id;
+    }
+
+    /**
+     * Sets the number of threads each query may use; see
+     * {@link ColumnTable#setParallelism}.
+     */
+    @Override
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Column runs of one version, as read by the batched kernels. Writes
+     * copy chunks on first write, so a version being written may only be
+     * shared by morsels that write different chunks.
+     */
+    private final class VersionColumns implements QueryKernel.Columns {
+        private final Version version;
+
+        VersionColumns(Version version) {
+            this.version = version;
+        }
+
+        @Override
+        public void get(int colId, int rowId, int[] dst, int n) {
+            for (int done = 0; done < n; ) {
+                int r = (rowId + done) & (chunkRows - 1);
+                int len = Math.min(n - done, chunkRows - r);
+                System.arraycopy(version.chunks.get(chunkIndex(rowId + done, colId)), r, dst, done, len);
+                done += len;
+            }
+        }
+
+        @Override
+        public void put(int colId, int rowId, int[] src, int n) {
+            for (int done = 0; done < n; ) {
+                int r = (rowId + done) & (chunkRows - 1);
+                int len = Math.min(n - done, chunkRows - r);
+                System.arraycopy(src, done, writableChunk(version, chunkIndex(rowId + done, colId)), r, len);
+                done += len;
+            }
+        }
+    }
+
+    /**
+     * Runs a SELECT query on a snapshot; see {@link Query}.
+     *
+     * Returns one value per aggregation, in order.
+     */
+    @Override
+    public long[] select(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(false, numCols);
+        long[] result = plan.newResult();
+        if (plan.empty) {
+            return result;
+        }
+        QueryKernel.BatchedColumns kernel =
+                (QueryKernel.BatchedColumns) plan.kernel(QueryKernel.Kind.BATCHED_COLUMNS);
+        VersionColumns columns = new VersionColumns(snapshot());
+        ParallelScan.sum(numRows, parallelism, (from, to) -> {
+            long[] part = plan.newResult();
+            kernel.select(columns, from, to, part);
+            plan.merge(result, part);
+            return 0;
+        });
+        return result;
+    }
+
+    /**
+     * Runs an UPDATE query; see {@link Query}.
+     *
+     * Returns the number of rows updated. The update is applied to a new
+     * version, which replaces the current one when done, so queries that
+     * start meanwhile see the table as it was before. Morsels are whole
+     * chunks, so they never copy the same chunk.
+     */
+    @Override
+    public int update(Query query) {
+        QueryPlan plan = query.plan();
+        plan.validate(true, numCols);
+        if (plan.empty) {
+            return 0;
+        }
+        QueryKernel.BatchedColumns kernel =
+                (QueryKernel.BatchedColumns) plan.kernel(QueryKernel.Kind.BATCHED_COLUMNS);
+        synchronized (writeLock) {
+            Version next = current.next(nextId++);
+            VersionColumns columns = new VersionColumns(next);
+            long[] result = plan.newResult();
+            ParallelScan.sum(numRows, parallelism, (from, to) -> {
+                long[] part = plan.newResult();
+                kernel.update(columns, from, to, part, false);
+                plan.merge(result, part);
+                return 0;
+            });
+            current = next;
+            return (int) result[0];
+        }
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table;
+     *
+     *  Returns the sum of all elements in the first column of the table.
+     */
+    @Override
+    public long columnSum() {
+        return select(Query.COLUMN_SUM)[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) FROM table WHERE col1 > threshold1 AND col2 < threshold2;
+     *
+     *  Returns the sum of all elements in the first column of the table,
+     *  subject to the passed-in predicates.
+     */
+    @Override
+    public long predicatedColumnSum(int threshold1, int threshold2) {
+        return select(Query.predicatedColumnSum(threshold1, threshold2))[0];
+    }
+
+    /**
+     * Implements the query
+     *  SELECT SUM(col0) + SUM(col1) + ... + SUM(coln) FROM table WHERE col0 > threshold;
+     *
+     *  Returns the sum of all elements in the rows which pass the predicate.
+     */
+    @Override
+    public long predicatedAllColumnsSum(int threshold) {
+        return select(Query.predicatedAllColumnsSum(numCols, threshold))[0];
+    }
+
+    /**
+     * Implements the query
+     *   UPDATE(col3 = col1 + col2) WHERE col0 < threshold;
+     *
+     *   Returns the number of rows updated.
+     */
+    @Override
+    public int predicatedUpdate(int threshold) {
+        return update(Query.predicatedUpdate(threshold));
+    }
+}
@@ -0,0 +1,292 @@
+package memstore.table;
+
+/**
+ * Statistics on the queries a {@link CustomTable} has run, and the cost they
+ * would have had under every {@link TableLayout}.
+ *
+ * For every query, the call is counted, with the columns it touches and its
+ * selectivity, and its estimated cost under each layout is added to a
+ * running total per layout: row, column and PAX, and the indexed layout with
+ * the index on each column in turn. The totals are halved by decay(), so
+ * that they follow the recent workload.
+ *
+ * Costs are in units of one int read by a sequential column scan. The
+ * constants below were fitted to LayoutBench on a single core.
+ */
+public final class WorkloadStats {
+    /**
+     * Kinds of queries, as counted by getCalls().
+     */
+    public enum QueryKind {
+        COLUMN_SUM,
+        PREDICATED_COLUMN_SUM,
+        PREDICATED_ALL_COLUMNS_SUM,
+        PREDICATED_UPDATE,
+        SELECT,
+        UPDATE
+    }
+
+    /**
+     * Cost per row of a row-major scan, which reads whole rows: ROW_FIELD
+     * per column plus ROW_OVERHEAD.
+     */
+    static final double ROW_FIELD = 2;
+    static final double ROW_OVERHEAD = 8;
+    /**
+     * PAX reads a touched column at PAX_BASE - PAX_LOCALITY * (fraction of
+     * columns touched) the cost of a column-major scan: slightly slower for
+     * narrow projections, faster when most of a row is read.
+     */
+    static final double PAX_BASE = 1.15;
+    static final double PAX_LOCALITY = 0.3;
+    /**
+     * Extra cost of fetching a row found through the index, which is
+     * random access.
+     */
+    static final double INDEX_ROW = 16;
+    /**
+     * Cost per row and column of the field-at-a-time path that updates to an
+     * indexed column take.
+     */
+    static final double INTERPRETED_FIELD = 20;
+    /**
+     * Cost of a point access to a row other than the previous one: a cache
+     * miss in every layout.
+     */
+    static final double POINT_MISS = 100;
+    /**
+     * Cost of a point access to another column of the previous row, which
+     * is in the same cache line for rows and in the same page for PAX.
+     */
+    static final double ROW_LOCAL_HIT = 5;
+    static final double PAX_LOCAL_HIT = 10;
+    /**
+     * Cost of a write to an indexed column, which moves the row between
+     * index entries.
+     */
+    static final double INDEX_PUT = 2000;
+    /**
+     * Cost per field of copying the table into another layout, and per row
+     * of building an index.
+     */
+    static final double COPY_FIELD = 20;
+    static final double INDEX_BUILD = 50;
+
+    final int numRows;
+    final int numCols;
+
+    private final long[] calls = new long[QueryKind.values().length];
+    private final double[] selectivitySums = new double[QueryKind.values().length];
+    private final long[] columnTouches;
+    private final long[] predicateTouches;
+
+    /**
+     * Decayed cost totals of the non-indexed layouts, by TableLayout ordinal.
+     */
+    private final double[] layoutCosts = new double[TableLayout.values().length];
+    /**
+     * Decayed cost totals of the indexed layout, by index column.
+     */
+    private final double[] indexCosts;
+
+    /**
+     * Point accesses since the last time they were added to the costs.
+     */
+    private long pointMisses;
+    private long rowLocalAccesses;
+    private final long[] puts;
+    private int lastRowId = -1;
+
+    WorkloadStats(int numRows, int numCols) {
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.columnTouches = new long[numCols];
+        this.predicateTouches = new long[numCols];
+        this.indexCosts = new double[numCols];
+        this.puts = new long[numCols];
+    }
+
+    /**
+     * Returns the number of queries of the given kind run so far.
+     */
+    public long getCalls(QueryKind kind) {
+        return calls[kind.ordinal()];
+    }
+
+    /**
+     * Returns the mean fraction of rows that queries of the given kind
+     * selected, or 1 if there were none.
+     */
+    public double getMeanSelectivity(QueryKind kind) {
+        long n = calls[kind.ordinal()];
+        return n == 0 ? 1 : selectivitySums[kind.ordinal()] / n;
+    }
+
+    /**
+     * Returns the number of queries that read or wrote column `colId`.
+     */
+    public long getColumnTouches(int colId) {
+        return columnTouches[colId];
+    }
+
+    /**
+     * Returns the number of queries with a predicate on column `colId`.
+     */
+    public long getPredicateTouches(int colId) {
+        return predicateTouches[colId];
+    }
+
+    /**
+     * Records a query that scanned the table.
+     *
+     * @param plan                  plan of the query.
+     * @param predicateSelectivity  fraction of rows passing each predicate
+     *                              of the plan on its own.
+     * @param selectivity           fraction of rows passing all predicates.
+     */
+    void recordQuery(QueryKind kind, QueryPlan plan, double[] predicateSelectivity, double selectivity) {
+        calls[kind.ordinal()]++;
+        selectivitySums[kind.ordinal()] += selectivity;
+        for (int slot = 0; slot < plan.columns.length; slot++) {
+            columnTouches[plan.columns[slot]]++;
+            if (slot < plan.numPredicates) {
+                predicateTouches[plan.columns[slot]]++;
+            }
+        }
+
+        int touched = plan.columns.length;
+        double rowScan = numRows * (ROW_FIELD * numCols + ROW_OVERHEAD);
+        layoutCosts[TableLayout.ROW.ordinal()] += rowScan;
+        layoutCosts[TableLayout.COLUMN.ordinal()] += (double) numRows * touched;
+        layoutCosts[TableLayout.PAX.ordinal()] +=
+                (double) numRows * touched * (PAX_BASE - PAX_LOCALITY * touched / numCols);
+        for (int colId = 0; colId < numCols; colId++) {
+            double cost;
+            if (plan.update && plan.dstCol == colId) {
+                cost = numRows * INTERPRETED_FIELD * touched;
+            } else {
+                double s = indexSelectivity(kind, plan, predicateSelectivity, colId);
+                cost = s < 0 ? rowScan : numRows * s * (numCols + INDEX_ROW);
+            }
+            indexCosts[colId] += cost;
+        }
+    }
+
+    /**
+     * Records a query that is answered without scanning, in every layout.
+     */
+    void recordCall(QueryKind kind) {
+        calls[kind.ordinal()]++;
+    }
+
+    /**
+     * Returns the fraction of rows an IndexedRowTable on `colId` reads
+     * through its index for the query, or -1 if it scans all rows instead.
+     * Only the fixed queries are answered from the index.
+     */
+    private static double indexSelectivity(QueryKind kind, QueryPlan plan, double[] predicateSelectivity,
+                                           int colId) {
+        boolean indexed;
+        switch (kind) {
+            case PREDICATED_COLUMN_SUM:
+                indexed = colId == 1 || colId == 2;
+                break;
+            case PREDICATED_ALL_COLUMNS_SUM:
+            case PREDICATED_UPDATE:
+                indexed = colId == 0;
+                break;
+            default:
+                indexed = false;
+        }
+        if (!indexed) {
+            return -1;
+        }
+        for (int p = 0; p < plan.numPredicates; p++) {
+            if (plan.columns[p] == colId) {
+                return predicateSelectivity[p];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Records a point read of row `rowId`.
+     */
+    void recordGet(int rowId) {
+        if (rowId == lastRowId) {
+            rowLocalAccesses++;
+        } else {
+            pointMisses++;
+            lastRowId = rowId;
+        }
+    }
+
+    /**
+     * Records a point write to row `rowId` and column `colId`.
+     */
+    void recordPut(int rowId, int colId) {
+        recordGet(rowId);
+        puts[colId]++;
+    }
+
+    /**
+     * Adds the point accesses recorded since the last call to the costs.
+     */
+    private void foldPointAccesses() {
+        double misses = pointMisses * POINT_MISS;
+        layoutCosts[TableLayout.ROW.ordinal()] += misses + rowLocalAccesses * ROW_LOCAL_HIT;
+        layoutCosts[TableLayout.COLUMN.ordinal()] += misses + rowLocalAccesses * POINT_MISS;
+        layoutCosts[TableLayout.PAX.ordinal()] += misses + rowLocalAccesses * PAX_LOCAL_HIT;
+        for (int colId = 0; colId < numCols; colId++) {
+            indexCosts[colId] += misses + rowLocalAccesses * ROW_LOCAL_HIT + puts[colId] * INDEX_PUT;
+            puts[colId] = 0;
+        }
+        pointMisses = 0;
+        rowLocalAccesses = 0;
+    }
+
+    /**
+     * Returns the recent cost of the workload under `layout`, with the index
+     * on `indexColumn` for the indexed layout.
+     */
+    double cost(TableLayout layout, int indexColumn) {
+        foldPointAccesses();
+        return layout == TableLayout.INDEXED ? indexCosts[indexColumn] : layoutCosts[layout.ordinal()];
+    }
+
+    /**
+     * Returns the estimated cost of copying the table into `layout`.
+     */
+    double migrationCost(TableLayout layout) {
+        double copy = (double) numRows * numCols * COPY_FIELD;
+        return layout == TableLayout.INDEXED ? copy + numRows * INDEX_BUILD : copy;
+    }
+
+    /**
+     * Returns the column an index would best be on: the one with the lowest
+     * recent cost for the indexed layout.
+     */
+    int bestIndexColumn() {
+        foldPointAccesses();
+        int best = 0;
+        for (int colId = 1; colId < numCols; colId++) {
+            if (indexCosts[colId] < indexCosts[best]) {
+                best = colId;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Halves all recent costs.
+     */
+    void decay() {
+        foldPointAccesses();
+        for (int i = 0; i < layoutCosts.length; i++) {
+            layoutCosts[i] /= 2;
+        }
+        for (int colId = 0; colId < numCols; colId++) {
+            indexCosts[colId] /= 2;
+        }
+    }
+}
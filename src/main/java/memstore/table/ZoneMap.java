@@ -0,0 +1,115 @@
+package memstore.table;
+
+/**
+ * Per-block min/max metadata ("zone map") for a column-major table.
+ *
+ * Rows are split into blocks of `blockRows` rows, and for every column and
+ * block the map keeps a range [min, max] that contains every value of the
+ * column in that block. Writes only ever widen the ranges, so they stay
+ * correct but may become loose; rebuild() tightens them again.
+ */
+final class ZoneMap {
+    /**
+     * Decides from a block's ranges whether any row in it can match a query.
+     */
+    interface BlockFilter {
+        boolean canMatch(int blockId);
+    }
+
+    final int blockRows;
+    final int numBlocks;
+    private final int numRows;
+    private final int numCols;
+    private final int[] mins;
+    private final int[] maxs;
+
+    ZoneMap(IntStorage columns, int numRows, int numCols, int blockRows) {
+        this.blockRows = blockRows;
+        this.numRows = numRows;
+        this.numCols = numCols;
+        this.numBlocks = (numRows + blockRows - 1) / blockRows;
+        this.mins = new int[numCols * numBlocks];
+        this.maxs = new int[numCols * numBlocks];
+        rebuild(columns);
+    }
+
+    /**
+     * Recomputes exact ranges from the column data.
+     */
+    void rebuild(IntStorage columns) {
+        for (int colId = 0; colId < numCols; colId++) {
+            for (int blockId = 0; blockId < numBlocks; blockId++) {
+                int min = Integer.MAX_VALUE;
+                int max = Integer.MIN_VALUE;
+                int end = blockEnd(blockId);
+                for (int rowId = blockStart(blockId); rowId < end; rowId++) {
+                    int value = columns.get(colId * numRows + rowId);
+                    min = Math.min(min, value);
+                    max = Math.max(max, value);
+                }
+                mins[colId * numBlocks + blockId] = min;
+                maxs[colId * numBlocks + blockId] = max;
+            }
+        }
+    }
+
+    int blockStart(int blockId) {
+        return blockId * blockRows;
+    }
+
+    int blockEnd(int blockId) {
+        return Math.min(numRows, (blockId + 1) * blockRows);
+    }
+
+    int min(int colId, int blockId) {
+        return mins[colId * numBlocks + blockId];
+    }
+
+    int max(int colId, int blockId) {
+        return maxs[colId * numBlocks + blockId];
+    }
+
+    /**
+     * Widens the range of `colId` in the block holding `rowId` to include
+     * `value`.
+     */
+    void include(int rowId, int colId, int value) {
+        widen(colId, rowId / blockRows, value, value);
+    }
+
+    /**
+     * Widens the range of `colId` in `blockId` to include [min, max].
+     */
+    void widen(int colId, int blockId, int min, int max) {
+        int i = colId * numBlocks + blockId;
+        mins[i] = Math.min(mins[i], min);
+        maxs[i] = Math.max(maxs[i], max);
+    }
+
+    /**
+     * Runs `kernel` over the rows of every block that passes `filter`,
+     * merging runs of adjacent passing blocks into a single call, and returns
+     * the sum of the results. Blocks are split into morsels for ParallelScan.
+     */
+    long scan(int parallelism, BlockFilter filter, ParallelScan.RangeSum kernel) {
+        int morselBlocks = Math.max(1, ParallelScan.MORSEL_ROWS / blockRows);
+        return ParallelScan.sum(numBlocks, morselBlocks, parallelism, (fromBlock, toBlock) -> {
+            long sum = 0;
+            int runStart = -1;
+            for (int blockId = fromBlock; blockId < toBlock; blockId++) {
+                if (filter.canMatch(blockId)) {
+                    if (runStart < 0) {
+                        runStart = blockId;
+                    }
+                } else if (runStart >= 0) {
+                    sum += kernel.apply(blockStart(runStart), blockEnd(blockId - 1));
+                    runStart = -1;
+                }
+            }
+            if (runStart >= 0) {
+                sum += kernel.apply(blockStart(runStart), blockEnd(toBlock - 1));
+            }
+            return sum;
+        });
+    }
+}
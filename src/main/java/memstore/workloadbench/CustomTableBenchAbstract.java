@@ -32,10 +32,17 @@ public abstract class CustomTableBenchAbstract {
         random = new Random(seed);
         DataLoader dataLoader = getRandomLoader();
 
-        table = new CustomTable();
+        table = newTable();
         table.load(dataLoader);
     }
 
+    /**
+     * Returns the table the queries are run against.
+     */
+    protected Table newTable() {
+        return new CustomTable();
+    }
+
     public long testQueries() {
         // Make sure testQueries uses the same seed across runs.
         random = new Random(seed);
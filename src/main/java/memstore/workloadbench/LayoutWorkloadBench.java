@@ -0,0 +1,54 @@
+package memstore.workloadbench;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.table.Table;
+import memstore.table.TableLayout;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the workloads of NarrowCustomTableBench and WideCustomTableBench
+ * against the row, column and PAX layouts instead of CustomTable.
+ *
+ * Not part of the graded benchmarks; run with
+ *   java -cp target/benchmarks.jar org.openjdk.jmh.Main LayoutWorkloadBench
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Thread)
+public class LayoutWorkloadBench extends CustomTableBenchAbstract {
+    @Param({"ROW", "COLUMN", "PAX"})
+    public TableLayout layout;
+
+    @Param({"5", "100"})
+    public int numCols;
+
+    public double getExpectedTime() {
+        return numCols == 5 ? 1300.0 : 1800.0;
+    }
+
+    @Override
+    public DataLoader getRandomLoader() {
+        numRows = (numCols == 5 ? 15_000_000 : 27_500_000) / numCols;
+        numQueries = numCols == 5 ? 20 : 100;
+        return new RandomizedLoader(seed, numRows, numCols);
+    }
+
+    @Override
+    protected Table newTable() {
+        return layout.create();
+    }
+
+    @Setup
+    public void prepare() throws IOException {
+        super.prepare();
+    }
+
+    @Benchmark
+    public long testQueries() {
+        return super.testQueries();
+    }
+}
@@ -0,0 +1,122 @@
+package memstore.server;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.table.ColumnTable;
+import memstore.table.ConcurrentTable;
+import memstore.table.RowTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that a QueryServer answers remote calls as the table would locally,
+ * in order when pipelined, and keeps serving after a failed call.
+ */
+public class QueryServerTest {
+    private static final int NUM_ROWS = 10_000;
+    private static final int NUM_COLS = 6;
+
+    private RowTable expected;
+    private QueryServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, NUM_ROWS, NUM_COLS);
+        expected = new RowTable();
+        expected.load(dl);
+        ColumnTable table = new ColumnTable();
+        table.load(dl);
+        server = new QueryServer(new ConcurrentTable(table, true), 0);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    private QueryClient connect() throws IOException {
+        return new QueryClient("localhost", server.getPort());
+    }
+
+    @Test
+    public void testCalls() throws IOException {
+        try (QueryClient client = connect()) {
+            assertEquals(expected.columnSum(), client.columnSum());
+            assertEquals(expected.predicatedColumnSum(300, 700), client.predicatedColumnSum(300, 700));
+            assertEquals(expected.predicatedAllColumnsSum(500), client.predicatedAllColumnsSum(500));
+            assertEquals(expected.predicatedUpdate(400), client.predicatedUpdate(400));
+            expected.putIntField(42, 3, -7);
+            client.putIntField(42, 3, -7);
+            assertEquals(-7, client.getIntField(42, 3));
+            assertEquals(expected.predicatedAllColumnsSum(-1), client.predicatedAllColumnsSum(-1));
+        }
+    }
+
+    @Test
+    public void testPipelined() throws IOException {
+        try (QueryClient client = connect()) {
+            for (int rowId = 0; rowId < 1000; rowId++) {
+                client.sendPutIntField(rowId, 0, rowId);
+                client.sendGetIntField(rowId, 0);
+                expected.putIntField(rowId, 0, rowId);
+            }
+            client.sendColumnSum();
+            client.flush();
+            assertEquals(2001, client.getPendingResponses());
+            for (int rowId = 0; rowId < 1000; rowId++) {
+                assertEquals(0, client.receive());
+                assertEquals(rowId, client.receive());
+            }
+            assertEquals(expected.columnSum(), client.receive());
+            assertEquals(0, client.getPendingResponses());
+        }
+        // Pipelined requests are answered in batches.
+        ServerStats stats = server.getStats();
+        assertEquals(2001, stats.getRequests());
+        assertTrue(stats.getBatches() < stats.getRequests());
+        assertEquals(2001, stats.getLatencies().getCount());
+    }
+
+    @Test
+    public void testErrorKeepsConnection() throws IOException {
+        try (QueryClient client = connect()) {
+            client.sendGetIntField(NUM_ROWS * NUM_COLS, 0);
+            client.sendColumnSum();
+            try {
+                client.receive();
+                fail();
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Server error"));
+            }
+            assertEquals(expected.columnSum(), client.receive());
+        }
+        assertEquals(1, server.getStats().getErrors());
+    }
+
+    @Test
+    public void testUnknownOpcodeClosesConnection() throws IOException {
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(99);
+            socket.getOutputStream().flush();
+            assertEquals(Protocol.ERROR, socket.getInputStream().read());
+        }
+    }
+
+    @Test
+    public void testLoadGenerator() throws Exception {
+        LoadGenerator.Result result = LoadGenerator.run("localhost", server.getPort(), 8, 30, NUM_ROWS, 0);
+        // Rounds 0, 3, ..., 27 also run predicatedAllColumnsSum().
+        assertEquals(8 * (30 * 24 + 10), result.requests);
+        assertEquals(8 * 30, result.rounds);
+        assertEquals(result.requests, server.getStats().getRequests());
+        assertEquals(8, server.getStats().getConnections());
+    }
+}
@@ -0,0 +1,72 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests IndexedRowTable with a bitmap index against a plain RowTable, on
+ * tables spanning several bitmap chunks and with writes to the indexed
+ * column.
+ */
+public class BitmapIndexTest {
+    @Test
+    public void testQueries() throws IOException {
+        DataLoader dl = new CSVLoader("src/main/resources/test.csv", 5);
+        for (int indexColumn = 0; indexColumn < 4; indexColumn++) {
+            IndexedRowTable it = new IndexedRowTable(indexColumn, IndexType.BITMAP);
+            it.load(dl);
+            assertEquals(68, it.columnSum());
+            assertEquals(166, it.predicatedAllColumnsSum(3));
+            assertEquals(342, it.predicatedAllColumnsSum(-1));
+            assertEquals(49, it.predicatedColumnSum(3, 5));
+            assertEquals(9, it.predicatedUpdate(3));
+            assertEquals(375, it.predicatedAllColumnsSum(-1));
+        }
+    }
+
+    @Test
+    public void testMatchesRowTable() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 150_000, 5);
+        RowTable rt = new RowTable();
+        rt.load(dl);
+        IndexedRowTable[] tables = new IndexedRowTable[4];
+        for (int indexColumn = 0; indexColumn < 4; indexColumn++) {
+            tables[indexColumn] = new IndexedRowTable(indexColumn, IndexType.BITMAP);
+            tables[indexColumn].load(dl);
+            tables[indexColumn].setParallelism(indexColumn % 2 + 1);
+        }
+
+        Random random = new Random(0);
+        int[] extremes = {Integer.MIN_VALUE, -1, 0, 1023, 1024, Integer.MAX_VALUE};
+        for (int i = 0; i < 30; i++) {
+            int t1 = i < extremes.length ? extremes[i] : random.nextInt(1024);
+            int t2 = random.nextInt(1024);
+            long columnSum = rt.columnSum();
+            long predicatedColumnSum = rt.predicatedColumnSum(t1, t2);
+            long predicatedAllColumnsSum = rt.predicatedAllColumnsSum(t1);
+            int predicatedUpdate = rt.predicatedUpdate(t2);
+            for (IndexedRowTable it : tables) {
+                assertEquals(columnSum, it.columnSum());
+                assertEquals(predicatedColumnSum, it.predicatedColumnSum(t1, t2));
+                assertEquals(predicatedAllColumnsSum, it.predicatedAllColumnsSum(t1));
+                assertEquals(predicatedUpdate, it.predicatedUpdate(t2));
+            }
+            for (int j = 0; j < 20; j++) {
+                int rowId = random.nextInt(150_000);
+                int colId = j % 5;
+                int field = j == 0 ? 5000 : random.nextInt(1024);
+                rt.putIntField(rowId, colId, field);
+                for (IndexedRowTable it : tables) {
+                    it.putIntField(rowId, colId, field);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that a BufferedWriteTable applies queued writes in order, that
+ * reads see them in both consistency modes, and that no write that was
+ * accepted is lost.
+ */
+public class BufferedWriteTableTest {
+    private static final int NUM_ROWS = 20_000;
+    private static final int NUM_COLS = 5;
+    private static final int WRITERS = 4;
+
+    private void checkConcurrentWrites(BufferedWriteTable.Consistency consistency) throws Exception {
+        DataLoader dl = new RandomizedLoader(0, NUM_ROWS, NUM_COLS);
+        ColumnTable expected = new ColumnTable();
+        expected.load(dl);
+        // A small ring, so that writers also wait for the applier.
+        BufferedWriteTable buffered = new BufferedWriteTable(new ColumnTable(), consistency, 1024);
+        buffered.load(dl);
+
+        // Each writer owns the rows congruent to its id, so the final value
+        // of every field does not depend on how the threads interleave.
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(writer);
+                for (int i = 0; i < 20_000; i++) {
+                    int rowId = random.nextInt(NUM_ROWS / WRITERS) * WRITERS + writer;
+                    int colId = random.nextInt(NUM_COLS);
+                    buffered.putIntField(rowId, colId, buffered.getIntField(rowId, colId) + 1);
+                }
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            for (int i = 0; i < 50; i++) {
+                buffered.columnSum();
+                buffered.predicatedColumnSum(100, 900);
+                buffered.predicatedAllColumnsSum(500);
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        for (int w = 0; w < WRITERS; w++) {
+            Random random = new Random(w);
+            for (int i = 0; i < 20_000; i++) {
+                int rowId = random.nextInt(NUM_ROWS / WRITERS) * WRITERS + w;
+                int colId = random.nextInt(NUM_COLS);
+                expected.putIntField(rowId, colId, expected.getIntField(rowId, colId) + 1);
+            }
+        }
+        assertEquals(expected.columnSum(), buffered.columnSum());
+        assertEquals(expected.predicatedAllColumnsSum(-1), buffered.predicatedAllColumnsSum(-1));
+        for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+            for (int colId = 0; colId < NUM_COLS; colId++) {
+                assertEquals(expected.getIntField(rowId, colId), buffered.getIntField(rowId, colId));
+            }
+        }
+        buffered.close();
+    }
+
+    @Test
+    public void testFlushBeforeRead() throws Exception {
+        checkConcurrentWrites(BufferedWriteTable.Consistency.FLUSH_BEFORE_READ);
+    }
+
+    @Test
+    public void testReadYourWrites() throws Exception {
+        checkConcurrentWrites(BufferedWriteTable.Consistency.READ_YOUR_WRITES);
+    }
+
+    @Test
+    public void testRepeatedWritesKeepOrder() throws Exception {
+        DataLoader dl = new RandomizedLoader(0, 100, 4);
+        BufferedWriteTable buffered =
+                new BufferedWriteTable(new RowTable(), BufferedWriteTable.Consistency.READ_YOUR_WRITES, 64);
+        buffered.load(dl);
+        for (int i = 0; i < 1000; i++) {
+            buffered.putIntField(7, 2, i);
+            buffered.putIntField(99 - i % 100, i % 4, -i);
+            assertEquals(i, buffered.getIntField(7, 2));
+        }
+        buffered.flushWrites();
+        assertEquals(0, buffered.getPendingWrites());
+        assertEquals(999, buffered.getIntField(7, 2));
+        assertEquals(-999, buffered.getIntField(0, 3));
+        buffered.close();
+    }
+
+    @Test
+    public void testIdleApplierWakesUp() throws Exception {
+        DataLoader dl = new RandomizedLoader(0, 100, 4);
+        BufferedWriteTable buffered =
+                new BufferedWriteTable(new RowTable(), BufferedWriteTable.Consistency.READ_YOUR_WRITES);
+        buffered.load(dl);
+        for (int i = 0; i < 10; i++) {
+            // Give the applier time to park on the empty ring.
+            Thread.sleep(20);
+            buffered.putIntField(i, 1, -i);
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (buffered.getPendingWrites() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(0, buffered.getPendingWrites());
+        }
+        buffered.close();
+    }
+
+    @Test
+    public void testWritesRacingClose() throws Exception {
+        DataLoader dl = new RandomizedLoader(0, 100_000, WRITERS);
+        // Keeps its data readable after the buffered table is closed.
+        RowTable table = new RowTable() {
+            @Override
+            public void close() { }
+        };
+        BufferedWriteTable buffered =
+                new BufferedWriteTable(table, BufferedWriteTable.Consistency.FLUSH_BEFORE_READ, 1024);
+        buffered.load(dl);
+
+        // Each writer writes -1, -2, ... down its own column until the
+        // table is closed; every write that did not throw must be applied.
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int colId = w;
+            futures.add(pool.submit(() -> {
+                int rowId = 0;
+                try {
+                    for (; rowId < 100_000; rowId++) {
+                        buffered.putIntField(rowId, colId, -rowId - 1);
+                    }
+                } catch (IllegalStateException e) {
+                    // Closed.
+                }
+                return rowId;
+            }));
+        }
+        Thread.sleep(5);
+        buffered.close();
+        for (int colId = 0; colId < WRITERS; colId++) {
+            int written = futures.get(colId).get();
+            for (int rowId = 0; rowId < written; rowId++) {
+                assertEquals(-rowId - 1, table.getIntField(rowId, colId));
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadCapacity() {
+        new BufferedWriteTable(new ColumnTable(), BufferedWriteTable.Consistency.FLUSH_BEFORE_READ, 1000);
+    }
+}
@@ -1,23 +1,36 @@
 package memstore.table;
 
 import memstore.data.CSVLoader;
+import memstore.data.RowBatch;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Tests the correctness of the CSV loader.
  */
 public class CSVLoaderTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     @Test
     public void test() throws IOException {
         CSVLoader loader = new CSVLoader(
                 "src/main/resources/test.csv", 5
         );
+        assertTrue(loader.isMapped());
         List<ByteBuffer> rowBuffers = loader.getRows();
         ByteBuffer firstRow = rowBuffers.get(0);
         int[] expectedFirstRow = {0, 2, 2, 3, 4};
@@ -26,4 +39,91 @@ public class CSVLoaderTest {
         }
     }
 
-}
\ No newline at end of file
+    private String write(String contents) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), contents.getBytes(StandardCharsets.US_ASCII));
+        return file.getPath();
+    }
+
+    /**
+     * Writes `fields` as a CSV with the given line ending, plus an extra
+     * column and some empty lines.
+     */
+    private String writeRows(int[][] fields, String newline) throws IOException {
+        StringBuilder sb = new StringBuilder(newline);
+        for (int[] row : fields) {
+            for (int field : row) {
+                sb.append(field).append(',');
+            }
+            sb.append("99").append(newline);
+            if (row[0] % 7 == 0) {
+                sb.append(newline);
+            }
+        }
+        sb.setLength(sb.length() - newline.length());
+        return write(sb.toString());
+    }
+
+    private static void checkRows(int[][] expected, CSVLoader loader) throws IOException {
+        assertEquals(expected.length, loader.getRows().size());
+        List<ByteBuffer> rows = loader.getRows();
+        for (int rowId = 0; rowId < expected.length; rowId++) {
+            for (int colId = 0; colId < expected[rowId].length; colId++) {
+                assertEquals(expected[rowId][colId], rows.get(rowId).getInt(4 * colId));
+            }
+        }
+    }
+
+    @Test
+    public void testMappedMatchesCommonsCsv() throws IOException {
+        Random random = new Random(0);
+        int[][] fields = new int[3 * RowBatch.DEFAULT_ROWS + 5][4];
+        for (int[] row : fields) {
+            for (int colId = 0; colId < row.length; colId++) {
+                row[colId] = random.nextInt();
+            }
+        }
+        fields[0][1] = Integer.MIN_VALUE;
+        fields[1][2] = Integer.MAX_VALUE;
+
+        for (String newline : new String[]{"\n", "\r\n"}) {
+            String path = writeRows(fields, newline);
+            for (int parallelism : new int[]{1, 3, 8}) {
+                CSVLoader loader = new CSVLoader(path, 4, parallelism);
+                assertTrue(loader.isMapped());
+                assertEquals(fields.length, loader.getNumRows());
+                checkRows(fields, loader);
+
+                RowTable table = new RowTable();
+                table.load(loader);
+                for (int rowId = 0; rowId < fields.length; rowId++) {
+                    for (int colId = 0; colId < 4; colId++) {
+                        assertEquals(fields[rowId][colId], table.getIntField(rowId, colId));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testFallsBackOnQuotedFields() throws IOException {
+        CSVLoader loader = new CSVLoader(write("1,\"2\",3\n4,5,\"6\"\n"), 3);
+        assertFalse(loader.isMapped());
+        assertEquals(-1, loader.getNumRows());
+        checkRows(new int[][]{{1, 2, 3}, {4, 5, 6}}, loader);
+
+        ColumnTable table = new ColumnTable();
+        table.load(loader);
+        assertEquals(5, table.getIntField(1, 1));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testOverflow() throws IOException {
+        new CSVLoader(write("1,2\n3,2147483648\n"), 2).getRows();
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testMisplacedMinus() throws IOException {
+        new CSVLoader(write("1,2-3\n"), 2).getRows();
+    }
+}
@@ -0,0 +1,30 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that the batched and scalar ColumnTable scan kernels agree, on a
+ * table whose size is not a multiple of the batch size.
+ */
+public class ColumnKernelsTest {
+    @Test
+    public void testBatchedMatchesScalar() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 5000, 6);
+        ColumnTable batched = new ColumnTable(true);
+        ColumnTable scalar = new ColumnTable(false);
+        batched.load(dl);
+        scalar.load(dl);
+
+        assertEquals(scalar.columnSum(), batched.columnSum());
+        assertEquals(scalar.predicatedColumnSum(500, 300), batched.predicatedColumnSum(500, 300));
+        assertEquals(scalar.predicatedAllColumnsSum(700), batched.predicatedAllColumnsSum(700));
+        assertEquals(scalar.predicatedUpdate(400), batched.predicatedUpdate(400));
+        assertEquals(scalar.predicatedAllColumnsSum(-1), batched.predicatedAllColumnsSum(-1));
+    }
+}
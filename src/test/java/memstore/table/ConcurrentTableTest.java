@@ -0,0 +1,96 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that a ConcurrentTable shared by writer and query threads ends up
+ * with the same data as a table that applied the same writes on one thread.
+ */
+public class ConcurrentTableTest {
+    private static final int NUM_ROWS = 20_000;
+    private static final int NUM_COLS = 5;
+    private static final int WRITERS = 4;
+
+    private void checkConcurrentWrites(Table table, boolean rowLocal) throws Exception {
+        DataLoader dl = new RandomizedLoader(0, NUM_ROWS, NUM_COLS);
+        ColumnTable expected = new ColumnTable();
+        expected.load(dl);
+        ConcurrentTable shared = new ConcurrentTable(table, 8, 256, rowLocal);
+        shared.load(dl);
+
+        // Each writer owns the rows congruent to its id, so the final value
+        // of every field does not depend on how the threads interleave.
+        ExecutorService pool = Executors.newFixedThreadPool(WRITERS + 1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int w = 0; w < WRITERS; w++) {
+            int writer = w;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(writer);
+                for (int i = 0; i < 20_000; i++) {
+                    int rowId = random.nextInt(NUM_ROWS / WRITERS) * WRITERS + writer;
+                    int colId = random.nextInt(NUM_COLS);
+                    shared.putIntField(rowId, colId, shared.getIntField(rowId, colId) + 1);
+                }
+            }));
+        }
+        futures.add(pool.submit(() -> {
+            for (int i = 0; i < 50; i++) {
+                shared.columnSum();
+                shared.predicatedColumnSum(100, 900);
+                shared.predicatedAllColumnsSum(500);
+            }
+        }));
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        for (int w = 0; w < WRITERS; w++) {
+            Random random = new Random(w);
+            for (int i = 0; i < 20_000; i++) {
+                int rowId = random.nextInt(NUM_ROWS / WRITERS) * WRITERS + w;
+                int colId = random.nextInt(NUM_COLS);
+                expected.putIntField(rowId, colId, expected.getIntField(rowId, colId) + 1);
+            }
+        }
+        assertEquals(expected.columnSum(), shared.columnSum());
+        assertEquals(expected.predicatedAllColumnsSum(-1), shared.predicatedAllColumnsSum(-1));
+        for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+            for (int colId = 0; colId < NUM_COLS; colId++) {
+                assertEquals(expected.getIntField(rowId, colId), shared.getIntField(rowId, colId));
+            }
+        }
+    }
+
+    @Test
+    public void testStripedColumnTable() throws Exception {
+        checkConcurrentWrites(new ColumnTable(), true);
+    }
+
+    @Test
+    public void testStripedRowTable() throws Exception {
+        checkConcurrentWrites(new RowTable(), true);
+    }
+
+    @Test
+    public void testSerializedIndexedRowTable() throws Exception {
+        checkConcurrentWrites(new IndexedRowTable(0), false);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testBadStriping() throws IOException {
+        new ConcurrentTable(new ColumnTable(), 0, 256, true);
+    }
+}
@@ -2,12 +2,18 @@ package memstore.table;
 
 import memstore.data.CSVLoader;
 import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Random;
 
 import static org.junit.Assert.*;
 
+/**
+ * Tests the CustomTable queries, and that it moves to a better layout for
+ * workloads that clearly favor one, keeping its data intact.
+ */
 public class CustomTableTest {
     DataLoader dl;
 
@@ -29,4 +35,115 @@ public class CustomTableTest {
         assertEquals(9, ct.predicatedUpdate(3));
         assertEquals(375, ct.predicatedAllColumnsSum(-1));
     }
-}
\ No newline at end of file
+
+    private static void assertSameFields(Table expected, Table actual, int numRows, int numCols) {
+        for (int rowId = 0; rowId < numRows; rowId++) {
+            for (int colId = 0; colId < numCols; colId++) {
+                assertEquals(expected.getIntField(rowId, colId), actual.getIntField(rowId, colId));
+            }
+        }
+    }
+
+    @Test
+    public void testSelectiveScansMoveToIndex() throws IOException {
+        DataLoader loader = new RandomizedLoader(0, 20_000, 5);
+        ColumnTable reference = new ColumnTable();
+        CustomTable table = new CustomTable();
+        reference.load(loader);
+        table.load(loader);
+        Random random = new Random(1);
+        for (int i = 0; i < 4 * CustomTable.DECISION_QUERIES; i++) {
+            int threshold = 1000 + random.nextInt(20);
+            assertEquals(reference.predicatedAllColumnsSum(threshold), table.predicatedAllColumnsSum(threshold));
+            // Writes while a copy may be in progress.
+            for (int j = 0; j < 5; j++) {
+                int rowId = random.nextInt(20_000);
+                int colId = random.nextInt(5);
+                int field = random.nextInt(1024);
+                reference.putIntField(rowId, colId, field);
+                table.putIntField(rowId, colId, field);
+            }
+            assertEquals(reference.predicatedUpdate(threshold - 990), table.predicatedUpdate(threshold - 990));
+        }
+        WorkloadStats stats = table.getStats();
+        assertEquals(4 * CustomTable.DECISION_QUERIES,
+                stats.getCalls(WorkloadStats.QueryKind.PREDICATED_ALL_COLUMNS_SUM));
+        assertEquals(0.01, stats.getMeanSelectivity(WorkloadStats.QueryKind.PREDICATED_ALL_COLUMNS_SUM), 0.01);
+        assertEquals(8 * CustomTable.DECISION_QUERIES, stats.getPredicateTouches(0));
+        assertEquals(4 * CustomTable.DECISION_QUERIES, stats.getColumnTouches(4));
+
+        table.awaitMigration();
+        assertEquals(TableLayout.INDEXED, table.getLayout());
+        assertEquals(0, table.getIndexColumn());
+        assertEquals(reference.columnSum(), table.columnSum());
+        assertEquals(reference.predicatedAllColumnsSum(1010), table.predicatedAllColumnsSum(1010));
+        assertSameFields(reference, table, 20_000, 5);
+    }
+
+    @Test
+    public void testRowAtATimeAccessMovesToRows() throws IOException {
+        DataLoader loader = new RandomizedLoader(0, 20_000, 5);
+        ColumnTable reference = new ColumnTable();
+        CustomTable table = new CustomTable();
+        reference.load(loader);
+        table.load(loader);
+        Random random = new Random(1);
+        for (int pass = 0; pass < 4; pass++) {
+            for (int rowId = 0; rowId < 20_000; rowId++) {
+                for (int colId = 0; colId < 5; colId++) {
+                    assertEquals(reference.getIntField(rowId, colId), table.getIntField(rowId, colId));
+                }
+                if (rowId % 100 == 0) {
+                    int field = random.nextInt(1024);
+                    reference.putIntField(rowId, 3, field);
+                    table.putIntField(rowId, 3, field);
+                }
+            }
+        }
+        table.awaitMigration();
+        assertEquals(TableLayout.ROW, table.getLayout());
+        assertEquals(reference.columnSum(), table.columnSum());
+        assertSameFields(reference, table, 20_000, 5);
+    }
+
+    @Test
+    public void testBenchmarkMixKeepsColumns() throws IOException {
+        checkBenchmarkMix(30_000, 5);
+        checkBenchmarkMix(3_000, 100);
+    }
+
+    /**
+     * Runs the mix of CustomTableBenchAbstract, which no layout serves much
+     * better than columns, and checks that the table never moves.
+     */
+    private static void checkBenchmarkMix(int numRows, int numCols) throws IOException {
+        DataLoader loader = new RandomizedLoader(0, numRows, numCols);
+        ColumnTable reference = new ColumnTable();
+        CustomTable table = new CustomTable();
+        reference.load(loader);
+        table.load(loader);
+        Random random = new Random(2);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(reference.columnSum(), table.columnSum());
+            int threshold = random.nextInt(1024);
+            assertEquals(reference.predicatedUpdate(threshold), table.predicatedUpdate(threshold));
+            int threshold1 = random.nextInt(1024);
+            int threshold2 = random.nextInt(1024);
+            assertEquals(reference.predicatedColumnSum(threshold1, threshold2),
+                    table.predicatedColumnSum(threshold1, threshold2));
+            if (i % 3 == 0) {
+                threshold = random.nextInt(1024);
+                assertEquals(reference.predicatedAllColumnsSum(threshold), table.predicatedAllColumnsSum(threshold));
+            }
+            for (int j = 0; j < 20; j++) {
+                int rowId = random.nextInt(numRows);
+                int field = random.nextInt(1024);
+                reference.putIntField(rowId, j % 5, field);
+                table.putIntField(rowId, j % 5, field);
+            }
+            assertFalse(table.isMigrating());
+        }
+        assertEquals(TableLayout.COLUMN, table.getLayout());
+        assertEquals(100, table.getStats().getCalls(WorkloadStats.QueryKind.PREDICATED_UPDATE));
+    }
+}
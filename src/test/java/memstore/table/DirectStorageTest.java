@@ -0,0 +1,43 @@
+package memstore.table;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests DirectStorage accesses that span chunk boundaries, and that the
+ * storage cannot be read once it has been freed.
+ */
+public class DirectStorageTest {
+    @Test
+    public void testChunkBoundaries() {
+        // 16 fields per chunk, last chunk partially filled.
+        DirectStorage storage = new DirectStorage(100, 4);
+        int[] values = new int[100];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i * 7;
+        }
+        storage.put(0, values, 0, values.length);
+        assertEquals(100, storage.size());
+        assertEquals(7 * 33, storage.get(33));
+
+        int[] slice = new int[40];
+        storage.get(10, slice, 0, slice.length);
+        int[] expected = new int[40];
+        System.arraycopy(values, 10, expected, 0, expected.length);
+        assertArrayEquals(expected, slice);
+
+        storage.put(99, -1);
+        assertEquals(-1, storage.get(99));
+        storage.close();
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testAccessAfterClose() {
+        DirectStorage storage = new DirectStorage(10);
+        storage.put(3, 1);
+        storage.close();
+        storage.get(3);
+    }
+}
@@ -0,0 +1,163 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that maintained column sums, dominance sums and keyed row sums stay
+ * equal to scanned sums through point writes and predicated updates.
+ */
+public class MaintainedAggregatesTest {
+    @Test
+    public void testColumnSums() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 10_000, 5);
+        ColumnTable scanned = new ColumnTable();
+        ColumnTable ct = new ColumnTable();
+        RowTable rt = new RowTable();
+        scanned.load(dl);
+        ct.setMaintainColumnSum(true);
+        ct.load(dl);
+        rt.load(dl);
+        rt.setMaintainColumnSum(true);
+        MaintainedAggregates.ColumnSum ctCol3 =
+                ct.getAggregates().register(new MaintainedAggregates.ColumnSum(3));
+        MaintainedAggregates.ColumnSum rtCol3 =
+                rt.getAggregates().register(new MaintainedAggregates.ColumnSum(3));
+
+        Random random = new Random(0);
+        for (int i = 0; i < 50; i++) {
+            int threshold = random.nextInt(1024);
+            assertEquals(scanned.predicatedUpdate(threshold), ct.predicatedUpdate(threshold));
+            assertEquals(scanned.predicatedUpdate(threshold), rt.predicatedUpdate(threshold));
+            for (int j = 0; j < 20; j++) {
+                int rowId = random.nextInt(10_000);
+                int colId = j % 5;
+                int field = random.nextInt(1024);
+                scanned.putIntField(rowId, colId, field);
+                ct.putIntField(rowId, colId, field);
+                rt.putIntField(rowId, colId, field);
+            }
+            long col3Sum = 0;
+            for (int rowId = 0; rowId < 10_000; rowId++) {
+                col3Sum += scanned.getIntField(rowId, 3);
+            }
+            assertEquals(scanned.columnSum(), ct.columnSum());
+            assertEquals(scanned.columnSum(), rt.columnSum());
+            assertEquals(col3Sum, ctCol3.get());
+            assertEquals(col3Sum, rtCol3.get());
+        }
+    }
+
+    @Test
+    public void testPredicatedColumnSums() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 10_000, 4);
+        ColumnTable scanned = new ColumnTable();
+        ColumnTable ct = new ColumnTable();
+        RowTable rt = new RowTable();
+        scanned.load(dl);
+        ct.setMaintainPredicatedColumnSum(true);
+        ct.load(dl);
+        rt.load(dl);
+        rt.setMaintainPredicatedColumnSum(true);
+        assertTrue(ct.predicatedSum.isAvailable());
+
+        Random random = new Random(0);
+        Query widen = Query.update(1, Expression.sum(2)).where(Predicate.lt(0, 10));
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 20; j++) {
+                int rowId = random.nextInt(10_000);
+                int colId = random.nextInt(4);
+                // Some writes fall outside the domains the trees were built over.
+                int field = j == 0 ? random.nextInt(2048) - 512 : random.nextInt(1024);
+                scanned.putIntField(rowId, colId, field);
+                ct.putIntField(rowId, colId, field);
+                rt.putIntField(rowId, colId, field);
+            }
+            if (i % 10 == 0) {
+                assertEquals(scanned.update(widen), ct.update(widen));
+                assertEquals(scanned.update(widen), rt.update(widen));
+            }
+            for (int j = 0; j < 10; j++) {
+                int t1 = random.nextInt(2400) - 600;
+                int t2 = random.nextInt(2400) - 600;
+                long expected = scanned.predicatedColumnSum(t1, t2);
+                assertEquals(expected, ct.predicatedColumnSum(t1, t2));
+                assertEquals(expected, rt.predicatedColumnSum(t1, t2));
+            }
+        }
+
+        // Domains too large for a tree fall back to scanning.
+        scanned.putIntField(0, 1, Integer.MAX_VALUE);
+        ct.putIntField(0, 1, Integer.MAX_VALUE);
+        assertFalse(ct.predicatedSum.isAvailable());
+        assertEquals(scanned.predicatedColumnSum(100, 900), ct.predicatedColumnSum(100, 900));
+
+        // Point writes do not retry the build, even once the domains would fit...
+        scanned.putIntField(0, 1, 5);
+        ct.putIntField(0, 1, 5);
+        assertFalse(ct.predicatedSum.isAvailable());
+        assertEquals(scanned.predicatedColumnSum(100, 900), ct.predicatedColumnSum(100, 900));
+        // ...but a bulk write does, for the query after the one that follows it.
+        assertEquals(scanned.update(widen), ct.update(widen));
+        assertFalse(ct.predicatedSum.isAvailable());
+        assertTrue(ct.predicatedSum.isAvailable());
+        assertEquals(scanned.predicatedColumnSum(100, 900), ct.predicatedColumnSum(100, 900));
+    }
+
+    @Test
+    public void testPredicatedAllColumnsSums() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 10_000, 6);
+        ColumnTable scanned = new ColumnTable();
+        ColumnTable ct = new ColumnTable();
+        RowTable rt = new RowTable();
+        scanned.load(dl);
+        ct.setMaintainPredicatedAllColumnsSum(true);
+        ct.load(dl);
+        rt.load(dl);
+        rt.setMaintainPredicatedAllColumnsSum(true);
+        assertTrue(ct.rowSums.isAvailable());
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 20; j++) {
+                int rowId = random.nextInt(10_000);
+                int colId = j % 3 == 0 ? 0 : random.nextInt(6);
+                // Some writes to col0 fall outside the domain the trees were built over.
+                int field = j == 0 ? random.nextInt(2048) - 512 : random.nextInt(1024);
+                scanned.putIntField(rowId, colId, field);
+                ct.putIntField(rowId, colId, field);
+                rt.putIntField(rowId, colId, field);
+            }
+            if (i % 10 == 0) {
+                assertTrue(ct.rowSums.isAvailable());
+                assertTrue(rt.rowSums.isAvailable());
+                int threshold = random.nextInt(1024);
+                assertEquals(scanned.predicatedUpdate(threshold), ct.predicatedUpdate(threshold));
+                assertEquals(scanned.predicatedUpdate(threshold), rt.predicatedUpdate(threshold));
+                // The updates' changes were summed by key into the trees.
+                assertTrue(ct.rowSums.isAvailable());
+                assertTrue(rt.rowSums.isAvailable());
+            }
+            for (int j = 0; j < 10; j++) {
+                int threshold = random.nextInt(2400) - 600;
+                long expected = scanned.predicatedAllColumnsSum(threshold);
+                assertEquals(expected, ct.predicatedAllColumnsSum(threshold));
+                assertEquals(expected, rt.predicatedAllColumnsSum(threshold));
+            }
+        }
+
+        // Domains too large for a tree fall back to scanning.
+        scanned.putIntField(0, 0, Integer.MIN_VALUE);
+        ct.putIntField(0, 0, Integer.MIN_VALUE);
+        assertFalse(ct.rowSums.isAvailable());
+        assertEquals(scanned.predicatedAllColumnsSum(100), ct.predicatedAllColumnsSum(100));
+    }
+}
@@ -0,0 +1,107 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the bit-packed PackedColumnTable, including columns that have to be
+ * widened by writes outside their loaded range, with and without a delta
+ * store in front of the columns.
+ */
+public class PackedColumnTableTest {
+    @Test
+    public void testQueries() throws IOException {
+        DataLoader dl = new CSVLoader("src/main/resources/test.csv", 5);
+        PackedColumnTable pt = new PackedColumnTable();
+        pt.load(dl);
+        assertEquals(4, pt.getColumnWidth(0));
+        assertEquals(68, pt.columnSum());
+        assertEquals(166, pt.predicatedAllColumnsSum(3));
+        assertEquals(342, pt.predicatedAllColumnsSum(-1));
+        assertEquals(49, pt.predicatedColumnSum(3, 5));
+        assertEquals(9, pt.predicatedUpdate(3));
+        assertEquals(375, pt.predicatedAllColumnsSum(-1));
+    }
+
+    @Test
+    public void testMatchesColumnTable() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 20_000, 6);
+        ColumnTable ct = new ColumnTable();
+        PackedColumnTable pt = new PackedColumnTable();
+        ct.load(dl);
+        pt.load(dl);
+        assertEquals(10, pt.getColumnWidth(0));
+
+        Random random = new Random(1);
+        int[] widening = {-5, 5000, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int i = 0; i < 200; i++) {
+            int t1 = random.nextInt(1024);
+            int t2 = random.nextInt(1024);
+            assertEquals(ct.columnSum(), pt.columnSum());
+            assertEquals(ct.predicatedColumnSum(t1, t2), pt.predicatedColumnSum(t1, t2));
+            assertEquals(ct.predicatedAllColumnsSum(t1), pt.predicatedAllColumnsSum(t1));
+            assertEquals(ct.predicatedUpdate(t2), pt.predicatedUpdate(t2));
+
+            int rowId = random.nextInt(20_000);
+            int colId = random.nextInt(6);
+            int field = i % 50 == 0 ? widening[(i / 50) % widening.length] : random.nextInt(1024);
+            ct.putIntField(rowId, colId, field);
+            pt.putIntField(rowId, colId, field);
+            assertEquals(field, pt.getIntField(rowId, colId));
+        }
+        assertEquals(32, pt.getColumnWidth(3));
+    }
+
+    @Test
+    public void testDeltaStore() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 20_000, 6);
+        ColumnTable ct = new ColumnTable();
+        PackedColumnTable pt = new PackedColumnTable();
+        pt.setDeltaThreshold(100);
+        ct.load(dl);
+        pt.load(dl);
+
+        // Buffered writes leave the columns packed as they are.
+        ct.putIntField(7, 0, Integer.MAX_VALUE);
+        pt.putIntField(7, 0, Integer.MAX_VALUE);
+        assertEquals(10, pt.getColumnWidth(0));
+        assertEquals(1, pt.getDeltaSize());
+        assertEquals(Integer.MAX_VALUE, pt.getIntField(7, 0));
+        assertEquals(ct.columnSum(), pt.columnSum());
+
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            int t1 = random.nextInt(1024);
+            int t2 = random.nextInt(1024);
+            assertEquals(ct.columnSum(), pt.columnSum());
+            assertEquals(ct.predicatedColumnSum(t1, t2), pt.predicatedColumnSum(t1, t2));
+            assertEquals(ct.predicatedAllColumnsSum(t1), pt.predicatedAllColumnsSum(t1));
+            assertEquals(ct.predicatedUpdate(t2), pt.predicatedUpdate(t2));
+            for (int j = 0; j < 3; j++) {
+                int rowId = random.nextInt(20_000);
+                int colId = random.nextInt(6);
+                int field = random.nextInt(2048) - 512;
+                ct.putIntField(rowId, colId, field);
+                pt.putIntField(rowId, colId, field);
+            }
+            assertTrue(pt.getDeltaSize() <= 100 + 100);
+        }
+
+        pt.setDeltaThreshold(0);
+        assertEquals(0, pt.getDeltaSize());
+        assertTrue(pt.getColumnWidth(0) > 32);
+        for (int rowId = 0; rowId < 20_000; rowId++) {
+            for (int colId = 0; colId < 6; colId++) {
+                assertEquals(ct.getIntField(rowId, colId), pt.getIntField(rowId, colId));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests that queries return the same results with parallelism enabled as
+ * on a single thread, on tables large enough to be split into many morsels.
+ */
+public class ParallelQueryTest {
+    DataLoader dl;
+
+    public ParallelQueryTest() {
+        dl = new RandomizedLoader(0, 300_000, 5);
+    }
+
+    private void checkQueries(Table serial, Table parallel) {
+        assertEquals(serial.columnSum(), parallel.columnSum());
+        assertEquals(serial.predicatedColumnSum(500, 300), parallel.predicatedColumnSum(500, 300));
+        assertEquals(serial.predicatedAllColumnsSum(700), parallel.predicatedAllColumnsSum(700));
+        assertEquals(serial.predicatedUpdate(400), parallel.predicatedUpdate(400));
+        assertEquals(serial.predicatedAllColumnsSum(-1), parallel.predicatedAllColumnsSum(-1));
+    }
+
+    @Test
+    public void testRowTable() throws IOException {
+        RowTable serial = new RowTable();
+        RowTable parallel = new RowTable();
+        serial.load(dl);
+        parallel.load(dl);
+        parallel.setParallelism(4);
+        checkQueries(serial, parallel);
+    }
+
+    @Test
+    public void testColumnTable() throws IOException {
+        ColumnTable serial = new ColumnTable();
+        ColumnTable parallel = new ColumnTable();
+        serial.load(dl);
+        parallel.load(dl);
+        parallel.setParallelism(4);
+        checkQueries(serial, parallel);
+    }
+
+    @Test
+    public void testIndexedTable() throws IOException {
+        for (int indexColumn = 0; indexColumn < 4; indexColumn++) {
+            IndexedRowTable serial = new IndexedRowTable(indexColumn);
+            IndexedRowTable parallel = new IndexedRowTable(indexColumn);
+            serial.load(dl);
+            parallel.load(dl);
+            parallel.setParallelism(4);
+            checkQueries(serial, parallel);
+        }
+    }
+
+    @Test
+    public void testCustomTable() throws IOException {
+        CustomTable serial = new CustomTable();
+        CustomTable parallel = new CustomTable();
+        serial.load(dl);
+        parallel.load(dl);
+        parallel.setParallelism(4);
+        checkQueries(serial, parallel);
+    }
+
+    /**
+     * Tests that a failing scan only returns once no morsel is running, and
+     * that it stops the other workers from claiming more morsels.
+     */
+    @Test
+    public void testFailureStopsScan() throws InterruptedException {
+        AtomicInteger morsels = new AtomicInteger();
+        try {
+            ParallelScan.sum(1000 * 64, 64, 4, (from, to) -> {
+                if (from == 0) {
+                    throw new IllegalStateException("morsel 0");
+                }
+                morsels.incrementAndGet();
+                return 0;
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // Rethrown as is from the calling thread, or wrapped from a worker.
+            assertTrue(String.valueOf(e), String.valueOf(e).contains("morsel 0"));
+        }
+        int seen = morsels.get();
+        Thread.sleep(50);
+        assertEquals(seen, morsels.get());
+        assertTrue(seen < 999);
+    }
+}
@@ -0,0 +1,84 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the paged PaxTable, with and without column groups, including
+ * partly filled last pages.
+ */
+public class PaxTableTest {
+    @Test
+    public void testQueries() throws IOException {
+        DataLoader dl = new CSVLoader("src/main/resources/test.csv", 5);
+        PaxTable pt = new PaxTable(4, new int[]{3, 1, 2});
+        pt.load(dl);
+        assertEquals(8, pt.getIntField(4, 0));
+        assertEquals(68, pt.columnSum());
+        assertEquals(166, pt.predicatedAllColumnsSum(3));
+        assertEquals(342, pt.predicatedAllColumnsSum(-1));
+        assertEquals(49, pt.predicatedColumnSum(3, 5));
+        assertEquals(9, pt.predicatedUpdate(3));
+        assertEquals(375, pt.predicatedAllColumnsSum(-1));
+    }
+
+    @Test
+    public void testDefaultPageRows() throws IOException {
+        PaxTable narrow = new PaxTable();
+        narrow.load(new RandomizedLoader(0, 100, 4));
+        assertEquals(PaxTable.DEFAULT_PAGE_BYTES / 16, narrow.getPageRows());
+        PaxTable wide = new PaxTable();
+        wide.load(new RandomizedLoader(0, 100, 100));
+        assertEquals(64, wide.getPageRows());
+        PaxTable veryWide = new PaxTable();
+        veryWide.load(new RandomizedLoader(0, 100, 1000));
+        assertEquals(PaxTable.MIN_PAGE_ROWS, veryWide.getPageRows());
+    }
+
+    @Test
+    public void testMatchesColumnTable() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 10_007, 6);
+        ColumnTable ct = new ColumnTable();
+        PaxTable pt = new PaxTable(64, new int[]{0, 3}, new int[]{2, 4, 1});
+        ct.load(dl);
+        pt.load(dl);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            int t1 = random.nextInt(1024);
+            int t2 = random.nextInt(1024);
+            assertEquals(ct.columnSum(), pt.columnSum());
+            assertEquals(ct.predicatedColumnSum(t1, t2), pt.predicatedColumnSum(t1, t2));
+            assertEquals(ct.predicatedAllColumnsSum(t1), pt.predicatedAllColumnsSum(t1));
+            assertEquals(ct.predicatedUpdate(t2), pt.predicatedUpdate(t2));
+
+            int rowId = random.nextInt(10_007);
+            int colId = random.nextInt(6);
+            int field = random.nextInt(1024);
+            ct.putIntField(rowId, colId, field);
+            pt.putIntField(rowId, colId, field);
+        }
+        for (int rowId = 0; rowId < 10_007; rowId++) {
+            for (int colId = 0; colId < 6; colId++) {
+                assertEquals(ct.getIntField(rowId, colId), pt.getIntField(rowId, colId));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPageRowsNotPowerOfTwo() {
+        new PaxTable(100);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testColumnInTwoGroups() throws IOException {
+        new PaxTable(16, new int[]{0, 1}, new int[]{1, 2}).load(new RandomizedLoader(0, 100, 4));
+    }
+}
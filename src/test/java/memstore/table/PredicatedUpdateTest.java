@@ -2,9 +2,11 @@ package memstore.table;
 
 import memstore.data.CSVLoader;
 import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
 
@@ -42,4 +44,47 @@ public class PredicatedUpdateTest {
         it.load(dl);
         assertEquals(9, it.predicatedUpdate(3));
     }
+
+    @Test
+    public void testLazyColumnTable() throws IOException {
+        ColumnTable ct = new ColumnTable();
+        ct.setLazyUpdateBlockRows(4);
+        ct.load(dl);
+        assertEquals(9, ct.predicatedUpdate(3));
+        assertEquals(9, ct.predicatedUpdate(3));
+        assertEquals(375, ct.predicatedAllColumnsSum(-1));
+    }
+
+    @Test
+    public void testLazyMatchesEager() throws IOException {
+        DataLoader random = new RandomizedLoader(0, 10_000, 5);
+        ColumnTable eager = new ColumnTable();
+        ColumnTable lazy = new ColumnTable();
+        eager.load(random);
+        lazy.load(random);
+        lazy.setLazyUpdateBlockRows(1000);
+
+        Random r = new Random(0);
+        for (int i = 0; i < 300; i++) {
+            int threshold = r.nextInt(1100) - 50;
+            assertEquals(eager.predicatedUpdate(threshold), lazy.predicatedUpdate(threshold));
+            for (int j = 0; j < 5; j++) {
+                int rowId = r.nextInt(10_000);
+                int colId = r.nextInt(5);
+                assertEquals(eager.getIntField(rowId, colId), lazy.getIntField(rowId, colId));
+                int field = r.nextInt(1024);
+                eager.putIntField(rowId, colId, field);
+                lazy.putIntField(rowId, colId, field);
+            }
+            if (i % 20 == 0) {
+                assertEquals(eager.predicatedAllColumnsSum(threshold), lazy.predicatedAllColumnsSum(threshold));
+            }
+            assertEquals(eager.predicatedColumnSum(threshold, 500), lazy.predicatedColumnSum(threshold, 500));
+        }
+        for (int rowId = 0; rowId < 10_000; rowId++) {
+            for (int colId = 0; colId < 5; colId++) {
+                assertEquals(eager.getIntField(rowId, colId), lazy.getIntField(rowId, colId));
+            }
+        }
+    }
 }
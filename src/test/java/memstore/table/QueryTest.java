@@ -0,0 +1,207 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests general SELECT and UPDATE queries on every table against a naive
+ * evaluation over a reference ColumnTable.
+ */
+public class QueryTest {
+    private static final int NUM_ROWS = 70_000;
+    private static final int NUM_COLS = 6;
+
+    DataLoader dl;
+
+    public QueryTest() {
+        dl = new RandomizedLoader(0, NUM_ROWS, NUM_COLS);
+    }
+
+    private static final Query[] SELECTS = {
+            Query.select(Aggregation.sum(0), Aggregation.count()),
+            Query.select(Aggregation.min(2), Aggregation.max(2), Aggregation.count())
+                    .where(Predicate.between(1, 100, 200), Predicate.ge(4, 512)),
+            Query.select(Aggregation.sum(1, 3, 5), Aggregation.min(0, 5))
+                    .where(Predicate.lt(5, 10)),
+            Query.select(Aggregation.sum(0), Aggregation.min(0), Aggregation.max(0))
+                    .where(Predicate.gt(0, 300), Predicate.le(0, 600), Predicate.gt(0, 400)),
+            Query.select(Aggregation.count(), Aggregation.min(1), Aggregation.max(1))
+                    .where(Predicate.gt(3, Integer.MAX_VALUE)),
+            Query.select(Aggregation.count()).where(Predicate.eq(2, 17)),
+            Query.select(Aggregation.sum(0, 2, 5)),
+            Query.select(Aggregation.sum(1, 2, 3, 4)).where(Predicate.gt(0, 500)),
+            Query.select(Aggregation.sum(4)).where(Predicate.gt(1, 300), Predicate.lt(2, 700)),
+            Query.select(Aggregation.sum(0, 1))
+                    .where(Predicate.ge(1, 100), Predicate.le(3, 900), Predicate.lt(5, 800)),
+    };
+
+    private static final Query[] UPDATES = {
+            Query.update(3, Expression.sum(1, 2)).where(Predicate.lt(0, 400)),
+            Query.update(0, Expression.column(0).plus(7)).where(Predicate.between(0, 10, 20)),
+            Query.update(5, Expression.constant(-3)).where(Predicate.gt(4, 1000), Predicate.lt(2, 50)),
+            Query.update(2, Expression.sum(2, 2, 4).plus(Integer.MAX_VALUE)),
+            Query.update(4, Expression.sum(0, 5).plus(11)).where(Predicate.ge(1, 600)),
+    };
+
+    private static long[] naiveSelect(Table table, Query query) {
+        long[] result = new long[query.aggregations.length];
+        for (int a = 0; a < result.length; a++) {
+            result[a] = query.aggregations[a].identity();
+        }
+        for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+            if (!naiveMatches(table, query, rowId)) {
+                continue;
+            }
+            for (int a = 0; a < result.length; a++) {
+                Aggregation aggregation = query.aggregations[a];
+                if (aggregation.function == Aggregation.Function.COUNT) {
+                    result[a]++;
+                }
+                for (int colId : aggregation.colIds) {
+                    result[a] = aggregation.combine(result[a], table.getIntField(rowId, colId));
+                }
+            }
+        }
+        return result;
+    }
+
+    private static int naiveUpdate(Table table, Query query) {
+        int count = 0;
+        for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+            if (naiveMatches(table, query, rowId)) {
+                int value = query.expression.constant;
+                for (int colId : query.expression.colIds) {
+                    value += table.getIntField(rowId, colId);
+                }
+                table.putIntField(rowId, query.updateColumn, value);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean naiveMatches(Table table, Query query, int rowId) {
+        for (Predicate p : query.predicates) {
+            int value = table.getIntField(rowId, p.colId);
+            if (value < p.lo || value > p.hi) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void checkQueries(Table table) throws IOException {
+        ColumnTable reference = new ColumnTable();
+        reference.load(dl);
+        table.load(dl);
+        for (Query update : UPDATES) {
+            for (Query select : SELECTS) {
+                assertArrayEquals(select.toString(), naiveSelect(reference, select), table.select(select));
+            }
+            assertEquals(update.toString(), naiveUpdate(reference, update), table.update(update));
+        }
+        for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+            for (int colId = 0; colId < NUM_COLS; colId++) {
+                assertEquals(reference.getIntField(rowId, colId), table.getIntField(rowId, colId));
+            }
+        }
+    }
+
+    @Test
+    public void testColumnTable() throws IOException {
+        checkQueries(new ColumnTable(true));
+        checkQueries(new ColumnTable(false));
+        ColumnTable parallel = new ColumnTable();
+        parallel.setParallelism(4);
+        checkQueries(parallel);
+        ColumnTable zoned = new ColumnTable();
+        zoned.setZoneMapBlockRows(1000);
+        checkQueries(zoned);
+    }
+
+    @Test
+    public void testRowTable() throws IOException {
+        checkQueries(new RowTable());
+        RowTable parallel = new RowTable(StorageType.BYTE_BUFFER);
+        parallel.setParallelism(4);
+        checkQueries(parallel);
+    }
+
+    @Test
+    public void testIndexedRowTable() throws IOException {
+        checkQueries(new IndexedRowTable(0));
+        checkQueries(new IndexedRowTable(3, IndexType.BITMAP));
+    }
+
+    @Test
+    public void testPaxTable() throws IOException {
+        checkQueries(new PaxTable());
+        checkQueries(new PaxTable(16, new int[]{1, 2, 3}, new int[]{5, 0}));
+        PaxTable parallel = new PaxTable(StorageType.DIRECT, 2048, new int[]{4, 3});
+        parallel.setParallelism(4);
+        checkQueries(parallel);
+        parallel.close();
+    }
+
+    @Test
+    public void testSortedColumnTable() throws IOException {
+        checkQueries(new SortedColumnTable());
+        checkQueries(new SortedColumnTable(3));
+        SortedColumnTable parallel = new SortedColumnTable(StorageType.DIRECT, 1);
+        parallel.setParallelism(4);
+        checkQueries(parallel);
+        parallel.close();
+    }
+
+    @Test
+    public void testOtherTables() throws IOException {
+        checkQueries(new CustomTable());
+        checkQueries(new PackedColumnTable());
+    }
+
+    @Test
+    public void testMaintainedSumFollowsUpdates() throws IOException {
+        ColumnTable table = new ColumnTable();
+        table.load(dl);
+        MaintainedAggregates.ColumnSum col2Sum =
+                table.getAggregates().register(new MaintainedAggregates.ColumnSum(2));
+        table.setParallelism(4);
+        for (Query update : UPDATES) {
+            table.update(update);
+            assertEquals(table.select(Query.select(Aggregation.sum(2)))[0], col2Sum.get());
+        }
+    }
+
+    @Test
+    public void testWithPredicates() throws IOException {
+        ColumnTable table = new ColumnTable();
+        table.load(dl);
+        Query template = Query.select(Aggregation.sum(0, 4), Aggregation.count())
+                .where(Predicate.gt(1, 0), Predicate.lt(4, 0));
+        Predicate[][] wheres = {
+                {Predicate.gt(1, 300), Predicate.lt(4, 700)},
+                {Predicate.ge(4, 100), Predicate.le(4, 900)},
+                {Predicate.gt(1, 700), Predicate.lt(1, 300)},
+                {Predicate.gt(2, 500), Predicate.lt(4, 800)},
+        };
+        for (Predicate[] where : wheres) {
+            Query rebound = template.withPredicates(where);
+            Query compiled = Query.select(Aggregation.sum(0, 4), Aggregation.count()).where(where);
+            assertArrayEquals(compiled.toString(), table.select(compiled), table.select(rebound));
+            assertArrayEquals(naiveSelect(table, compiled), table.select(rebound));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testColumnOutOfRange() throws IOException {
+        RowTable table = new RowTable();
+        table.load(dl);
+        table.select(Query.select(Aggregation.sum(NUM_COLS)));
+    }
+}
@@ -3,13 +3,18 @@ package memstore.table;
 import memstore.data.ByteFormat;
 import memstore.data.DataLoader;
 import memstore.data.RandomizedLoader;
+import memstore.data.RowBatch;
 import org.junit.Test;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 /**
  * Tests the correctness of the Randomized loader, which given an input
@@ -25,4 +30,61 @@ public class RandomizedLoaderTest {
         assertTrue(rows.get(0).getInt(50* ByteFormat.FIELD_LEN) < 2000);
     }
 
-}
\ No newline at end of file
+    /**
+     * Tests that both the sequential and the parallel scans reproduce the
+     * java.util.Random stream exactly, including for negative seeds.
+     */
+    @Test
+    public void testMatchesJavaUtilRandom() throws IOException {
+        int numRows = 3 * 65536 + 123;
+        int numCols = 5;
+        for (int seed : new int[]{0, 42, -7}) {
+            int[] expected = new int[numRows * numCols];
+            Random random = new Random(seed);
+            for (int i = 0; i < expected.length; i++) {
+                expected[i] = random.nextInt(1024);
+            }
+
+            for (int parallelism : new int[]{1, 4}) {
+                RandomizedLoader dl = new RandomizedLoader(seed, numRows, numCols, parallelism);
+                int[] sequential = new int[expected.length];
+                int[] concurrent = new int[expected.length];
+                dl.scan(batch -> System.arraycopy(batch.fields(), 0, sequential,
+                        batch.getFirstRowId() * numCols, batch.getNumRows() * numCols));
+                dl.scanConcurrently(batch -> System.arraycopy(batch.fields(), 0, concurrent,
+                        batch.getFirstRowId() * numCols, batch.getNumRows() * numCols));
+                for (int i = 0; i < expected.length; i++) {
+                    assertEquals(expected[i], sequential[i]);
+                    assertEquals(expected[i], concurrent[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tests that a failing parallel scan rethrows the failure only once no
+     * worker is still running, and stops the workers early.
+     */
+    @Test
+    public void testFailureStopsConcurrentScan() throws Exception {
+        int numTasks = 40;
+        RandomizedLoader dl = new RandomizedLoader(0, numTasks * 65536, 2, 4);
+        AtomicInteger batches = new AtomicInteger();
+        try {
+            dl.scanConcurrently(batch -> {
+                if (batch.getFirstRowId() == 0) {
+                    throw new IllegalStateException("row 0");
+                }
+                batches.incrementAndGet();
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            // Rethrown as is from the calling thread, or wrapped from a worker.
+            assertTrue(String.valueOf(e), String.valueOf(e).contains("row 0"));
+        }
+        int seen = batches.get();
+        Thread.sleep(50);
+        assertEquals(seen, batches.get());
+        assertTrue(seen < numTasks * 65536 / RowBatch.DEFAULT_ROWS / 2);
+    }
+}
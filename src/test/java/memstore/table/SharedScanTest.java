@@ -0,0 +1,125 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that queries sharing scans see every block exactly once and return
+ * the same results as queries scanning on their own, even when other
+ * queries fail.
+ */
+public class SharedScanTest {
+    private static final int THREADS = 6;
+
+    @Test
+    public void testEveryBlockOnce() throws Exception {
+        SharedScan scan = new SharedScan(10_000, 64);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<AtomicIntegerArray>> futures = new ArrayList<>();
+        for (int q = 0; q < 60; q++) {
+            futures.add(pool.submit(() -> {
+                AtomicIntegerArray seen = new AtomicIntegerArray(scan.numBlocks);
+                scan.scan((from, to) -> {
+                    assertEquals(Math.min(10_000, from + 64), to);
+                    seen.incrementAndGet(from / 64);
+                    return 0;
+                });
+                return seen;
+            }));
+        }
+        for (Future<AtomicIntegerArray> future : futures) {
+            AtomicIntegerArray seen = future.get();
+            for (int blockId = 0; blockId < scan.numBlocks; blockId++) {
+                assertEquals(1, seen.get(blockId));
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFailingQuery() throws Exception {
+        SharedScan scan = new SharedScan(10_000, 64);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<AtomicIntegerArray>> futures = new ArrayList<>();
+        for (int q = 0; q < 60; q++) {
+            boolean failing = q % 3 == 0;
+            futures.add(pool.submit(() -> {
+                AtomicIntegerArray seen = new AtomicIntegerArray(scan.numBlocks);
+                scan.scan((from, to) -> {
+                    if (failing && from / 64 == 100) {
+                        throw new IllegalStateException("block 100");
+                    }
+                    seen.incrementAndGet(from / 64);
+                    return 0;
+                });
+                return seen;
+            }));
+        }
+        for (int q = 0; q < futures.size(); q++) {
+            try {
+                AtomicIntegerArray seen = futures.get(q).get();
+                assertFalse(q % 3 == 0);
+                for (int blockId = 0; blockId < scan.numBlocks; blockId++) {
+                    assertEquals(1, seen.get(blockId));
+                }
+            } catch (ExecutionException e) {
+                // Only the failing queries fail, with their own exception.
+                assertTrue(q % 3 == 0);
+                assertTrue(e.getCause() instanceof IllegalStateException);
+                assertEquals("block 100", e.getCause().getMessage());
+            }
+        }
+        pool.shutdown();
+    }
+
+    @Test
+    public void testConcurrentQueries() throws Exception {
+        DataLoader dl = new RandomizedLoader(0, 100_000, 6);
+        ColumnTable expected = new ColumnTable();
+        expected.load(dl);
+        ColumnTable shared = new ColumnTable();
+        shared.setSharedScanBlockRows(1024);
+        shared.load(dl);
+        ConcurrentTable table = new ConcurrentTable(shared, true);
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            futures.add(pool.submit(() -> {
+                for (int i = 0; i < 20; i++) {
+                    int threshold = (thread * 20 + i) * 7;
+                    assertEquals(expected.columnSum(), table.columnSum());
+                    assertEquals(expected.predicatedColumnSum(threshold, 1000 - threshold),
+                            table.predicatedColumnSum(threshold, 1000 - threshold));
+                    assertEquals(expected.predicatedAllColumnsSum(threshold),
+                            table.predicatedAllColumnsSum(threshold));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        pool.shutdown();
+
+        // Writes and UPDATEs in between do not break later shared scans.
+        assertEquals(expected.predicatedUpdate(500), table.predicatedUpdate(500));
+        expected.putIntField(17, 0, 123_456);
+        table.putIntField(17, 0, 123_456);
+        assertEquals(expected.columnSum(), table.columnSum());
+        assertEquals(expected.predicatedAllColumnsSum(-1), table.predicatedAllColumnsSum(-1));
+    }
+}
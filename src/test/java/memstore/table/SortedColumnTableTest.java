@@ -0,0 +1,84 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the SortedColumnTable, including writes that move rows within the
+ * sort order.
+ */
+public class SortedColumnTableTest {
+    @Test
+    public void testQueries() throws IOException {
+        DataLoader dl = new CSVLoader("src/main/resources/test.csv", 5);
+        SortedColumnTable st = new SortedColumnTable();
+        st.load(dl);
+        assertEquals(8, st.getIntField(4, 0));
+        assertEquals(68, st.columnSum());
+        assertEquals(166, st.predicatedAllColumnsSum(3));
+        assertEquals(342, st.predicatedAllColumnsSum(-1));
+        assertEquals(49, st.predicatedColumnSum(3, 5));
+        assertEquals(9, st.predicatedUpdate(3));
+        assertEquals(375, st.predicatedAllColumnsSum(-1));
+    }
+
+    private static void assertSorted(SortedColumnTable st) {
+        for (int pos = 0; pos < st.numRows; pos++) {
+            assertEquals(pos, st.physicalOf[st.logicalOf[pos]]);
+            if (pos > 0) {
+                assertTrue(st.getIntField(st.logicalOf[pos - 1], st.sortColumn)
+                        <= st.getIntField(st.logicalOf[pos], st.sortColumn));
+            }
+        }
+    }
+
+    @Test
+    public void testMatchesColumnTable() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 10_007, 6);
+        for (int sortColumn : new int[]{0, 3}) {
+            ColumnTable ct = new ColumnTable();
+            SortedColumnTable st = new SortedColumnTable(sortColumn);
+            ct.load(dl);
+            st.load(dl);
+            assertSorted(st);
+
+            Random random = new Random(1);
+            for (int i = 0; i < 200; i++) {
+                int t1 = random.nextInt(1024);
+                int t2 = random.nextInt(1024);
+                assertEquals(ct.columnSum(), st.columnSum());
+                assertEquals(ct.predicatedColumnSum(t1, t2), st.predicatedColumnSum(t1, t2));
+                assertEquals(ct.predicatedAllColumnsSum(t1), st.predicatedAllColumnsSum(t1));
+                assertEquals(ct.predicatedUpdate(t2), st.predicatedUpdate(t2));
+
+                for (int j = 0; j < 5; j++) {
+                    int rowId = random.nextInt(10_007);
+                    int colId = j == 0 ? sortColumn : random.nextInt(6);
+                    int field = random.nextInt(1200) - 100;
+                    ct.putIntField(rowId, colId, field);
+                    st.putIntField(rowId, colId, field);
+                    assertEquals(field, st.getIntField(rowId, colId));
+                }
+            }
+            assertSorted(st);
+            for (int rowId = 0; rowId < 10_007; rowId++) {
+                for (int colId = 0; colId < 6; colId++) {
+                    assertEquals(ct.getIntField(rowId, colId), st.getIntField(rowId, colId));
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSortColumnOutOfRange() throws IOException {
+        new SortedColumnTable(4).load(new RandomizedLoader(0, 100, 4));
+    }
+}
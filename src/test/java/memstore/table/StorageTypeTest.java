@@ -0,0 +1,47 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that every table returns the same results on every storage backend.
+ */
+public class StorageTypeTest {
+    DataLoader dl;
+
+    public StorageTypeTest() {
+        dl = new CSVLoader(
+                "src/main/resources/test.csv",
+                5
+        );
+    }
+
+    @Test
+    public void testQueries() throws IOException {
+        for (StorageType storageType : StorageType.values()) {
+            List<Table> tables = Arrays.asList(
+                    new RowTable(storageType),
+                    new ColumnTable(storageType),
+                    new IndexedRowTable(0, storageType)
+            );
+            for (Table t : tables) {
+                String tableType = t.getClass().getSimpleName() + "/" + storageType;
+                t.load(dl);
+                assertEquals(tableType, 8, t.getIntField(4, 0));
+                assertEquals(tableType, 68, t.columnSum());
+                assertEquals(tableType, 166, t.predicatedAllColumnsSum(3));
+                assertEquals(tableType, 49, t.predicatedColumnSum(3, 5));
+                assertEquals(tableType, 9, t.predicatedUpdate(3));
+                assertEquals(tableType, 375, t.predicatedAllColumnsSum(-1));
+                t.close();
+            }
+        }
+    }
+}
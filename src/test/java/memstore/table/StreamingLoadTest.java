@@ -0,0 +1,143 @@
+package memstore.table;
+
+import memstore.data.BufferedLoader;
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.data.RowBatch;
+import memstore.data.SortedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that loaders deliver their rows through scan() in consecutive
+ * batches, and that tables load the same data from loaders that do not know
+ * their size up front.
+ */
+public class StreamingLoadTest {
+    private static final int NUM_ROWS = 3 * RowBatch.DEFAULT_ROWS + 17;
+
+    /**
+     * Hides the number of rows of the wrapped loader.
+     */
+    private static DataLoader unsized(DataLoader loader) {
+        return new DataLoader() {
+            @Override
+            public int getNumCols() {
+                return loader.getNumCols();
+            }
+
+            @Override
+            public void scan(RowConsumer consumer) throws IOException {
+                loader.scan(consumer);
+            }
+        };
+    }
+
+    private static List<int[]> scanRows(DataLoader loader) throws IOException {
+        List<int[]> rows = new ArrayList<>();
+        loader.scan(batch -> {
+            assertEquals(rows.size(), batch.getFirstRowId());
+            assertTrue(batch.getNumRows() > 0);
+            for (int row = 0; row < batch.getNumRows(); row++) {
+                int[] fields = new int[batch.getNumCols()];
+                for (int colId = 0; colId < fields.length; colId++) {
+                    fields[colId] = batch.getInt(row, colId);
+                }
+                rows.add(fields);
+            }
+        });
+        return rows;
+    }
+
+    private static void checkScanMatchesRows(DataLoader loader) throws IOException {
+        List<int[]> scanned = scanRows(loader);
+        List<ByteBuffer> rows = loader.getRows();
+        assertEquals(rows.size(), scanned.size());
+        for (int rowId = 0; rowId < rows.size(); rowId++) {
+            for (int colId = 0; colId < loader.getNumCols(); colId++) {
+                assertEquals(rows.get(rowId).getInt(4 * colId), scanned.get(rowId)[colId]);
+            }
+        }
+    }
+
+    @Test
+    public void testLoaders() throws IOException {
+        DataLoader random = new RandomizedLoader(0, NUM_ROWS, 3);
+        checkScanMatchesRows(random);
+        checkScanMatchesRows(new CSVLoader("src/main/resources/test.csv", 5));
+        checkScanMatchesRows(new BufferedLoader(unsized(random)));
+        assertEquals(NUM_ROWS, new BufferedLoader(unsized(random)).getNumRows());
+
+        List<int[]> sorted = scanRows(new SortedLoader(unsized(random), 1));
+        assertEquals(NUM_ROWS, sorted.size());
+        for (int rowId = 1; rowId < sorted.size(); rowId++) {
+            assertTrue(sorted.get(rowId - 1)[1] <= sorted.get(rowId)[1]);
+        }
+    }
+
+    private static void checkLoad(Table sized, Table unsized) throws IOException {
+        DataLoader dl = new RandomizedLoader(1, NUM_ROWS, 4);
+        sized.load(dl);
+        unsized.load(unsized(dl));
+        List<int[]> rows = scanRows(dl);
+        for (int rowId = 0; rowId < NUM_ROWS; rowId++) {
+            for (int colId = 0; colId < 4; colId++) {
+                assertEquals(rows.get(rowId)[colId], sized.getIntField(rowId, colId));
+                assertEquals(rows.get(rowId)[colId], unsized.getIntField(rowId, colId));
+            }
+        }
+        assertEquals(sized.predicatedAllColumnsSum(100), unsized.predicatedAllColumnsSum(100));
+    }
+
+    @Test
+    public void testBufferRetriedAfterFailure() throws IOException {
+        DataLoader random = new RandomizedLoader(0, NUM_ROWS, 3);
+        boolean[] failed = new boolean[1];
+        DataLoader failsOnce = new DataLoader() {
+            @Override
+            public int getNumCols() {
+                return random.getNumCols();
+            }
+
+            @Override
+            public void scan(RowConsumer consumer) throws IOException {
+                if (!failed[0]) {
+                    failed[0] = true;
+                    random.scan(batch -> {
+                        if (batch.getFirstRowId() > 0) {
+                            throw new IOException("read failed");
+                        }
+                        consumer.accept(batch);
+                    });
+                }
+                random.scan(consumer);
+            }
+        };
+        BufferedLoader buffered = new BufferedLoader(failsOnce);
+        try {
+            buffered.getNumRows();
+            throw new AssertionError("expected the first scan to fail");
+        } catch (IOException e) {
+            assertEquals("read failed", e.getMessage());
+        }
+        assertEquals(NUM_ROWS, buffered.getNumRows());
+        checkScanMatchesRows(buffered);
+    }
+
+    @Test
+    public void testTableLoads() throws IOException {
+        checkLoad(new RowTable(), new RowTable());
+        checkLoad(new ColumnTable(), new ColumnTable(StorageType.DIRECT));
+        checkLoad(new IndexedRowTable(1), new IndexedRowTable(1, IndexType.BITMAP));
+        checkLoad(new PackedColumnTable(), new PackedColumnTable());
+        checkLoad(new CustomTable(), new CustomTable());
+    }
+}
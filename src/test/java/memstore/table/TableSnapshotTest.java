@@ -0,0 +1,114 @@
+package memstore.table;
+
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that tables mapped from snapshots hold the same data as the tables
+ * the snapshots were written from, and that writes to a mapped table do not
+ * change the snapshot.
+ */
+public class TableSnapshotTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    DataLoader dl = new RandomizedLoader(0, 50_000, 7);
+
+    private static void checkSame(Table expected, Table actual) {
+        for (int rowId = 0; rowId < 50_000; rowId += 7) {
+            for (int colId = 0; colId < 7; colId++) {
+                assertEquals(expected.getIntField(rowId, colId), actual.getIntField(rowId, colId));
+            }
+        }
+        assertEquals(expected.columnSum(), actual.columnSum());
+        assertEquals(expected.predicatedColumnSum(300, 700), actual.predicatedColumnSum(300, 700));
+        assertEquals(expected.predicatedAllColumnsSum(512), actual.predicatedAllColumnsSum(512));
+        assertEquals(expected.predicatedUpdate(200), actual.predicatedUpdate(200));
+        assertEquals(expected.predicatedAllColumnsSum(100), actual.predicatedAllColumnsSum(100));
+    }
+
+    @Test
+    public void testColumnTable() throws IOException {
+        String path = folder.newFile().getPath();
+        ColumnTable original = new ColumnTable(StorageType.DIRECT);
+        original.load(dl);
+        original.writeSnapshot(path);
+
+        ColumnTable mapped = new ColumnTable();
+        mapped.setZoneMapBlockRows(1024);
+        mapped.loadSnapshot(path);
+        checkSame(original, mapped);
+        mapped.close();
+
+        ColumnTable fresh = new ColumnTable();
+        fresh.load(dl);
+        ColumnTable remapped = new ColumnTable();
+        remapped.loadSnapshot(path);
+        checkSame(fresh, remapped);
+    }
+
+    @Test
+    public void testRowTable() throws IOException {
+        String path = folder.newFile().getPath();
+        RowTable original = new RowTable();
+        original.load(dl);
+        original.writeSnapshot(path);
+
+        RowTable mapped = new RowTable();
+        mapped.loadSnapshot(path);
+        // Overwriting the snapshot leaves the mapped table on the old file.
+        original.putIntField(0, 0, -5);
+        original.writeSnapshot(path);
+        RowTable fresh = new RowTable();
+        fresh.load(dl);
+        checkSame(fresh, mapped);
+
+        RowTable remapped = new RowTable();
+        remapped.loadSnapshot(path);
+        assertEquals(-5, remapped.getIntField(0, 0));
+    }
+
+    @Test(expected = IOException.class)
+    public void testWrongLayout() throws IOException {
+        String path = folder.newFile().getPath();
+        RowTable table = new RowTable();
+        table.load(dl);
+        table.writeSnapshot(path);
+        new ColumnTable().loadSnapshot(path);
+    }
+
+    @Test
+    public void testMappedChunkBoundaries() throws IOException {
+        String path = folder.newFile().getPath();
+        IntStorage data = new IntArrayStorage(100);
+        for (int i = 0; i < 100; i++) {
+            data.put(i, i * 3);
+        }
+        TableSnapshot.write(path, TableSnapshot.Layout.ROW_MAJOR, 25, 4, data);
+        try (FileChannel channel = FileChannel.open(folder.getRoot().toPath().resolve(path),
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // 16 fields per chunk.
+            MappedStorage mapped = new MappedStorage(channel, FileChannel.MapMode.PRIVATE,
+                    TableSnapshot.DATA_OFFSET, 100,
+                    ByteOrder.nativeOrder(), 4);
+            int[] slice = new int[40];
+            mapped.get(10, slice, 0, slice.length);
+            for (int i = 0; i < slice.length; i++) {
+                assertEquals((10 + i) * 3, slice[i]);
+            }
+            mapped.put(15, new int[]{-1, -2}, 0, 2);
+            assertEquals(-2, mapped.get(16));
+            mapped.close();
+        }
+    }
+}
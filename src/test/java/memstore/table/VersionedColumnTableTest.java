@@ -0,0 +1,120 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests the VersionedColumnTable, including that queries running alongside
+ * writers see consistent snapshots.
+ */
+public class VersionedColumnTableTest {
+    @Test
+    public void testQueries() throws IOException {
+        DataLoader dl = new CSVLoader("src/main/resources/test.csv", 5);
+        VersionedColumnTable vt = new VersionedColumnTable(4);
+        vt.load(dl);
+        assertEquals(8, vt.getIntField(4, 0));
+        assertEquals(68, vt.columnSum());
+        assertEquals(166, vt.predicatedAllColumnsSum(3));
+        assertEquals(342, vt.predicatedAllColumnsSum(-1));
+        assertEquals(49, vt.predicatedColumnSum(3, 5));
+        assertEquals(9, vt.predicatedUpdate(3));
+        assertEquals(375, vt.predicatedAllColumnsSum(-1));
+    }
+
+    @Test
+    public void testMatchesColumnTable() throws IOException {
+        DataLoader dl = new RandomizedLoader(0, 10_007, 6);
+        ColumnTable ct = new ColumnTable();
+        VersionedColumnTable vt = new VersionedColumnTable(64);
+        ct.load(dl);
+        vt.load(dl);
+
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            int t1 = random.nextInt(1024);
+            int t2 = random.nextInt(1024);
+            assertEquals(ct.columnSum(), vt.columnSum());
+            assertEquals(ct.predicatedColumnSum(t1, t2), vt.predicatedColumnSum(t1, t2));
+            assertEquals(ct.predicatedAllColumnsSum(t1), vt.predicatedAllColumnsSum(t1));
+            assertEquals(ct.predicatedUpdate(t2), vt.predicatedUpdate(t2));
+            for (int j = 0; j < 5; j++) {
+                int rowId = random.nextInt(10_007);
+                int colId = random.nextInt(6);
+                int field = random.nextInt(1024);
+                ct.putIntField(rowId, colId, field);
+                vt.putIntField(rowId, colId, field);
+            }
+        }
+        for (int rowId = 0; rowId < 10_007; rowId++) {
+            for (int colId = 0; colId < 6; colId++) {
+                assertEquals(ct.getIntField(rowId, colId), vt.getIntField(rowId, colId));
+            }
+        }
+    }
+
+    @Test
+    public void testWritesCopyOnlyAfterQueries() throws IOException {
+        VersionedColumnTable vt = new VersionedColumnTable();
+        vt.load(new RandomizedLoader(0, 5000, 4));
+        long id = vt.getVersionId();
+        vt.putIntField(1, 1, 5);
+        vt.putIntField(4000, 2, 7);
+        assertEquals(id, vt.getVersionId());
+
+        long before = vt.columnSum();
+        vt.putIntField(3, 0, vt.getIntField(3, 0) + 10);
+        assertNotEquals(id, vt.getVersionId());
+        assertEquals(before + 10, vt.columnSum());
+    }
+
+    @Test
+    public void testSnapshotsAreConsistent() throws Exception {
+        int numRows = 50_000;
+        VersionedColumnTable vt = new VersionedColumnTable();
+        vt.load(new RandomizedLoader(0, numRows, 5));
+        Query col1Sum = Query.select(Aggregation.sum(1));
+        long base = vt.select(col1Sum)[0];
+        Query increment = Query.update(1, Expression.sum(1).plus(1));
+
+        ExecutorService pool = Executors.newFixedThreadPool(3);
+        Future<?> updater = pool.submit(() -> {
+            for (int i = 0; i < 50; i++) {
+                vt.update(increment);
+            }
+        });
+        Future<?> writer = pool.submit(() -> {
+            Random random = new Random(0);
+            for (int i = 0; i < 50_000; i++) {
+                vt.putIntField(random.nextInt(numRows), 4, random.nextInt(1024));
+            }
+        });
+        Future<?> reader = pool.submit(() -> {
+            for (int i = 0; i < 200; i++) {
+                // Every snapshot holds a whole number of increments.
+                assertEquals(0, (vt.select(col1Sum)[0] - base) % numRows);
+            }
+        });
+        updater.get();
+        writer.get();
+        reader.get();
+        pool.shutdown();
+        assertEquals(base + 50L * numRows, vt.select(col1Sum)[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testChunkRowsNotPowerOfTwo() {
+        new VersionedColumnTable(1000);
+    }
+}
@@ -0,0 +1,58 @@
+package memstore.table;
+
+import memstore.data.CSVLoader;
+import memstore.data.DataLoader;
+import memstore.data.RandomizedLoader;
+import memstore.data.SortedLoader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests that ColumnTable queries with zone maps return the same results as
+ * full scans, as writes widen the block ranges.
+ */
+public class ZoneMapTest {
+    @Test
+    public void testQueries() throws IOException {
+        DataLoader dl = new CSVLoader("src/main/resources/test.csv", 5);
+        ColumnTable ct = new ColumnTable();
+        ct.setZoneMapBlockRows(4);
+        ct.load(dl);
+        assertEquals(68, ct.columnSum());
+        assertEquals(166, ct.predicatedAllColumnsSum(3));
+        assertEquals(49, ct.predicatedColumnSum(3, 5));
+        assertEquals(9, ct.predicatedUpdate(3));
+        assertEquals(375, ct.predicatedAllColumnsSum(-1));
+    }
+
+    @Test
+    public void testMatchesFullScan() throws IOException {
+        DataLoader dl = new SortedLoader(new RandomizedLoader(0, 50_000, 5), 0);
+        ColumnTable plain = new ColumnTable();
+        ColumnTable zoned = new ColumnTable();
+        plain.load(dl);
+        zoned.load(dl);
+        zoned.setZoneMapBlockRows(1000);
+        zoned.setParallelism(3);
+
+        Random random = new Random(0);
+        for (int i = 0; i < 100; i++) {
+            int t1 = random.nextInt(1024);
+            int t2 = random.nextInt(1024);
+            assertEquals(plain.predicatedColumnSum(t1, t2), zoned.predicatedColumnSum(t1, t2));
+            assertEquals(plain.predicatedAllColumnsSum(t1), zoned.predicatedAllColumnsSum(t1));
+            assertEquals(plain.predicatedUpdate(t2), zoned.predicatedUpdate(t2));
+            for (int j = 0; j < 20; j++) {
+                int rowId = random.nextInt(50_000);
+                int colId = j % 5;
+                int field = random.nextInt(1024);
+                plain.putIntField(rowId, colId, field);
+                zoned.putIntField(rowId, colId, field);
+            }
+        }
+    }
+}